@@ -0,0 +1,162 @@
+package club.p6e.coat.file;
+
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * 文件内容服务
+ * 内容寻址存储（CAS），相同内容（SHA-256 + 长度）的文件只保存一份，通过引用的数量决定是否删除
+ * 内容的存储路径为 cas/摘要前两位/摘要三四位/摘要_随机字符，上传的存储位置为内容的存储路径/文件名称
+ * 秒传需要先证明持有内容：服务端返回随机的挑战（随机字符和内容中的区域），客户端返回 SHA-256(随机字符 + 区域的数据)
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public interface FileBlobService {
+
+    /**
+     * 内容存储路径的前缀
+     */
+    public static final String PATH_PREFIX = "cas";
+
+    /**
+     * 内容的摘要算法
+     */
+    public static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * 上传节点是否使用内容寻址存储的扩展参数名称
+     */
+    public static final String EXTEND_NAME = "cas";
+
+    /**
+     * 上传节点的扩展参数中是否使用内容寻址存储
+     * 只有使用内容寻址存储的上传节点可以秒传
+     *
+     * @param extend 扩展参数
+     * @return 是否使用内容寻址存储
+     */
+    public default boolean isEnabled(Map<String, Object> extend) {
+        final Object content = extend == null ? null : extend.get(EXTEND_NAME);
+        if (content instanceof final Boolean cas) {
+            return cas;
+        } else if (content instanceof final String cas) {
+            return Boolean.parseBoolean(cas.trim());
+        }
+        return false;
+    }
+
+    /**
+     * 是否为内容的摘要（SHA-256 的十六进制字符串）
+     *
+     * @param hash 摘要
+     * @return 是否为内容的摘要
+     */
+    public default boolean isHash(String hash) {
+        return hash != null && hash.matches("^[0-9a-fA-F]{64}$");
+    }
+
+    /**
+     * 是否为内容寻址存储的存储位置
+     *
+     * @param location 存储位置
+     * @return 是否为内容寻址存储的存储位置
+     */
+    public default boolean isBlob(String location) {
+        return location != null && location.startsWith(PATH_PREFIX + "/");
+    }
+
+    /**
+     * 存储位置对应的内容存储路径（去掉文件名称）
+     *
+     * @param location 存储位置
+     * @return 内容的存储路径
+     */
+    public default String blob(String location) {
+        final int index = location.lastIndexOf("/");
+        return index > 0 ? location.substring(0, index) : location;
+    }
+
+    /**
+     * 存储位置中的文件名称
+     *
+     * @param location 存储位置
+     * @return 文件名称
+     */
+    public default String name(String location) {
+        final int index = location.lastIndexOf("/");
+        return index >= 0 ? location.substring(index + 1) : location;
+    }
+
+    /**
+     * 保存内容
+     * 读取文件计算摘要，内容已经存在时删除文件并增加引用，否则移动文件到内容的存储路径
+     *
+     * @param base 基础的文件路径
+     * @param file 写入完成的文件（需要和基础的文件路径在同一个文件系统中）
+     * @return 内容的存储路径（相对基础的文件路径）
+     */
+    public default Mono<String> store(String base, File file) {
+        return store(base, file, null);
+    }
+
+    /**
+     * 保存内容
+     * 内容已经存在时删除文件并增加引用，否则移动文件到内容的存储路径
+     *
+     * @param base 基础的文件路径
+     * @param file 写入完成的文件（需要和基础的文件路径在同一个文件系统中）
+     * @param hash 写入过程中计算的内容摘要（SHA-256），为 null 时读取文件计算
+     * @return 内容的存储路径（相对基础的文件路径）
+     */
+    public Mono<String> store(String base, File file, String hash);
+
+    /**
+     * 创建持有内容的挑战（秒传）
+     * 挑战保存在数据库中，任意实例都可以验证，只能验证一次，有效时间为 5 分钟
+     *
+     * @param base 基础的文件路径
+     * @param hash 内容的摘要（SHA-256）
+     * @param size 内容的长度
+     * @return 挑战（nonce/offset/length/algorithm，内容不存在时返回空）
+     */
+    public Mono<Map<String, Object>> challenge(String base, String hash, long size);
+
+    /**
+     * 验证持有内容的证明（秒传）
+     * 证明为 SHA-256(随机字符的 UTF-8 数据 + 内容中挑战区域的数据) 的十六进制字符串
+     *
+     * @param base  基础的文件路径
+     * @param hash  内容的摘要（SHA-256）
+     * @param size  内容的长度
+     * @param nonce 挑战的随机字符
+     * @param proof 持有内容的证明
+     * @return 是否验证通过
+     */
+    public Mono<Boolean> verify(String base, String hash, long size, String nonce, String proof);
+
+    /**
+     * 引用已经存在的内容（秒传）
+     * 内容的记录存在并且内容的文件在基础的文件路径下存在时增加引用
+     * 调用之前需要验证持有内容的证明
+     *
+     * @param base 基础的文件路径
+     * @param hash 内容的摘要（SHA-256）
+     * @param size 内容的长度
+     * @return 内容的存储路径（内容不存在时返回空）
+     */
+    public Mono<String> retain(String base, String hash, long size);
+
+    /**
+     * 释放内容
+     * 减少引用，没有引用时删除内容的记录和文件
+     *
+     * @param base     基础的文件路径
+     * @param location 存储位置
+     * @return 是否删除了内容的文件
+     */
+    public Mono<Boolean> release(String base, String location);
+
+}
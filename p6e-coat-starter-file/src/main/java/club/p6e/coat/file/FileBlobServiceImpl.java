@@ -0,0 +1,274 @@
+package club.p6e.coat.file;
+
+import club.p6e.coat.common.utils.GeneratorUtil;
+import club.p6e.coat.common.utils.TransformationUtil;
+import club.p6e.coat.file.repository.FileBlobChallengeRepository;
+import club.p6e.coat.file.repository.FileBlobRepository;
+import club.p6e.coat.file.utils.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * 文件内容服务
+ * 写入的文件先移动到新的内容存储路径再登记，登记返回的存储路径不是新的路径时（内容已经存在）删除新的文件，
+ * 登记的内容文件一定已经存在；释放时引用减少到 0 并且删除记录成功才删除文件，删除之前其它上传增加了引用时不删除
+ * 持有内容的挑战保存在数据库中，验证时删除，任意实例都可以验证其它实例创建的挑战，创建挑战时删除已经过期的挑战
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = FileBlobService.class,
+        ignored = FileBlobServiceImpl.class
+)
+public class FileBlobServiceImpl implements FileBlobService {
+
+    /**
+     * 日志对象
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileBlobServiceImpl.class);
+
+    /**
+     * 挑战区域的最大长度
+     */
+    private static final long CHALLENGE_LENGTH = 1024 * 64;
+
+    /**
+     * 挑战的有效时间（毫秒）
+     */
+    private static final long CHALLENGE_EXPIRE = 1000 * 60 * 5;
+
+    /**
+     * 随机数生成器对象
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * 文件内容存储库对象
+     */
+    private final FileBlobRepository repository;
+
+    /**
+     * 文件内容挑战存储库对象
+     */
+    private final FileBlobChallengeRepository challengeRepository;
+
+    /**
+     * 文件签名服务对象
+     */
+    private final FileSignatureService fileSignatureService;
+
+    /**
+     * 文件 IO 调度服务对象
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param repository             文件内容存储库对象
+     * @param challengeRepository    文件内容挑战存储库对象
+     * @param fileSignatureService   文件签名服务对象
+     * @param fileIoSchedulerService 文件 IO 调度服务对象
+     */
+    public FileBlobServiceImpl(
+            FileBlobRepository repository,
+            FileBlobChallengeRepository challengeRepository,
+            FileSignatureService fileSignatureService,
+            FileIoSchedulerService fileIoSchedulerService
+    ) {
+        this.repository = repository;
+        this.challengeRepository = challengeRepository;
+        this.fileSignatureService = fileSignatureService;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+    }
+
+    @Override
+    public Mono<String> store(String base, File file, String hash) {
+        return (hash == null ? fileSignatureService.execute(HASH_ALGORITHM, file, 0L, -1L) : Mono.just(hash.toLowerCase()))
+                .flatMap(h -> {
+                    final String path = FileUtil.composePath(PATH_PREFIX, h.substring(0, 2) + "/"
+                            + h.substring(2, 4) + "/" + h + "_" + GeneratorUtil.random(6, true, false));
+                    final File target = new File(FileUtil.convertAbsolutePath(FileUtil.composePath(base, path)));
+                    return fileIoSchedulerService
+                            .execute(() -> {
+                                final long length = file.length();
+                                if (!FileUtil.checkFolderExist(target.getParentFile())) {
+                                    FileUtil.createFolder(target.getParentFile());
+                                }
+                                Files.move(file.toPath(), target.toPath());
+                                return length;
+                            })
+                            .flatMap(length -> repository
+                                    .acquire(h, length, path)
+                                    .flatMap(p -> {
+                                        LOGGER.info("[ BLOB STORE ] >>> {} :: {} :: {}", h, length, p);
+                                        return p.equals(path) ? Mono.just(p) : fileIoSchedulerService
+                                                .run(() -> FileUtil.deleteFile(target))
+                                                .thenReturn(p);
+                                    })
+                                    .onErrorResume(e -> fileIoSchedulerService
+                                            .run(() -> FileUtil.deleteFile(target))
+                                            .then(Mono.error(e))));
+                })
+                // 保存失败时删除写入的文件（已经移动时文件不存在）
+                .onErrorResume(e -> fileIoSchedulerService
+                        .run(() -> FileUtil.deleteFile(file))
+                        .then(Mono.error(e)));
+    }
+
+    @Override
+    public Mono<Map<String, Object>> challenge(String base, String hash, long size) {
+        return repository
+                .select(hash.toLowerCase(), size)
+                .filterWhen(path -> fileIoSchedulerService.execute(() -> FileUtil.checkFileExist(
+                        new File(FileUtil.convertAbsolutePath(FileUtil.composePath(base, path))))))
+                .flatMap(path -> {
+                    final byte[] bytes = new byte[16];
+                    RANDOM.nextBytes(bytes);
+                    final String nonce = HexFormat.of().formatHex(bytes);
+                    final long length = Math.min(size, CHALLENGE_LENGTH);
+                    final long offset = size > length ? (RANDOM.nextLong() & Long.MAX_VALUE) % (size - length + 1) : 0;
+                    final LocalDateTime now = LocalDateTime.now();
+                    return challengeRepository
+                            .deleteExpire(now)
+                            .onErrorResume(e -> {
+                                LOGGER.warn("[ BLOB CHALLENGE CLEAN ERROR ] >>> {}", hash, e);
+                                return Mono.just(0L);
+                            })
+                            .then(challengeRepository.save(nonce, hash.toLowerCase(), size, path,
+                                    offset, length, now.plus(Duration.ofMillis(CHALLENGE_EXPIRE))))
+                            .thenReturn(new HashMap<>() {{
+                                put("nonce", nonce);
+                                put("offset", offset);
+                                put("length", length);
+                                put("algorithm", HASH_ALGORITHM);
+                            }});
+                });
+    }
+
+    @Override
+    public Mono<Boolean> verify(String base, String hash, long size, String nonce, String proof) {
+        if (nonce == null || proof == null) {
+            return Mono.just(false);
+        }
+        // 挑战只能验证一次，读取时删除挑战的记录
+        return challengeRepository
+                .consume(nonce)
+                .map(row -> new Challenge(
+                        TransformationUtil.objectToString(row.get("hash")),
+                        TransformationUtil.objectToLong(row.get("size")),
+                        TransformationUtil.objectToString(row.get("path")),
+                        TransformationUtil.objectToLong(row.get("offset")),
+                        TransformationUtil.objectToLong(row.get("length")),
+                        TransformationUtil.objectToLocalDateTime(row.get("expire_date_time"))
+                ))
+                .filter(challenge -> challenge.expireDateTime().isAfter(LocalDateTime.now())
+                        && challenge.hash().equalsIgnoreCase(hash) && challenge.size() == size)
+                .flatMap(challenge -> verify(base, challenge, nonce, proof))
+                .defaultIfEmpty(false)
+                .doOnNext(b -> LOGGER.info("[ BLOB VERIFY ] >>> {} :: {} :: {}", hash, size, b))
+                .onErrorResume(e -> {
+                    LOGGER.warn("[ BLOB VERIFY ERROR ] >>> {} :: {}", hash, size, e);
+                    return Mono.just(false);
+                });
+    }
+
+    /**
+     * 读取内容中挑战区域的数据并验证证明
+     *
+     * @param base      基础的文件路径
+     * @param challenge 挑战
+     * @param nonce     挑战的随机字符
+     * @param proof     持有内容的证明
+     * @return 是否验证通过
+     */
+    private Mono<Boolean> verify(String base, Challenge challenge, String nonce, String proof) {
+        final File file = new File(FileUtil.convertAbsolutePath(FileUtil.composePath(base, challenge.path())));
+        return fileIoSchedulerService
+                .execute(() -> {
+                    final byte[] actual;
+                    try {
+                        actual = HexFormat.of().parseHex(proof);
+                    } catch (IllegalArgumentException e) {
+                        return false;
+                    }
+                    final MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+                    digest.update(nonce.getBytes(StandardCharsets.UTF_8));
+                    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+                        long position = challenge.offset();
+                        long remaining = challenge.length();
+                        while (remaining > 0) {
+                            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                            final int count = channel.read(buffer, position);
+                            if (count < 0) {
+                                return false;
+                            }
+                            buffer.flip();
+                            digest.update(buffer);
+                            position += count;
+                            remaining -= count;
+                        }
+                    }
+                    return MessageDigest.isEqual(digest.digest(), actual);
+                });
+    }
+
+    @Override
+    public Mono<String> retain(String base, String hash, long size) {
+        return repository
+                .retain(hash.toLowerCase(), size)
+                // 内容保存在其它基础的文件路径下时撤销增加的引用
+                .flatMap(path -> fileIoSchedulerService
+                        .execute(() -> FileUtil.checkFileExist(
+                                new File(FileUtil.convertAbsolutePath(FileUtil.composePath(base, path)))))
+                        .flatMap(b -> b ? Mono.just(path) : repository.release(path).then(Mono.<String>empty())))
+                .doOnNext(path -> LOGGER.info("[ BLOB RETAIN ] >>> {} :: {} :: {}", hash, size, path));
+    }
+
+    @Override
+    public Mono<Boolean> release(String base, String location) {
+        final String path = blob(location);
+        return repository
+                .release(path)
+                .flatMap(ref -> ref > 0 ? Mono.just(false) : repository
+                        .delete(path)
+                        .flatMap(c -> c > 0 ? fileIoSchedulerService.execute(() -> FileUtil.deleteFile(
+                                new File(FileUtil.convertAbsolutePath(FileUtil.composePath(base, path))))) : Mono.just(false)))
+                .doOnNext(b -> LOGGER.info("[ BLOB RELEASE ] >>> {} :: {}", path, b))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * 持有内容的挑战
+     *
+     * @param hash           内容的摘要
+     * @param size           内容的长度
+     * @param path           内容的存储路径
+     * @param offset         挑战区域的开始位置
+     * @param length         挑战区域的长度
+     * @param expireDateTime 过期的时间
+     */
+    private record Challenge(String hash, long size, String path, long offset, long length, LocalDateTime expireDateTime) {
+    }
+
+}
@@ -0,0 +1,51 @@
+package club.p6e.coat.file;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * 文件 IO 调度服务
+ * 阻塞的文件系统操作（创建/删除/检查文件和文件夹、读取文件长度、移动文件等）统一在有界的线程池中执行，不占用事件循环线程
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public interface FileIoSchedulerService {
+
+    /**
+     * 执行阻塞的文件系统操作
+     *
+     * @param callable 文件系统操作
+     * @param <T>      返回值的类型
+     * @return 操作的返回值
+     */
+    public <T> Mono<T> execute(Callable<T> callable);
+
+    /**
+     * 执行没有返回值的阻塞的文件系统操作
+     *
+     * @param runnable 文件系统操作
+     * @return 操作完成
+     */
+    public Mono<Void> run(Runnable runnable);
+
+    /**
+     * 文件 IO 的调度器
+     * 用于需要整体切换到文件 IO 线程执行的数据流（subscribeOn）
+     *
+     * @return 调度器对象
+     */
+    public Scheduler scheduler();
+
+    /**
+     * 获取文件 IO 的统计数据
+     * 包括排队的数量、正在执行的数量、提交/拒绝的次数以及累计的等待时间和执行时间（毫秒）
+     *
+     * @return 文件 IO 的统计数据
+     */
+    public Map<String, Long> metrics();
+
+}
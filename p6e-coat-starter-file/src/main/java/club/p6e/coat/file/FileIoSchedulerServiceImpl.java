@@ -0,0 +1,203 @@
+package club.p6e.coat.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件 IO 调度服务
+ * 固定最大线程数量和最大排队数量的线程池，排队已满时拒绝执行（返回异常）而不是无限堆积
+ * 运行在支持虚拟线程的 JDK 上并开启配置时，线程池的线程使用虚拟线程创建
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = FileIoSchedulerService.class,
+        ignored = FileIoSchedulerServiceImpl.class
+)
+public class FileIoSchedulerServiceImpl implements FileIoSchedulerService, DisposableBean {
+
+    /**
+     * 线程名称的前缀
+     */
+    private static final String THREAD_NAME_PREFIX = "P6E-COAT-FILE-IO-";
+
+    /**
+     * 日志对象
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileIoSchedulerServiceImpl.class);
+
+    /**
+     * 线程池对象
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 调度器对象
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * 排队的数量
+     */
+    private final AtomicLong queueSize = new AtomicLong(0);
+
+    /**
+     * 提交的次数
+     */
+    private final AtomicLong submitCount = new AtomicLong(0);
+
+    /**
+     * 拒绝的次数
+     */
+    private final AtomicLong rejectCount = new AtomicLong(0);
+
+    /**
+     * 累计的等待时间（纳秒）
+     */
+    private final AtomicLong waitTime = new AtomicLong(0);
+
+    /**
+     * 累计的执行时间（纳秒）
+     */
+    private final AtomicLong executeTime = new AtomicLong(0);
+
+    /**
+     * 最大的等待时间（纳秒）
+     */
+    private final AtomicLong maxWaitTime = new AtomicLong(0);
+
+    /**
+     * 构造方法初始化
+     *
+     * @param properties 配置文件对象
+     */
+    public FileIoSchedulerServiceImpl(Properties properties) {
+        final Properties.FileIo fileIo = properties.getFileIo();
+        final int concurrency = Math.max(fileIo.getConcurrency(), 1);
+        this.executor = new ThreadPoolExecutor(
+                concurrency,
+                concurrency,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(fileIo.getQueueSize(), 1)),
+                threadFactory(fileIo.isVirtualThreads())
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+        this.scheduler = Schedulers.fromExecutorService(this.executor, "p6e-coat-file-io");
+    }
+
+    /**
+     * 创建线程工厂
+     * 通过反射创建虚拟线程的工厂，当前 JDK 不支持虚拟线程时使用平台线程
+     *
+     * @param virtualThreads 是否使用虚拟线程
+     * @return 线程工厂对象
+     */
+    private static ThreadFactory threadFactory(boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (Exception e) {
+                LOGGER.warn("virtual threads are not supported by the current JDK, use platform threads instead.");
+            }
+        }
+        final AtomicInteger index = new AtomicInteger(0);
+        return runnable -> {
+            final Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public <T> Mono<T> execute(Callable<T> callable) {
+        return Mono.defer(() -> {
+            final long submit = System.nanoTime();
+            final AtomicBoolean started = new AtomicBoolean(false);
+            submitCount.incrementAndGet();
+            queueSize.incrementAndGet();
+            return Mono
+                    .fromCallable(() -> {
+                        started.set(true);
+                        queueSize.decrementAndGet();
+                        final long start = System.nanoTime();
+                        final long wait = start - submit;
+                        waitTime.addAndGet(wait);
+                        maxWaitTime.accumulateAndGet(wait, Math::max);
+                        try {
+                            return callable.call();
+                        } finally {
+                            executeTime.addAndGet(System.nanoTime() - start);
+                        }
+                    })
+                    .subscribeOn(scheduler)
+                    .doOnError(e -> {
+                        if (e instanceof RejectedExecutionException || e.getCause() instanceof RejectedExecutionException) {
+                            rejectCount.incrementAndGet();
+                        }
+                    })
+                    .doFinally(s -> {
+                        // 没有开始执行（被拒绝或者被取消）的操作不再排队
+                        if (started.compareAndSet(false, true)) {
+                            queueSize.decrementAndGet();
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Void> run(Runnable runnable) {
+        return execute(() -> {
+            runnable.run();
+            return true;
+        }).then();
+    }
+
+    @Override
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public Map<String, Long> metrics() {
+        return new HashMap<>() {{
+            put("queueSize", queueSize.get());
+            put("activeCount", (long) executor.getActiveCount());
+            put("poolSize", (long) executor.getPoolSize());
+            put("submitCount", submitCount.get());
+            put("rejectCount", rejectCount.get());
+            put("waitTime", TimeUnit.NANOSECONDS.toMillis(waitTime.get()));
+            put("maxWaitTime", TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get()));
+            put("executeTime", TimeUnit.NANOSECONDS.toMillis(executeTime.get()));
+        }};
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+}
@@ -0,0 +1,74 @@
+package club.p6e.coat.file;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 文件合并任务服务
+ * 关闭上传时的合并、写入存储和修改记录作为任务提交到所在磁盘的队列中执行，同一个磁盘同时执行的任务数量有上限
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public interface FileMergeJobService {
+
+    /**
+     * 任务排队中
+     */
+    public static final String STATUS_QUEUED = "QUEUED";
+
+    /**
+     * 任务执行中
+     */
+    public static final String STATUS_RUNNING = "RUNNING";
+
+    /**
+     * 任务执行完成
+     */
+    public static final String STATUS_DONE = "DONE";
+
+    /**
+     * 任务执行失败
+     */
+    public static final String STATUS_FAILED = "FAILED";
+
+    /**
+     * 提交任务
+     * 任务提交后立即进入队列，不需要订阅返回的结果也会执行
+     *
+     * @param id   任务 ID（上传 ID）
+     * @param path 写入的存储路径（用于确定所在的磁盘）
+     * @param work 任务的内容
+     * @return 任务的执行结果
+     */
+    public Mono<Map<String, Object>> submit(int id, String path, Mono<Map<String, Object>> work);
+
+    /**
+     * 查询任务的状态
+     *
+     * @param id 任务 ID（上传 ID）
+     * @return 任务的状态（当前实例没有该任务时返回空）
+     */
+    public Mono<Map<String, Object>> status(int id);
+
+    /**
+     * 等待任务结束后查询任务的状态
+     * 超过等待时间时返回当前的状态
+     *
+     * @param id      任务 ID（上传 ID）
+     * @param timeout 等待时间
+     * @return 任务的状态（当前实例没有该任务时返回空）
+     */
+    public Mono<Map<String, Object>> await(int id, Duration timeout);
+
+    /**
+     * 获取任务的统计数据
+     * 包括每个磁盘排队和执行中的数量、提交/完成/失败的次数以及累计和最大的执行时间（毫秒）
+     *
+     * @return 任务的统计数据
+     */
+    public Map<String, Long> metrics();
+
+}
@@ -0,0 +1,412 @@
+package club.p6e.coat.file;
+
+import club.p6e.coat.file.utils.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件合并任务服务
+ * 每个磁盘（存储路径所在的文件系统）一个队列，队列中的任务按照配置的并行数量执行
+ * 任务结束后在保留时间内可以查询状态
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = FileMergeJobService.class,
+        ignored = FileMergeJobServiceImpl.class
+)
+public class FileMergeJobServiceImpl implements FileMergeJobService {
+
+    /**
+     * 默认的磁盘名称
+     */
+    private static final String DEFAULT_DISK = "DEFAULT";
+
+    /**
+     * 日志对象
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileMergeJobServiceImpl.class);
+
+    /**
+     * 配置文件对象
+     */
+    private final Properties properties;
+
+    /**
+     * 文件 IO 调度服务对象
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 存储路径和所在磁盘的缓存
+     */
+    private final Map<String, String> disks = new ConcurrentHashMap<>();
+
+    /**
+     * 每个磁盘的队列
+     */
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * 任务
+     */
+    private final Map<Integer, Job> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 提交的次数
+     */
+    private final AtomicLong submitCount = new AtomicLong(0);
+
+    /**
+     * 完成的次数
+     */
+    private final AtomicLong doneCount = new AtomicLong(0);
+
+    /**
+     * 失败的次数
+     */
+    private final AtomicLong failCount = new AtomicLong(0);
+
+    /**
+     * 累计的执行时间（毫秒）
+     */
+    private final AtomicLong mergeTime = new AtomicLong(0);
+
+    /**
+     * 最大的执行时间（毫秒）
+     */
+    private final AtomicLong maxMergeTime = new AtomicLong(0);
+
+    /**
+     * 构造方法初始化
+     *
+     * @param properties             配置文件对象
+     * @param fileIoSchedulerService 文件 IO 调度服务对象
+     */
+    public FileMergeJobServiceImpl(Properties properties, FileIoSchedulerService fileIoSchedulerService) {
+        this.properties = properties;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+    }
+
+    @Override
+    public Mono<Map<String, Object>> submit(int id, String path, Mono<Map<String, Object>> work) {
+        final Job job = new Job(id, work);
+        jobs.put(id, job);
+        submitCount.incrementAndGet();
+        disk(path).subscribe(
+                disk -> lanes.computeIfAbsent(disk, Lane::new).offer(job),
+                job::fail
+        );
+        return job.sink.asMono();
+    }
+
+    @Override
+    public Mono<Map<String, Object>> status(int id) {
+        final Job job = jobs.get(id);
+        return job == null ? Mono.empty() : Mono.just(job.toMap());
+    }
+
+    @Override
+    public Mono<Map<String, Object>> await(int id, Duration timeout) {
+        final Job job = jobs.get(id);
+        if (job == null) {
+            return Mono.empty();
+        }
+        final long max = properties.getMergeJob().getMaxWait();
+        final Duration wait = timeout.toMillis() > max ? Duration.ofMillis(max) : timeout;
+        if (wait.isZero() || wait.isNegative()) {
+            return Mono.just(job.toMap());
+        }
+        return job.sink.asMono()
+                .timeout(wait)
+                .onErrorResume(e -> Mono.empty())
+                .then(Mono.fromSupplier(job::toMap));
+    }
+
+    @Override
+    public Map<String, Long> metrics() {
+        return new HashMap<>() {{
+            long queueSize = 0;
+            long runningSize = 0;
+            for (final Lane lane : lanes.values()) {
+                queueSize += lane.queueSize.get();
+                runningSize += lane.runningSize.get();
+                put("queueSize:" + lane.disk, lane.queueSize.get());
+                put("runningSize:" + lane.disk, lane.runningSize.get());
+            }
+            put("queueSize", queueSize);
+            put("runningSize", runningSize);
+            put("jobSize", (long) jobs.size());
+            put("submitCount", submitCount.get());
+            put("doneCount", doneCount.get());
+            put("failCount", failCount.get());
+            put("mergeTime", mergeTime.get());
+            put("maxMergeTime", maxMergeTime.get());
+        }};
+    }
+
+    /**
+     * 读取存储路径所在的磁盘
+     * 存储路径不存在时向上查找存在的父路径，无法读取时使用存储路径作为磁盘
+     *
+     * @param path 存储路径
+     * @return 磁盘名称
+     */
+    private Mono<String> disk(String path) {
+        if (path == null || path.isEmpty()) {
+            return Mono.just(DEFAULT_DISK);
+        }
+        final String disk = disks.get(path);
+        if (disk != null) {
+            return Mono.just(disk);
+        }
+        return fileIoSchedulerService.execute(() -> {
+            try {
+                File file = new File(FileUtil.convertAbsolutePath(path)).getAbsoluteFile();
+                while (file != null && !file.exists()) {
+                    file = file.getParentFile();
+                }
+                if (file != null) {
+                    final Path store = file.toPath();
+                    return Files.getFileStore(store).name();
+                }
+            } catch (Exception e) {
+                LOGGER.warn("[ MERGE JOB DISK ] >>> {}", path, e);
+            }
+            return path;
+        }).doOnNext(d -> disks.put(path, d));
+    }
+
+    /**
+     * 任务结束
+     *
+     * @param job 任务
+     */
+    private void finish(Job job) {
+        final long time = job.endTime - job.startTime;
+        mergeTime.addAndGet(time);
+        maxMergeTime.accumulateAndGet(time, Math::max);
+        Mono.delay(Duration.ofMillis(Math.max(properties.getMergeJob().getRetention(), 0)))
+                .subscribe(t -> jobs.remove(job.id, job));
+    }
+
+    /**
+     * 磁盘的队列
+     */
+    private final class Lane {
+
+        /**
+         * 磁盘名称
+         */
+        private final String disk;
+
+        /**
+         * 排队的数量
+         */
+        private final AtomicLong queueSize = new AtomicLong(0);
+
+        /**
+         * 执行中的数量
+         */
+        private final AtomicLong runningSize = new AtomicLong(0);
+
+        /**
+         * 任务队列
+         */
+        private final Sinks.Many<Job> sink = Sinks.many().unicast().onBackpressureBuffer();
+
+        /**
+         * 构造方法初始化
+         *
+         * @param disk 磁盘名称
+         */
+        private Lane(String disk) {
+            this.disk = disk;
+            this.sink.asFlux()
+                    .flatMap(this::run, Math.max(properties.getMergeJob().getConcurrency(), 1))
+                    .subscribe();
+        }
+
+        /**
+         * 任务进入队列
+         *
+         * @param job 任务
+         */
+        private synchronized void offer(Job job) {
+            job.disk = disk;
+            queueSize.incrementAndGet();
+            sink.emitNext(job, Sinks.EmitFailureHandler.FAIL_FAST);
+        }
+
+        /**
+         * 执行任务
+         *
+         * @param job 任务
+         * @return 执行完成
+         */
+        private Mono<Void> run(Job job) {
+            queueSize.decrementAndGet();
+            runningSize.incrementAndGet();
+            job.start();
+            LOGGER.info("[ MERGE JOB START ] >>> {} :: {}", job.id, disk);
+            return job.work
+                    .doOnNext(job::done)
+                    .switchIfEmpty(Mono.fromRunnable(() -> job.done(new HashMap<>())))
+                    .doOnError(job::fail)
+                    .onErrorResume(e -> Mono.empty())
+                    .doFinally(s -> {
+                        runningSize.decrementAndGet();
+                        LOGGER.info("[ MERGE JOB END ] >>> {} :: {} :: {} :: {} ms",
+                                job.id, disk, job.status, job.endTime - job.startTime);
+                    })
+                    .then();
+        }
+
+    }
+
+    /**
+     * 任务
+     */
+    private final class Job {
+
+        /**
+         * 任务 ID
+         */
+        private final int id;
+
+        /**
+         * 任务的内容
+         */
+        private final Mono<Map<String, Object>> work;
+
+        /**
+         * 任务的结果
+         */
+        private final Sinks.One<Map<String, Object>> sink = Sinks.one();
+
+        /**
+         * 提交的时间
+         */
+        private final long queueTime = System.currentTimeMillis();
+
+        /**
+         * 磁盘名称
+         */
+        private volatile String disk;
+
+        /**
+         * 状态
+         */
+        private volatile String status = STATUS_QUEUED;
+
+        /**
+         * 开始执行的时间
+         */
+        private volatile long startTime;
+
+        /**
+         * 结束的时间
+         */
+        private volatile long endTime;
+
+        /**
+         * 执行的结果
+         */
+        private volatile Map<String, Object> result;
+
+        /**
+         * 失败的信息
+         */
+        private volatile String error;
+
+        /**
+         * 构造方法初始化
+         *
+         * @param id   任务 ID
+         * @param work 任务的内容
+         */
+        private Job(int id, Mono<Map<String, Object>> work) {
+            this.id = id;
+            this.work = work;
+        }
+
+        /**
+         * 开始执行
+         */
+        private void start() {
+            this.startTime = System.currentTimeMillis();
+            this.status = STATUS_RUNNING;
+        }
+
+        /**
+         * 执行完成
+         *
+         * @param result 执行的结果
+         */
+        private void done(Map<String, Object> result) {
+            this.result = result;
+            this.endTime = System.currentTimeMillis();
+            this.status = STATUS_DONE;
+            doneCount.incrementAndGet();
+            finish(this);
+            sink.tryEmitValue(result);
+        }
+
+        /**
+         * 执行失败
+         *
+         * @param e 异常对象
+         */
+        private void fail(Throwable e) {
+            this.error = e.getMessage();
+            this.endTime = System.currentTimeMillis();
+            if (this.startTime == 0) {
+                this.startTime = this.endTime;
+            }
+            this.status = STATUS_FAILED;
+            failCount.incrementAndGet();
+            LOGGER.error("[ MERGE JOB ERROR ] >>> {}", id, e);
+            finish(this);
+            sink.tryEmitError(e);
+        }
+
+        /**
+         * 任务的状态
+         *
+         * @return 任务的状态
+         */
+        private Map<String, Object> toMap() {
+            final Map<String, Object> map = new HashMap<>();
+            map.put("id", id);
+            map.put("status", status);
+            map.put("disk", disk);
+            map.put("queueTime", queueTime);
+            map.put("startTime", startTime);
+            map.put("endTime", endTime);
+            if (result != null) {
+                map.put("result", result);
+            }
+            if (error != null) {
+                map.put("error", error);
+            }
+            return map;
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package club.p6e.coat.file;
+
+import java.util.Map;
+
+/**
+ * 文件统计数据服务
+ * 汇总上传锁、上传数据缓存、分片记录批量写入、文件 IO 调度和合并任务的统计数据，
+ * 开启统计数据路由（p6e.coat.file.metrics.enabled）后通过 GET /metrics 返回
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public interface FileMetricsService {
+
+    /**
+     * 获取统计数据
+     * 按照来源分组：lock（上传锁）、cache（上传数据缓存）、chunkBatch（分片记录批量写入）、
+     * fileIo（文件 IO 调度）、mergeJob（合并任务），统计数据只包含当前实例
+     *
+     * @return 统计数据
+     */
+    public Map<String, Map<String, Long>> metrics();
+
+}
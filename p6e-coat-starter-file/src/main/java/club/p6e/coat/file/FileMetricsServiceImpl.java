@@ -0,0 +1,75 @@
+package club.p6e.coat.file;
+
+import club.p6e.coat.file.repository.UploadChunkBatchWriter;
+import club.p6e.coat.file.repository.UploadRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文件统计数据服务
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = FileMetricsService.class,
+        ignored = FileMetricsServiceImpl.class
+)
+public class FileMetricsServiceImpl implements FileMetricsService {
+
+    /**
+     * 上传存储库对象
+     */
+    private final UploadRepository uploadRepository;
+
+    /**
+     * 上传块延迟批量写入对象
+     */
+    private final UploadChunkBatchWriter uploadChunkBatchWriter;
+
+    /**
+     * 文件 IO 调度服务对象
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 文件合并任务服务对象
+     */
+    private final FileMergeJobService fileMergeJobService;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param uploadRepository       上传存储库对象
+     * @param uploadChunkBatchWriter 上传块延迟批量写入对象
+     * @param fileIoSchedulerService 文件 IO 调度服务对象
+     * @param fileMergeJobService    文件合并任务服务对象
+     */
+    public FileMetricsServiceImpl(
+            UploadRepository uploadRepository,
+            UploadChunkBatchWriter uploadChunkBatchWriter,
+            FileIoSchedulerService fileIoSchedulerService,
+            FileMergeJobService fileMergeJobService
+    ) {
+        this.uploadRepository = uploadRepository;
+        this.uploadChunkBatchWriter = uploadChunkBatchWriter;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        this.fileMergeJobService = fileMergeJobService;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> metrics() {
+        final Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        result.put("lock", uploadRepository.lockMetrics());
+        result.put("cache", uploadRepository.cacheMetrics());
+        result.put("chunkBatch", uploadChunkBatchWriter.metrics());
+        result.put("fileIo", fileIoSchedulerService.metrics());
+        result.put("mergeJob", fileMergeJobService.metrics());
+        return result;
+    }
+
+}
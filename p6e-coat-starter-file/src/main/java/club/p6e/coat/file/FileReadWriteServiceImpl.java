@@ -37,18 +37,64 @@ public class FileReadWriteServiceImpl implements FileReadWriteService {
      */
     private static final String DISK_RESOURCE_TYPE = "DISK";
 
+    /**
+     * 读取文件的缓冲区大小的扩展参数名称
+     */
+    public static final String READ_BUFFER_SIZE_EXTEND_NAME = "readBufferSize";
+
+    /**
+     * 是否使用内容寻址存储的扩展参数名称
+     */
+    public static final String CAS_EXTEND_NAME = FileBlobService.EXTEND_NAME;
+
+    /**
+     * 存储目录布局的扩展参数名称（DATE/HASH）
+     */
+    public static final String LAYOUT_EXTEND_NAME = "layout";
+
+    /**
+     * 读取文件的默认缓冲区大小
+     */
+    private static final int DEFAULT_READ_BUFFER_SIZE = 1024 * 1024;
+
     /**
      * 文件存储位置的路径服务
      */
     private final FolderStorageLocationPathService folderStorageLocationPathService;
 
+    /**
+     * 文件 IO 调度服务
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 文件内容服务
+     */
+    private final FileBlobService fileBlobService;
+
+    /**
+     * 文件签名服务
+     */
+    private final FileSignatureService fileSignatureService;
+
     /**
      * 构造方法初始化
      *
      * @param folderStorageLocationPathService 文件存储位置的路径服务
+     * @param fileIoSchedulerService           文件 IO 调度服务
+     * @param fileBlobService                  文件内容服务
+     * @param fileSignatureService             文件签名服务
      */
-    public FileReadWriteServiceImpl(FolderStorageLocationPathService folderStorageLocationPathService) {
+    public FileReadWriteServiceImpl(
+            FolderStorageLocationPathService folderStorageLocationPathService,
+            FileIoSchedulerService fileIoSchedulerService,
+            FileBlobService fileBlobService,
+            FileSignatureService fileSignatureService
+    ) {
         this.folderStorageLocationPathService = folderStorageLocationPathService;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        this.fileBlobService = fileBlobService;
+        this.fileSignatureService = fileSignatureService;
     }
 
     @Override
@@ -60,25 +106,59 @@ public class FileReadWriteServiceImpl implements FileReadWriteService {
         final String type = fileWriteActuator.type();
         if (DISK_RESOURCE_TYPE.equalsIgnoreCase(type)) {
             LOGGER.info("FILE WWW >> {}", type);
-            final String path = folderStorageLocationPathService.path();
-            final String relativePath = FileUtil.composePath(path, name);
+            final boolean cas = isCas(extend);
+            final String layout = getLayout(extend);
+            // 内容寻址存储先写入临时文件，写入完成后按照内容保存
+            // 散列布局直接写入文件路径，存储位置为文件路径/原始名称
+            final String relativePath;
+            final String location;
+            if (cas) {
+                relativePath = FileUtil.composePath(FileBlobService.PATH_PREFIX, "tmp/" + FileUtil.generateName());
+                location = null;
+            } else if (FolderStorageLocationPathService.HASH_LAYOUT.equalsIgnoreCase(layout)) {
+                relativePath = folderStorageLocationPathService.path(layout);
+                location = FileUtil.composePath(relativePath, name);
+            } else {
+                relativePath = FileUtil.composePath(folderStorageLocationPathService.path(layout), name);
+                location = relativePath;
+            }
             final String absolutePath = FileUtil.convertAbsolutePath(FileUtil.composePath(fileWriteActuator.path(), relativePath));
             final File file = new File(absolutePath);
             final File folder = file.getParentFile();
-            if (!FileUtil.checkFolderExist(folder)) {
-                FileUtil.createFolder(folder);
-            }
             LOGGER.info("FILE file >> {}", file);
             LOGGER.info("FILE folder >> {}", folder);
-            return fileWriteActuator.execute(file).flatMap(f -> {
+            final File source = fileWriteActuator.source();
+            final Mono<Void> prepare = fileIoSchedulerService.run(() -> {
+                if (!FileUtil.checkFolderExist(folder)) {
+                    FileUtil.createFolder(folder);
+                }
+            });
+            // 内容寻址存储优先读取写入的数据，写入的过程中同时计算内容的摘要
+            // 返回空字符串表示没有计算摘要（源文件提升或者执行器写入），保存内容时读取文件计算
+            final Mono<String> execute = Mono.defer(() -> {
+                final Flux<DataBuffer> content = cas ? fileWriteActuator.content() : null;
+                return content == null ? fileWriteActuator.execute(file).thenReturn("") : fileSignatureService
+                        .execute(FileBlobService.HASH_ALGORITHM, content, c -> FileUtil.writeFile(c, file))
+                        .onErrorResume(e -> fileIoSchedulerService.run(() -> FileUtil.deleteFile(file)).then(Mono.error(e)));
+            });
+            final Mono<String> mono = source == null ? prepare.then(execute) : prepare
+                    .then(fileIoSchedulerService.execute(() -> FileUtil.promoteFile(source, file)))
+                    .flatMap(b -> {
+                        LOGGER.info("FILE promote >> {} >> {} :: {}", source, file, b);
+                        return b ? Mono.just("") : execute;
+                    });
+            return mono.flatMap(hash -> fileIoSchedulerService.execute(file::length).flatMap(length -> (cas
+                    ? fileBlobService.store(fileWriteActuator.path(), file, hash.isEmpty() ? null : hash)
+                    .map(blob -> FileUtil.composePath(blob, name))
+                    : Mono.just(location)).map(p -> {
                 final FileActuatorModel fam = new FileActuatorModel();
                 fam.setName(name);
-                fam.setPath(relativePath);
-                fam.setLength(f.length());
+                fam.setPath(p);
+                fam.setLength(length);
                 fam.setType(DISK_RESOURCE_TYPE);
                 LOGGER.info("FILE fam >> {}", fam);
-                return Mono.just(fam);
-            });
+                return fam;
+            })));
         } else {
             return Mono.error(new ResourceNodeException(
                     this.getClass(),
@@ -99,8 +179,14 @@ public class FileReadWriteServiceImpl implements FileReadWriteService {
     ) {
         if (DISK_RESOURCE_TYPE.equalsIgnoreCase(type)) {
             LOGGER.info("FILE read >> {}", type);
-            final File file = new File(FileUtil.composePath(base, path));
-            return Mono.just(new FileReadActuator() {
+            // 内容寻址存储和散列布局的存储位置为文件路径/原始名称
+            final boolean flat = fileBlobService.isBlob(path) || folderStorageLocationPathService.isHashLayout(path);
+            final int index = path.lastIndexOf("/");
+            final File file = new File(FileUtil.composePath(base, flat ? path.substring(0, index) : path));
+            final String name = flat ? path.substring(index + 1) : file.getName();
+            final int bufferSize = getReadBufferSize(extend);
+            // 文件长度在文件 IO 线程中读取，之后读取模型不再访问文件系统
+            return fileIoSchedulerService.execute(file::length).map(length -> new FileReadActuator() {
 
                 @Override
                 public MediaType mediaType() {
@@ -112,20 +198,27 @@ public class FileReadWriteServiceImpl implements FileReadWriteService {
                     return new FileActuatorModel()
                             .setType(type)
                             .setPath(path)
-                            .setName(file.getName())
-                            .setLength(file.length());
+                            .setName(name)
+                            .setLength(length);
                 }
 
                 @Override
                 public Flux<DataBuffer> execute() {
                     LOGGER.info("FILE read execute >> {}", file);
-                    return FileUtil.readFile(file);
+                    return Flux.defer(() -> FileUtil.readFile(file, 0L, -1L, bufferSize))
+                            .subscribeOn(fileIoSchedulerService.scheduler(), false);
                 }
 
                 @Override
                 public Flux<DataBuffer> execute(long position, long size) {
                     LOGGER.info("FILE read execute >> {}/{} >>> {}", position, size, file);
-                    return FileUtil.readFile(file, position, size);
+                    return Flux.defer(() -> FileUtil.readFile(file, position, size, bufferSize))
+                            .subscribeOn(fileIoSchedulerService.scheduler(), false);
+                }
+
+                @Override
+                public File zeroCopyFile() {
+                    return file;
                 }
 
             });
@@ -139,4 +232,48 @@ public class FileReadWriteServiceImpl implements FileReadWriteService {
         }
     }
 
+    /**
+     * 读取扩展参数中是否使用内容寻址存储
+     *
+     * @param extend 扩展参数
+     * @return 是否使用内容寻址存储
+     */
+    private boolean isCas(Map<String, Object> extend) {
+        return fileBlobService.isEnabled(extend);
+    }
+
+    /**
+     * 读取扩展参数中的存储目录布局
+     *
+     * @param extend 扩展参数
+     * @return 存储目录布局（没有配置时为日期布局）
+     */
+    private String getLayout(Map<String, Object> extend) {
+        final Object content = extend == null ? null : extend.get(LAYOUT_EXTEND_NAME);
+        if (content instanceof final String layout && !layout.isBlank()) {
+            return layout.trim().toUpperCase();
+        }
+        return FolderStorageLocationPathService.DATE_LAYOUT;
+    }
+
+    /**
+     * 读取扩展参数中的缓冲区大小
+     *
+     * @param extend 扩展参数
+     * @return 缓冲区大小
+     */
+    private int getReadBufferSize(Map<String, Object> extend) {
+        final Object content = extend == null ? null : extend.get(READ_BUFFER_SIZE_EXTEND_NAME);
+        if (content instanceof final Integer size && size > 0) {
+            return size;
+        } else if (content instanceof final String size) {
+            try {
+                return Math.max(Integer.parseInt(size.trim()), 1);
+            } catch (Exception e) {
+                // 忽略异常
+            }
+        }
+        return DEFAULT_READ_BUFFER_SIZE;
+    }
+
 }
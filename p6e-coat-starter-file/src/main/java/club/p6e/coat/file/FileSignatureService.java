@@ -1,8 +1,13 @@
 package club.p6e.coat.file;
 
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * 文件签名服务
@@ -12,13 +17,83 @@ import java.io.File;
  */
 public interface FileSignatureService {
 
+    /**
+     * 默认的摘要算法名称
+     */
+    public static final String DEFAULT_ALGORITHM = "MD5";
+
+    /**
+     * 是否支持摘要算法
+     *
+     * @param algorithm 摘要算法名称
+     * @return 是否支持
+     */
+    public boolean isSupported(String algorithm);
+
     /**
      * 文件签名服务的执行
      *
      * @param file 文件对象
      * @return 签名的内容
      */
-    public Mono<String> execute(File file);
+    public default Mono<String> execute(File file) {
+        return execute(DEFAULT_ALGORITHM, file, 0L, -1L);
+    }
+
+    /**
+     * 文件签名服务的执行（文件的部分内容）
+     *
+     * @param file     文件对象
+     * @param position 签名内容在文件中的开始位置
+     * @param size     签名内容的长度
+     * @return 签名的内容
+     */
+    public default Mono<String> execute(File file, long position, long size) {
+        return execute(DEFAULT_ALGORITHM, file, position, size);
+    }
+
+    /**
+     * 文件签名服务的执行（写入的过程中计算签名）
+     * 数据流在交给写入函数的同时输入到摘要算法中，写入完成后签名也计算完成，不需要再次读取文件
+     *
+     * @param content 数据流
+     * @param writer  写入函数
+     * @return 签名的内容
+     */
+    public default Mono<String> execute(Flux<DataBuffer> content, Function<Flux<DataBuffer>, Mono<Void>> writer) {
+        return execute(DEFAULT_ALGORITHM, content, writer);
+    }
+
+    /**
+     * 文件签名服务的执行（文件的部分内容）
+     *
+     * @param algorithm 摘要算法名称
+     * @param file      文件对象
+     * @param position  签名内容在文件中的开始位置
+     * @param size      签名内容的长度
+     * @return 签名的内容
+     */
+    public Mono<String> execute(String algorithm, File file, long position, long size);
+
+    /**
+     * 文件签名服务的执行（写入的过程中计算签名）
+     *
+     * @param algorithm 摘要算法名称
+     * @param content   数据流
+     * @param writer    写入函数
+     * @return 签名的内容
+     */
+    public Mono<String> execute(String algorithm, Flux<DataBuffer> content, Function<Flux<DataBuffer>, Mono<Void>> writer);
+
+    /**
+     * 根据分片签名计算整个文件的树形签名（Merkle Tree，SHA-256）
+     * 叶子节点为 SHA-256(0x00 || 分片摘要的原始字节)，分支节点为 SHA-256(0x01 || 左节点 || 右节点)
+     * 不需要再次读取文件的内容
+     *
+     * @param signatures 按照分片顺序排列的分片签名
+     * @return 树形签名的内容
+     */
+    public String tree(List<String> signatures);
 
     /**
      * 摘要算法对象
@@ -32,6 +107,18 @@ public interface FileSignatureService {
          */
         public void input(byte[] bytes);
 
+        /**
+         * 输入签名内容
+         * 默认复制为字节数组输入，实现类可以直接读取缓冲区避免复制
+         *
+         * @param buffer 签名内容
+         */
+        public default void input(ByteBuffer buffer) {
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            input(bytes);
+        }
+
         /**
          * 获取签名结果
          *
@@ -5,12 +5,24 @@ import club.p6e.coat.file.utils.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
 
 /**
  * 文件签名服务
@@ -33,33 +45,163 @@ public class FileSignatureServiceImpl implements FileSignatureService {
     private static final char[] HEX_CHARS = new char[]
             {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
 
+    /**
+     * 摘要算法注册表
+     * KEY 为大写的摘要算法名称
+     */
+    private final Map<String, Supplier<FileSignatureService.DigestAlgorithm>> algorithms = new ConcurrentHashMap<>();
+
+    /**
+     * 文件 IO 调度服务
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param fileIoSchedulerService 文件 IO 调度服务
+     */
+    public FileSignatureServiceImpl(FileIoSchedulerService fileIoSchedulerService) {
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        register("MD5", () -> new MessageDigestAlgorithm("MD5"));
+        register("SHA-256", () -> new MessageDigestAlgorithm("SHA-256"));
+        register("CRC32C", Crc32cDigestAlgorithm::new);
+        register("XXHASH64", XxHash64DigestAlgorithm::new);
+    }
+
+    /**
+     * 注册摘要算法
+     *
+     * @param name     摘要算法名称
+     * @param supplier 摘要算法对象的提供者
+     */
+    public void register(String name, Supplier<FileSignatureService.DigestAlgorithm> supplier) {
+        algorithms.put(name.toUpperCase(), supplier);
+    }
+
+    @Override
+    public boolean isSupported(String algorithm) {
+        return algorithm != null && algorithms.containsKey(algorithm.toUpperCase());
+    }
+
     @Override
-    public Mono<String> execute(File file) {
-        LOGGER.info("FileSignatureServiceImpl   :::: file >>>>>>>>>>>>> {}", file);
-        final FileSignatureService.DigestAlgorithm digestAlgorithm = new DefaultDigestAlgorithm();
-        return Mono.just(file)
-                .flatMap(f -> FileUtil.checkFileExist(f) ? Mono.just(f) : Mono.error(new FileException(
+    public Mono<String> execute(String algorithm, File file, long position, long size) {
+        LOGGER.info("FileSignatureServiceImpl   :::: file >>>>>>>>>>>>> {} :: {} :: {}/{}", algorithm, file, position, size);
+        return fileIoSchedulerService
+                .execute(() -> FileUtil.checkFileExist(file))
+                .flatMap(b -> b ? Mono.just(file) : Mono.error(new FileException(
                         FileSignatureServiceImpl.class,
-                        "fun execute(File file). ==> " +
+                        "fun execute(String algorithm, File file, long position, long size). ==> " +
                                 "execute(...) resource data is not a file exception.",
                         "execute(...) resource data is not a file exception."
                 )))
-                .flatMap(f -> FileUtil
-                        .readFile(file)
-                        .flatMap(buffer -> {
+                .flatMap(f -> digestAlgorithm(algorithm))
+                .flatMap(da -> Flux
+                        .defer(() -> FileUtil.readFile(file, position, size))
+                        .subscribeOn(fileIoSchedulerService.scheduler(), false)
+                        .doOnNext(buffer -> {
                             try {
-                                final int count = buffer.readableByteCount();
-                                final byte[] bytes = new byte[count];
-                                buffer.read(bytes);
-                                digestAlgorithm.input(bytes);
-                                LOGGER.info("FileSignatureServiceImpl   :::: md5 file >>>>>>>>>>>>> {}", file);
-                                return Mono.just(count);
+                                input(da, buffer);
                             } finally {
                                 DataBufferUtils.release(buffer);
-                                LOGGER.info("FileSignatureServiceImpl   :::: release  file {}", file);
                             }
-                        }).count())
-                .map(l -> digestAlgorithmBytesToHexString(digestAlgorithm.output()));
+                        })
+                        .then(Mono.fromSupplier(() -> digestAlgorithmBytesToHexString(da.output()))));
+    }
+
+    @Override
+    public Mono<String> execute(String algorithm, Flux<DataBuffer> content, Function<Flux<DataBuffer>, Mono<Void>> writer) {
+        return digestAlgorithm(algorithm).flatMap(da -> writer
+                .apply(content.doOnNext(buffer -> input(da, buffer)))
+                .then(Mono.fromSupplier(() -> digestAlgorithmBytesToHexString(da.output()))));
+    }
+
+    /**
+     * 树形签名的叶子节点计算为 SHA-256(0x00 || 分片签名的摘要字节)，分支节点计算为 SHA-256(0x01 || 左节点 || 右节点)
+     * 分片签名是摘要的 HEX 字符串，叶子节点输入的是 HEX 解码后的原始字节，节点数量为奇数时最后一个节点直接提升到上一层
+     * 分片签名不是 HEX 字符串时返回空
+     */
+    @Override
+    public String tree(List<String> signatures) {
+        if (signatures == null || signatures.isEmpty()) {
+            return null;
+        }
+        List<byte[]> nodes = new ArrayList<>();
+        for (final String signature : signatures) {
+            final MessageDigest md = sha256();
+            md.update((byte) 0x00);
+            try {
+                md.update(HexFormat.of().parseHex(signature));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("tree signature is not hex >>> {}", signature);
+                return null;
+            }
+            nodes.add(md.digest());
+        }
+        while (nodes.size() > 1) {
+            final List<byte[]> parents = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i += 2) {
+                if (i + 1 < nodes.size()) {
+                    final MessageDigest md = sha256();
+                    md.update((byte) 0x01);
+                    md.update(nodes.get(i));
+                    md.update(nodes.get(i + 1));
+                    parents.add(md.digest());
+                } else {
+                    parents.add(nodes.get(i));
+                }
+            }
+            nodes = parents;
+        }
+        return digestAlgorithmBytesToHexString(nodes.get(0));
+    }
+
+    /**
+     * 创建 SHA-256 摘要算法对象
+     *
+     * @return 摘要算法对象
+     */
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 创建摘要算法对象
+     *
+     * @param algorithm 摘要算法名称，为空使用默认的摘要算法
+     * @return 摘要算法对象
+     */
+    private Mono<FileSignatureService.DigestAlgorithm> digestAlgorithm(String algorithm) {
+        final String name = algorithm == null || algorithm.isEmpty() ? DEFAULT_ALGORITHM : algorithm.toUpperCase();
+        final Supplier<FileSignatureService.DigestAlgorithm> supplier = algorithms.get(name);
+        if (supplier == null) {
+            return Mono.error(new FileException(
+                    this.getClass(),
+                    "fun digestAlgorithm(String algorithm). ==> " +
+                            "digestAlgorithm(...) unsupported digest algorithm [ " + algorithm + " ].",
+                    "digestAlgorithm(...) unsupported digest algorithm [ " + algorithm + " ]."
+            ));
+        }
+        return Mono.fromSupplier(supplier);
+    }
+
+    /**
+     * 输入缓冲区的可读内容到摘要算法
+     * 读取的是缓冲区的视图，不会复制数据也不会改变缓冲区的读取位置
+     * 使用 Spring Framework 5.x/6.x 都提供的 asByteBuffer，readableByteBuffers 需要更高版本的 Spring Framework
+     *
+     * @param digestAlgorithm 摘要算法对象
+     * @param buffer          缓冲区对象
+     */
+    @SuppressWarnings("deprecation")
+    private void input(FileSignatureService.DigestAlgorithm digestAlgorithm, DataBuffer buffer) {
+        if (buffer.readableByteCount() > 0) {
+            digestAlgorithm.input(buffer.asByteBuffer());
+        }
     }
 
     /**
@@ -69,7 +211,7 @@ public class FileSignatureServiceImpl implements FileSignatureService {
      * @return 转换结果
      */
     private String digestAlgorithmBytesToHexString(byte[] bytes) {
-        final char[] chars = new char[32];
+        final char[] chars = new char[bytes.length * 2];
         for (int i = 0; i < chars.length; i += 2) {
             final byte b = bytes[i / 2];
             chars[i] = HEX_CHARS[b >>> 4 & 15];
@@ -79,9 +221,9 @@ public class FileSignatureServiceImpl implements FileSignatureService {
     }
 
     /**
-     * 默认的摘要算法实现
+     * MessageDigest 的摘要算法实现（MD5/SHA-256）
      */
-    private static class DefaultDigestAlgorithm implements FileSignatureService.DigestAlgorithm {
+    private static class MessageDigestAlgorithm implements FileSignatureService.DigestAlgorithm {
 
         /**
          * 摘要算法对象
@@ -90,10 +232,12 @@ public class FileSignatureServiceImpl implements FileSignatureService {
 
         /**
          * 构造方法初始化
+         *
+         * @param algorithm 摘要算法名称
          */
-        public DefaultDigestAlgorithm() {
+        public MessageDigestAlgorithm(String algorithm) {
             try {
-                this.md = MessageDigest.getInstance("MD5");
+                this.md = MessageDigest.getInstance(algorithm);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -104,6 +248,11 @@ public class FileSignatureServiceImpl implements FileSignatureService {
             md.update(bytes);
         }
 
+        @Override
+        public void input(ByteBuffer buffer) {
+            md.update(buffer);
+        }
+
         @Override
         public byte[] output() {
             return md.digest();
@@ -111,4 +260,146 @@ public class FileSignatureServiceImpl implements FileSignatureService {
 
     }
 
+    /**
+     * CRC32C 的摘要算法实现
+     * 输出为 4 字节大端序
+     */
+    private static class Crc32cDigestAlgorithm implements FileSignatureService.DigestAlgorithm {
+
+        /**
+         * 校验对象
+         */
+        private final CRC32C crc = new CRC32C();
+
+        @Override
+        public void input(byte[] bytes) {
+            crc.update(bytes);
+        }
+
+        @Override
+        public void input(ByteBuffer buffer) {
+            crc.update(buffer);
+        }
+
+        @Override
+        public byte[] output() {
+            return ByteBuffer.allocate(4).putInt((int) crc.getValue()).array();
+        }
+
+    }
+
+    /**
+     * XXHASH64 的摘要算法实现（seed = 0）
+     * 输出为 8 字节大端序（和 xxhsum 的输出一致）
+     */
+    private static class XxHash64DigestAlgorithm implements FileSignatureService.DigestAlgorithm {
+
+        private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+        private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long PRIME64_3 = 0x165667B19E3779F9L;
+        private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+        private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+        /**
+         * 累加器
+         */
+        private long v1 = PRIME64_1 + PRIME64_2;
+        private long v2 = PRIME64_2;
+        private long v3 = 0;
+        private long v4 = -PRIME64_1;
+
+        /**
+         * 输入的总长度
+         */
+        private long length = 0;
+
+        /**
+         * 不足 32 字节的剩余内容
+         */
+        private final ByteBuffer memory = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+
+        @Override
+        public void input(byte[] bytes) {
+            input(ByteBuffer.wrap(bytes));
+        }
+
+        @Override
+        public void input(ByteBuffer buffer) {
+            final ByteBuffer content = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(buffer.limit());
+            length += content.remaining();
+            if (memory.position() > 0) {
+                while (memory.hasRemaining() && content.hasRemaining()) {
+                    memory.put(content.get());
+                }
+                if (memory.hasRemaining()) {
+                    return;
+                }
+                memory.flip();
+                stripe(memory);
+                memory.clear();
+            }
+            while (content.remaining() >= 32) {
+                stripe(content);
+            }
+            memory.put(content);
+        }
+
+        @Override
+        public byte[] output() {
+            long h;
+            if (length >= 32) {
+                h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                        + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                h = merge(h, v1);
+                h = merge(h, v2);
+                h = merge(h, v3);
+                h = merge(h, v4);
+            } else {
+                h = PRIME64_5;
+            }
+            h += length;
+            memory.flip();
+            while (memory.remaining() >= 8) {
+                h ^= round(0, memory.getLong());
+                h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+            }
+            if (memory.remaining() >= 4) {
+                h ^= (memory.getInt() & 0xFFFFFFFFL) * PRIME64_1;
+                h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+            }
+            while (memory.hasRemaining()) {
+                h ^= (memory.get() & 0xFFL) * PRIME64_5;
+                h = Long.rotateLeft(h, 11) * PRIME64_1;
+            }
+            h ^= h >>> 33;
+            h *= PRIME64_2;
+            h ^= h >>> 29;
+            h *= PRIME64_3;
+            h ^= h >>> 32;
+            return ByteBuffer.allocate(8).putLong(h).array();
+        }
+
+        /**
+         * 处理 32 字节的内容
+         *
+         * @param content 内容（小端序）
+         */
+        private void stripe(ByteBuffer content) {
+            v1 = round(v1, content.getLong());
+            v2 = round(v2, content.getLong());
+            v3 = round(v3, content.getLong());
+            v4 = round(v4, content.getLong());
+        }
+
+        private static long round(long acc, long input) {
+            return Long.rotateLeft(acc + input * PRIME64_2, 31) * PRIME64_1;
+        }
+
+        private static long merge(long acc, long value) {
+            return (acc ^ round(0, value)) * PRIME64_1 + PRIME64_4;
+        }
+
+    }
+
 }
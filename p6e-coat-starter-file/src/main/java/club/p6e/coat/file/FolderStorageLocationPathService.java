@@ -8,6 +8,24 @@ package club.p6e.coat.file;
  */
 public interface FolderStorageLocationPathService {
 
+    /**
+     * 日期布局
+     * 每个文件一个文件夹（yyyy/MM/dd/唯一名称），文件以原始名称保存在文件夹中
+     */
+    public static final String DATE_LAYOUT = "DATE";
+
+    /**
+     * 散列布局
+     * 唯一名称散列到固定两层（256 x 256）的文件夹中（hash/xx/xx/唯一名称），文件直接以唯一名称保存，没有每个文件的文件夹
+     * 存储位置为文件路径/原始名称，读取时去掉原始名称得到文件路径
+     */
+    public static final String HASH_LAYOUT = "HASH";
+
+    /**
+     * 散列布局的存储路径前缀
+     */
+    public static final String HASH_LAYOUT_PREFIX = "hash";
+
     /**
      * 获取文件保存的路径
      *
@@ -15,4 +33,25 @@ public interface FolderStorageLocationPathService {
      */
     public String path();
 
+    /**
+     * 获取指定布局的文件保存的路径
+     * 日期布局返回文件夹的路径，散列布局返回文件的路径
+     *
+     * @param layout 布局（DATE/HASH）
+     * @return 文件保存的路径
+     */
+    public default String path(String layout) {
+        return path();
+    }
+
+    /**
+     * 是否为散列布局的存储位置
+     *
+     * @param location 存储位置
+     * @return 是否为散列布局的存储位置
+     */
+    public default boolean isHashLayout(String location) {
+        return location != null && location.startsWith(HASH_LAYOUT_PREFIX + "/");
+    }
+
 }
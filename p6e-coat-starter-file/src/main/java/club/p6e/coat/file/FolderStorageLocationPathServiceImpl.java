@@ -38,4 +38,19 @@ public class FolderStorageLocationPathServiceImpl implements FolderStorageLocati
                 GeneratorUtil.uuid() + GeneratorUtil.random(6, true, false));
     }
 
+    @Override
+    public String path(String layout) {
+        if (HASH_LAYOUT.equalsIgnoreCase(layout)) {
+            // 唯一名称的散列值的低两个字节决定两层文件夹
+            final String name = FileUtil.generateName();
+            int hash = name.hashCode();
+            hash ^= hash >>> 16;
+            hash *= 0x45d9f3b;
+            hash ^= hash >>> 16;
+            return FileUtil.composePath(HASH_LAYOUT_PREFIX,
+                    String.format("%02x/%02x/%s", (hash >>> 8) & 0xff, hash & 0xff, name));
+        }
+        return path();
+    }
+
 }
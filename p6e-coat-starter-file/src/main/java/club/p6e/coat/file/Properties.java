@@ -8,7 +8,9 @@ import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -49,6 +51,297 @@ public class Properties implements Serializable {
          */
         private long maxSize = 1024 * 1024 * 30;
 
+        /**
+         * 合并分片时并行拷贝的最大数量（每一个合并）
+         * 同一个磁盘同时执行的合并数量由合并任务的并行数量限制（mergeJob.concurrency），
+         * 一个磁盘上同时拷贝的数量最多为 mergeJob.concurrency * mergeConcurrency
+         */
+        private int mergeConcurrency = 4;
+
+        /**
+         * 分片写入完成后是否重新读取磁盘上的数据再次校验签名
+         * 默认签名在写入的过程中同时计算，不会再次读取磁盘
+         */
+        private boolean verify = false;
+
+    }
+
+    /**
+     * 分片清除
+     */
+    private SliceClean sliceClean = new SliceClean();
+
+    /**
+     * 分片清除类
+     * 按照上传编号分批读取过期的分片上传，批量删除数据库记录，并行删除分片文件夹
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class SliceClean implements Serializable {
+
+        /**
+         * 分片过期的天数
+         */
+        private int expire = 30;
+
+        /**
+         * 一次读取和删除的上传数量
+         */
+        private int batchSize = 1000;
+
+        /**
+         * 并行删除分片文件夹的最大数量
+         */
+        private int concurrency = 4;
+
+        /**
+         * 每秒删除分片文件夹的最大数量（小于等于 0 时不限制）
+         * 用以限制清除任务占用的磁盘 IO
+         */
+        private int rate = 0;
+
+        /**
+         * 分区的数量
+         * 上传编号按照取模划分为多个分区，多个实例可以同时清除不同的分区
+         */
+        private int shards = 16;
+
+        /**
+         * 分区租约的时长（毫秒）
+         * 持有租约的实例退出后，租约过期时其它实例从记录的进度继续清除
+         */
+        private long lease = 1000 * 60 * 5;
+
+    }
+
+    /**
+     * 分片记录延迟批量写入
+     */
+    private UploadChunkBatch uploadChunkBatch = new UploadChunkBatch();
+
+    /**
+     * 分片记录延迟批量写入类
+     * 开启后分片记录先保存在内存队列中，达到数量或者时间间隔时通过一条多行的 SQL 写入
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class UploadChunkBatch implements Serializable {
+
+        /**
+         * 是否开启
+         */
+        private boolean enabled = false;
+
+        /**
+         * 一次批量写入的最大数量
+         */
+        private int size = 200;
+
+        /**
+         * 批量写入的时间间隔（毫秒）
+         */
+        private long interval = 20;
+
+        /**
+         * 分片上传返回结果之前需要保证的持久化级别
+         * DATABASE: 分片记录已经写入数据库（批量提交）
+         * DISK: 分片数据已经同步到磁盘，分片记录还在队列中
+         * NONE: 分片数据已经写入文件（系统缓存），分片记录还在队列中
+         * DISK/NONE 在进程异常退出时可能丢失队列中的分片记录，客户端需要通过分片上传状态重新上传缺失的分片
+         */
+        private String durability = "DATABASE";
+
+    }
+
+    /**
+     * 上传数据缓存
+     */
+    private UploadCache uploadCache = new UploadCache();
+
+    /**
+     * 上传数据缓存类
+     * 缓存根据 ID 查询的上传数据，减少上传过程中重复查询数据库
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class UploadCache implements Serializable {
+
+        /**
+         * 缓存的最大数量（小于等于 0 时不缓存）
+         */
+        private int maxSize = 10000;
+
+        /**
+         * 缓存的过期时间（毫秒）
+         * 多个实例共享数据库时，其它实例的修改最多延迟该时间可见
+         */
+        private long expire = 1000 * 60;
+
+    }
+
+    /**
+     * 上传会话
+     */
+    private UploadSession uploadSession = new UploadSession();
+
+    /**
+     * 上传会话类
+     * 打开的分片上传在空闲（没有上传分片）超过指定时间后回收分片文件夹和记录
+     * 会话的到期时间保存在 file_upload_session 表中，开启之前需要创建该表
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class UploadSession implements Serializable {
+
+        /**
+         * 是否开启（默认关闭，升级后需要先创建会话表再开启）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 空闲的过期时间（毫秒）
+         */
+        private long idle = 1000 * 60 * 30;
+
+        /**
+         * 时间轮一个刻度的时长（毫秒）
+         */
+        private long tick = 1000;
+
+        /**
+         * 从数据库加载即将到期的会话的时间间隔（毫秒）
+         * 用以恢复重启前和其它实例打开的会话
+         */
+        private long rescan = 1000 * 60 * 5;
+
+    }
+
+    /**
+     * 文件 IO
+     */
+    private FileIo fileIo = new FileIo();
+
+    /**
+     * 文件 IO 类
+     * 阻塞的文件系统操作在独立的有界线程池中执行
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class FileIo implements Serializable {
+
+        /**
+         * 最大的线程数量
+         */
+        private int concurrency = Math.max(Runtime.getRuntime().availableProcessors() * 4, 16);
+
+        /**
+         * 最大的排队数量（超过时拒绝执行）
+         */
+        private int queueSize = 10000;
+
+        /**
+         * 是否使用虚拟线程（需要 JDK 21 及以上）
+         */
+        private boolean virtualThreads = false;
+
+    }
+
+    /**
+     * 合并任务
+     */
+    private MergeJob mergeJob = new MergeJob();
+
+    /**
+     * 合并任务类
+     * 关闭上传时的合并按照写入的磁盘排队执行，可以异步关闭后查询合并的状态
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class MergeJob implements Serializable {
+
+        /**
+         * 每个磁盘同时执行的最大数量
+         */
+        private int concurrency = 2;
+
+        /**
+         * 任务结束后保留状态的时间（毫秒）
+         */
+        private long retention = 1000 * 60 * 60;
+
+        /**
+         * 查询状态时最大的等待时间（毫秒）
+         */
+        private long maxWait = 1000 * 30;
+
+    }
+
+    /**
+     * 存储布局迁移
+     */
+    private LayoutMigration layoutMigration = new LayoutMigration();
+
+    /**
+     * 存储布局迁移类
+     * 启动后把指定上传节点中日期布局（年/月/日/文件夹/文件）的文件移动到散列布局（hash/xx/xx/文件），并修改存储位置
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class LayoutMigration implements Serializable {
+
+        /**
+         * 是否开启
+         */
+        private boolean enabled = false;
+
+        /**
+         * 需要迁移的上传节点
+         */
+        private List<String> nodes = new ArrayList<>();
+
+        /**
+         * 一次读取的上传数量
+         */
+        private int batchSize = 500;
+
+        /**
+         * 并行移动文件的最大数量
+         */
+        private int concurrency = 4;
+
+        /**
+         * 是否在原来的位置保留硬链接
+         * 保留时客户端保存的旧的存储位置在迁移后可以继续下载，但是删除文件只会删除新的位置，
+         * 原来位置的硬链接（和文件数据）不会被删除，需要在旧的存储位置不再使用后自行清理
+         */
+        private boolean link = false;
+
+        /**
+         * 迁移租约的时长（毫秒）
+         * 多个实例同时启动时只有持有租约的实例迁移同一个上传节点，持有租约的实例退出后，租约过期时其它实例从记录的进度继续迁移
+         */
+        private long lease = 1000 * 60 * 5;
+
+    }
+
+    /**
+     * 统计数据
+     */
+    private Metrics metrics = new Metrics();
+
+    /**
+     * 统计数据类
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class Metrics implements Serializable {
+
+        /**
+         * 是否开启统计数据路由（GET /metrics）
+         * 统计数据包含实例内部的运行状态，开启时需要通过网关或者过滤器限制访问
+         */
+        private boolean enabled = false;
+
     }
 
     /**
@@ -73,6 +366,22 @@ public class Properties implements Serializable {
          */
         private String path;
 
+        /**
+         * 允许上传的文件大小的最大值，小于等于 0 表示不限制
+         */
+        private long maxSize = -1;
+
+        /**
+         * 默认的分片签名的摘要算法
+         */
+        private String signatureAlgorithm = "MD5";
+
+        /**
+         * 允许客户端在打开上传时选择的摘要算法（MD5/SHA-256/CRC32C/XXHASH64）
+         * 为空时允许选择所有支持的摘要算法
+         */
+        private List<String> signatureAlgorithms = new ArrayList<>();
+
         /**
          * 扩展参数
          */
@@ -102,6 +411,11 @@ public class Properties implements Serializable {
          */
         private String path;
 
+        /**
+         * 读取文件的最大缓冲区大小
+         */
+        private int readBufferSize = 1024 * 1024;
+
         /**
          * 扩展参数
          */
@@ -131,6 +445,11 @@ public class Properties implements Serializable {
          */
         private String path;
 
+        /**
+         * 读取文件的最大缓冲区大小
+         */
+        private int readBufferSize = 1024 * 1024;
+
         /**
          * 扩展参数
          */
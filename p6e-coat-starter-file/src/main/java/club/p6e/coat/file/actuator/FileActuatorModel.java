@@ -35,4 +35,19 @@ public class FileActuatorModel implements Serializable {
      */
     private long length;
 
+    /**
+     * 文件签名（可选）
+     */
+    private String signature;
+
+    /**
+     * 文件签名中叶子节点（分片签名）的摘要算法（可选）
+     */
+    private String signatureAlgorithm;
+
+    /**
+     * 文件签名中每个分片的长度（可选，小于等于 0 表示未知）
+     */
+    private long signatureSliceSize;
+
 }
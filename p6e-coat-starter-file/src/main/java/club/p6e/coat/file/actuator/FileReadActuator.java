@@ -4,6 +4,8 @@ import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import reactor.core.publisher.Flux;
 
+import java.io.File;
+
 /**
  * 文件读取执行器
  *
@@ -42,4 +44,14 @@ public interface FileReadActuator {
      */
     public Flux<DataBuffer> execute(long position, long size);
 
+    /**
+     * 获取支持零拷贝（sendfile）发送的本地文件对象
+     * 返回 null 表示当前执行器不支持零拷贝，将使用 execute(...) 的缓冲读取方式
+     *
+     * @return 本地文件对象
+     */
+    public default File zeroCopyFile() {
+        return null;
+    }
+
 }
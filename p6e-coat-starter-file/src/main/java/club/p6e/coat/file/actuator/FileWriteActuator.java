@@ -1,5 +1,7 @@
 package club.p6e.coat.file.actuator;
 
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.File;
@@ -34,4 +36,26 @@ public interface FileWriteActuator {
      */
     public Mono<File> execute(File file);
 
+    /**
+     * 源文件
+     * 提供源文件时，写入服务会优先在同一个文件系统内通过硬链接提升为目标文件（源文件保留），
+     * 只有在不同文件系统之间（或者不支持硬链接）才会调用 execute(...) 复制数据
+     *
+     * @return 源文件对象，没有源文件返回 null
+     */
+    public default File source() {
+        return null;
+    }
+
+    /**
+     * 写入的数据
+     * 内容寻址存储写入时，写入服务优先读取写入的数据并在写入的过程中同时计算内容的摘要，
+     * 不需要在写入完成后重新读取文件计算摘要，没有提供时调用 execute(...) 写入
+     *
+     * @return 写入的数据，没有提供返回 null
+     */
+    public default Flux<DataBuffer> content() {
+        return null;
+    }
+
 }
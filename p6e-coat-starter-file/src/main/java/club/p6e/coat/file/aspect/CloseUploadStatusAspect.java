@@ -0,0 +1,10 @@
+package club.p6e.coat.file.aspect;
+
+/**
+ * 关闭分片上传状态-切面（钩子）
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public interface CloseUploadStatusAspect extends Aspect {
+}
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -18,6 +19,11 @@ public class DefaultCloseUploadAspectImpl implements CloseUploadAspect {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultCloseUploadAspectImpl.class);
 
+    /**
+     * 合并任务状态返回给前端用户的数据
+     */
+    private static final String[] STATUS_KEYS = new String[]{"id", "status", "queueTime", "startTime", "endTime", "error"};
+
     @Override
     public int order() {
         return 0;
@@ -33,17 +39,43 @@ public class DefaultCloseUploadAspectImpl implements CloseUploadAspect {
     public Mono<Boolean> after(Map<String, Object> data, Map<String, Object> result) {
         // 对返回的结果数据进行处理
         // 从而屏蔽一些不想给前端用户显示的数据
-        final String storage = String.valueOf(result.get("storageLocation"));
-        final String name = String.valueOf(result.get("name"));
-        final Object size = result.get("size");
-        final Object id = result.get("id");
+        final Map<String, Object> content;
+        if (result.get("status") != null) {
+            // 异步关闭返回合并任务的状态，合并完成时的结果同样屏蔽不想显示的数据
+            content = new HashMap<>();
+            for (final String key : STATUS_KEYS) {
+                if (result.get(key) != null) {
+                    content.put(key, result.get(key));
+                }
+            }
+            if (result.get("result") instanceof final Map<?, ?> map) {
+                content.put("result", filter(map));
+            }
+        } else {
+            content = filter(result);
+        }
         result.clear();
-        result.put("id", id);
-        result.put("size", size);
-        result.put("name", name);
-        result.put("path", storage);
+        result.putAll(content);
         LOGGER.info("close upload aspect result: {}", result);
         return Mono.just(true);
     }
 
+    /**
+     * 屏蔽上传结果中不想给前端用户显示的数据
+     *
+     * @param result 上传结果
+     * @return 给前端用户显示的数据
+     */
+    private Map<String, Object> filter(Map<?, ?> result) {
+        final Map<String, Object> content = new HashMap<>();
+        content.put("id", result.get("id"));
+        content.put("size", result.get("size"));
+        content.put("name", String.valueOf(result.get("name")));
+        content.put("path", String.valueOf(result.get("storageLocation")));
+        // 文件的签名，用于客户端校验合并后的文件
+        content.put("signature", result.get("signature"));
+        content.put("signatureAlgorithm", result.get("signatureAlgorithm"));
+        return content;
+    }
+
 }
@@ -0,0 +1,43 @@
+package club.p6e.coat.file.aspect;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * 关闭分片上传状态-切面（钩子）
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = CloseUploadStatusAspect.class,
+        ignored = DefaultCloseUploadStatusAspectImpl.class
+)
+public class DefaultCloseUploadStatusAspectImpl implements CloseUploadStatusAspect {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultCloseUploadStatusAspectImpl.class);
+
+    @Override
+    public int order() {
+        return 0;
+    }
+
+    @Override
+    public Mono<Boolean> before(Map<String, Object> data) {
+        LOGGER.info("DefaultCloseUploadStatusAspectImpl.before() >>>>> {}", data);
+        return Mono.just(true);
+    }
+
+    @Override
+    public Mono<Boolean> after(Map<String, Object> data, Map<String, Object> result) {
+        LOGGER.info("DefaultCloseUploadStatusAspectImpl.after() >>>>> {} :: {}", result.get("id"), result.get("status"));
+        return Mono.just(true);
+    }
+
+}
@@ -34,9 +34,18 @@ public class DefaultOpenUploadAspectImpl implements OpenUploadAspect {
     public Mono<Boolean> after(Map<String, Object> data, Map<String, Object> result) {
         // 对返回的结果数据进行处理
         // 从而屏蔽一些不想给前端用户显示的数据
+        // 秒传的挑战（challenge）和是否已经完成（complete）需要返回给客户端
         final Object id = result.get("id");
+        final Object challenge = result.get("challenge");
+        final Object complete = result.get("complete");
         result.clear();
         result.put("id", id);
+        if (challenge != null) {
+            result.put("challenge", challenge);
+        }
+        if (complete != null) {
+            result.put("complete", complete);
+        }
         LOGGER.info("DefaultOpenUploadAspectImpl.after() >>>>> {}", result);
         return Mono.just(true);
     }
@@ -38,11 +38,16 @@ public class DefaultSimpleUploadAspectImpl implements SimpleUploadAspect {
         final Object size = result.get("size");
         final String name = String.valueOf(result.get("name"));
         final String storageLocation = String.valueOf(result.get("storageLocation"));
+        // 秒传完成时返回 complete
+        final Object complete = result.get("complete");
         result.clear();
         result.put("id", id);
         result.put("size", size);
         result.put("name", name);
         result.put("path", storageLocation);
+        if (complete != null) {
+            result.put("complete", complete);
+        }
         LOGGER.info("DefaultSimpleUploadAspectImpl.after() >>>>> {}", result);
         return Mono.just(true);
     }
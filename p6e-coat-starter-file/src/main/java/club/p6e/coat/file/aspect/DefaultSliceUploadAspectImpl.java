@@ -42,11 +42,16 @@ public class DefaultSliceUploadAspectImpl implements SliceUploadAspect {
         final Object fid = result.get("fid");
         final Object name = result.get("name");
         final Object size = result.get("size");
+        final Object durability = result.get("durability");
+        final Object registered = result.get("registered");
         result.clear();
         result.put("id", id);
         result.put("fid", fid);
         result.put("name", name);
         result.put("size", size);
+        // 分片的持久化级别和分片记录是否已经写入数据库，客户端根据它们决定是否需要查询分片上传状态
+        result.put("durability", durability);
+        result.put("registered", registered);
         LOGGER.info("DefaultSliceUploadAspectImpl.after() >>>>> {}", result);
         return Mono.just(true);
     }
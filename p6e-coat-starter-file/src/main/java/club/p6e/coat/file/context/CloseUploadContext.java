@@ -25,6 +25,12 @@ public class CloseUploadContext extends HashMap<String, Object> implements Seria
      */
     private String node;
 
+    /**
+     * 是否异步关闭
+     * 异步关闭时合并任务进入队列后立即返回任务状态，通过关闭状态接口查询合并结果
+     */
+    private Boolean async;
+
     /**
      * 无参数构造
      */
@@ -44,6 +50,9 @@ public class CloseUploadContext extends HashMap<String, Object> implements Seria
         if (map.get("node") != null && map.get("node") instanceof final String content) {
             this.setNode(content);
         }
+        if (map.get("async") != null && map.get("async") instanceof final Boolean content) {
+            this.setAsync(content);
+        }
     }
 
     public void setId(Integer id) {
@@ -64,4 +73,13 @@ public class CloseUploadContext extends HashMap<String, Object> implements Seria
         }
     }
 
+    public void setAsync(Boolean async) {
+        this.async = async;
+        if (async == null) {
+            remove("async");
+        } else {
+            this.put("async", async);
+        }
+    }
+
 }
@@ -0,0 +1,67 @@
+package club.p6e.coat.file.context;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 关闭分片上传状态上下文对象
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Getter
+public class CloseUploadStatusContext extends HashMap<String, Object> implements Serializable {
+
+    /**
+     * 编号
+     */
+    private Integer id;
+
+    /**
+     * 等待合并结束的时间（毫秒）
+     */
+    private Long wait;
+
+    /**
+     * 无参数构造
+     */
+    public CloseUploadStatusContext() {
+    }
+
+    /**
+     * 构造函数初始化
+     *
+     * @param map 初始化对象
+     */
+    public CloseUploadStatusContext(Map<String, Object> map) {
+        this.putAll(map);
+        if (map.get("id") != null && map.get("id") instanceof final Integer content) {
+            this.setId(content);
+        }
+        if (map.get("wait") != null && map.get("wait") instanceof final Long content) {
+            this.setWait(content);
+        }
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+        if (id == null) {
+            remove("id");
+        } else {
+            this.put("id", id);
+        }
+    }
+
+    public void setWait(Long wait) {
+        this.wait = wait;
+        if (wait == null) {
+            remove("wait");
+        } else {
+            this.put("wait", wait);
+        }
+    }
+
+}
@@ -20,6 +20,45 @@ public class OpenUploadContext extends HashMap<String, Object> implements Serial
      */
     private String name;
 
+    /**
+     * 上传文件的总长度（可选）
+     */
+    private Long size;
+
+    /**
+     * 上传文件的分片长度（可选）
+     * 和文件的总长度一起提供时，分片将直接写入预分配的文件的对应位置
+     */
+    private Long sliceSize;
+
+    /**
+     * 上传节点（可选）
+     */
+    private String node;
+
+    /**
+     * 分片签名的摘要算法（可选）
+     */
+    private String signatureAlgorithm;
+
+    /**
+     * 上传文件的摘要（SHA-256，可选）
+     * 和文件的总长度一起提供时，上传节点（内容寻址存储）已经保存了相同内容的文件时返回持有内容的挑战，
+     * 再次打开时提供挑战的随机字符和证明，验证通过后直接完成上传（秒传）
+     */
+    private String hash;
+
+    /**
+     * 秒传挑战的随机字符（可选）
+     */
+    private String nonce;
+
+    /**
+     * 持有内容的证明（可选）
+     * 和挑战的随机字符一起提供并且验证通过时才能秒传
+     */
+    private String proof;
+
     /**
      * 无参数构造
      */
@@ -36,6 +75,27 @@ public class OpenUploadContext extends HashMap<String, Object> implements Serial
         if (map.get("name") != null && map.get("name") instanceof final String content) {
             this.setName(content);
         }
+        if (map.get("size") != null && map.get("size") instanceof final Long content) {
+            this.setSize(content);
+        }
+        if (map.get("sliceSize") != null && map.get("sliceSize") instanceof final Long content) {
+            this.setSliceSize(content);
+        }
+        if (map.get("node") != null && map.get("node") instanceof final String content) {
+            this.setNode(content);
+        }
+        if (map.get("signatureAlgorithm") != null && map.get("signatureAlgorithm") instanceof final String content) {
+            this.setSignatureAlgorithm(content);
+        }
+        if (map.get("hash") != null && map.get("hash") instanceof final String content) {
+            this.setHash(content);
+        }
+        if (map.get("nonce") != null && map.get("nonce") instanceof final String content) {
+            this.setNonce(content);
+        }
+        if (map.get("proof") != null && map.get("proof") instanceof final String content) {
+            this.setProof(content);
+        }
     }
 
     public void setName(String name) {
@@ -47,4 +107,67 @@ public class OpenUploadContext extends HashMap<String, Object> implements Serial
         }
     }
 
+    public void setSize(Long size) {
+        this.size = size;
+        if (size == null) {
+            remove("size");
+        } else {
+            this.put("size", size);
+        }
+    }
+
+    public void setSliceSize(Long sliceSize) {
+        this.sliceSize = sliceSize;
+        if (sliceSize == null) {
+            remove("sliceSize");
+        } else {
+            this.put("sliceSize", sliceSize);
+        }
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+        if (node == null) {
+            remove("node");
+        } else {
+            this.put("node", node);
+        }
+    }
+
+    public void setSignatureAlgorithm(String signatureAlgorithm) {
+        this.signatureAlgorithm = signatureAlgorithm;
+        if (signatureAlgorithm == null) {
+            remove("signatureAlgorithm");
+        } else {
+            this.put("signatureAlgorithm", signatureAlgorithm);
+        }
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+        if (hash == null) {
+            remove("hash");
+        } else {
+            this.put("hash", hash);
+        }
+    }
+
+    public void setNonce(String nonce) {
+        this.nonce = nonce;
+        if (nonce == null) {
+            remove("nonce");
+        } else {
+            this.put("nonce", nonce);
+        }
+    }
+
+    public void setProof(String proof) {
+        this.proof = proof;
+        if (proof == null) {
+            remove("proof");
+        } else {
+            this.put("proof", proof);
+        }
+    }
+
 }
@@ -26,6 +26,28 @@ public class SimpleUploadContext extends HashMap<String, Object> implements Seri
      */
     private FilePart filePart;
 
+    /**
+     * 上传文件的摘要（SHA-256，可选）
+     * 和文件的长度、挑战的随机字符和持有内容的证明一起提供并且验证通过时，直接完成上传（秒传），不写入上传的文件
+     */
+    private String hash;
+
+    /**
+     * 上传文件的长度（可选）
+     */
+    private Long size;
+
+    /**
+     * 秒传挑战的随机字符（可选）
+     */
+    private String nonce;
+
+    /**
+     * 持有内容的证明（可选）
+     * 和挑战的随机字符一起提供并且验证通过时才能秒传
+     */
+    private String proof;
+
     /**
      * 无参数构造
      */
@@ -45,6 +67,18 @@ public class SimpleUploadContext extends HashMap<String, Object> implements Seri
         if (map.get("filePart") != null && map.get("filePart") instanceof final FilePart fp) {
             this.setFilePart(fp);
         }
+        if (map.get("hash") != null && map.get("hash") instanceof final String content) {
+            this.setHash(content);
+        }
+        if (map.get("nonce") != null && map.get("nonce") instanceof final String content) {
+            this.setNonce(content);
+        }
+        if (map.get("proof") != null && map.get("proof") instanceof final String content) {
+            this.setProof(content);
+        }
+        if (map.get("size") != null && map.get("size") instanceof final Long content) {
+            this.setSize(content);
+        }
     }
 
     public void setNode(String node) {
@@ -65,4 +99,40 @@ public class SimpleUploadContext extends HashMap<String, Object> implements Seri
         }
     }
 
+    public void setHash(String hash) {
+        this.hash = hash;
+        if (hash == null) {
+            remove("hash");
+        } else {
+            this.put("hash", hash);
+        }
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+        if (size == null) {
+            remove("size");
+        } else {
+            this.put("size", size);
+        }
+    }
+
+    public void setNonce(String nonce) {
+        this.nonce = nonce;
+        if (nonce == null) {
+            remove("nonce");
+        } else {
+            this.put("nonce", nonce);
+        }
+    }
+
+    public void setProof(String proof) {
+        this.proof = proof;
+        if (proof == null) {
+            remove("proof");
+        } else {
+            this.put("proof", proof);
+        }
+    }
+
 }
@@ -0,0 +1,50 @@
+package club.p6e.coat.file.context;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分片上传状态上下文对象
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Getter
+public class SliceUploadStatusContext extends HashMap<String, Object> implements Serializable {
+
+    /**
+     * 编号
+     */
+    private Integer id;
+
+    /**
+     * 无参数构造
+     */
+    public SliceUploadStatusContext() {
+    }
+
+    /**
+     * 构造函数初始化
+     *
+     * @param map 初始化对象
+     */
+    public SliceUploadStatusContext(Map<String, Object> map) {
+        this.putAll(map);
+        if (map.get("id") != null && map.get("id") instanceof final Integer content) {
+            this.setId(content);
+        }
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+        if (id == null) {
+            remove("id");
+        } else {
+            this.put("id", id);
+        }
+    }
+
+}
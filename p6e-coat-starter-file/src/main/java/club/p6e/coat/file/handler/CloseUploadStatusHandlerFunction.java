@@ -0,0 +1,71 @@
+package club.p6e.coat.file.handler;
+
+import club.p6e.coat.file.aspect.CloseUploadStatusAspect;
+import club.p6e.coat.file.context.CloseUploadStatusContext;
+import club.p6e.coat.file.mapper.RequestParameterMapper;
+import club.p6e.coat.file.service.CloseUploadStatusService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 关闭分片上传状态-处理函数
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = CloseUploadStatusHandlerFunction.class,
+        ignored = CloseUploadStatusHandlerFunction.class
+)
+public class CloseUploadStatusHandlerFunction extends AspectHandlerFunction implements HandlerFunction<ServerResponse> {
+
+    /**
+     * 关闭分片上传状态服务对象
+     */
+    private final CloseUploadStatusService service;
+
+    /**
+     * 关闭分片上传状态切面列表对象
+     */
+    private final List<CloseUploadStatusAspect> aspects;
+
+    /**
+     * 构造函数初始化
+     *
+     * @param service 关闭分片上传状态服务对象
+     * @param aspects 关闭分片上传状态切面列表对象
+     */
+    public CloseUploadStatusHandlerFunction(CloseUploadStatusService service, List<CloseUploadStatusAspect> aspects) {
+        this.service = service;
+        this.aspects = aspects;
+    }
+
+    @NonNull
+    @Override
+    public Mono<ServerResponse> handle(@NonNull ServerRequest request) {
+        return
+                // 通过请求参数映射器获取上下文对象
+                RequestParameterMapper.execute(request, CloseUploadStatusContext.class)
+                        // 执行查询关闭分片上传状态之前的切点
+                        .flatMap(c -> before(aspects, c))
+                        .flatMap(m -> {
+                            final CloseUploadStatusContext context = new CloseUploadStatusContext(m);
+                            return
+                                    // 执行查询关闭分片上传状态
+                                    service.execute(context)
+                                            // 执行查询关闭分片上传状态之后的切点
+                                            .flatMap(r -> after(aspects, context, r));
+                        })
+                        // 结果返回
+                        .flatMap(r -> ServerResponse.ok().bodyValue(ResultContext.build(r)));
+    }
+
+}
@@ -1,5 +1,6 @@
 package club.p6e.coat.file.handler;
 
+import club.p6e.coat.file.actuator.FileActuatorModel;
 import club.p6e.coat.file.aspect.DownloadAspect;
 import club.p6e.coat.file.context.DownloadContext;
 import club.p6e.coat.common.error.FileException;
@@ -32,7 +33,22 @@ import java.util.List;
         value = DownloadHandlerFunction.class,
         ignored = DownloadHandlerFunction.class
 )
-public class DownloadHandlerFunction extends AspectHandlerFunction implements HandlerFunction<ServerResponse> {
+public class DownloadHandlerFunction extends ReadHandlerFunction implements HandlerFunction<ServerResponse> {
+
+    /**
+     * 文件签名的响应头
+     */
+    private static final String SIGNATURE_HEADER = "X-File-Signature";
+
+    /**
+     * 文件签名中叶子节点（分片签名）的摘要算法的响应头
+     */
+    private static final String SIGNATURE_ALGORITHM_HEADER = "X-File-Signature-Algorithm";
+
+    /**
+     * 文件签名中每个分片的长度的响应头
+     */
+    private static final String SIGNATURE_SLICE_SIZE_HEADER = "X-File-Signature-Slice-Size";
 
     /**
      * 下载文件服务对象
@@ -80,10 +96,20 @@ public class DownloadHandlerFunction extends AspectHandlerFunction implements Ha
                                 ));
                             }
                             if (!ranges.isEmpty()) {
-                                final HttpRange range = ranges.get(0);
                                 final long length = fra.model().getLength();
-                                final long el = range.getRangeEnd(length);
-                                final long sl = range.getRangeStart(length);
+                                final List<RangePart> parts = parts(ranges, length);
+                                if (parts.size() > 1) {
+                                    final String boundary = boundary();
+                                    return ServerResponse
+                                            .status(HttpStatus.PARTIAL_CONTENT)
+                                            .contentLength(multipartLength(parts, MediaType.APPLICATION_OCTET_STREAM, boundary, length))
+                                            .contentType(multipartMediaType(boundary))
+                                            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                                            .header("Content-Disposition", "attachment; filename=" + fc)
+                                            .body((response, context) -> write(response, fra, MediaType.APPLICATION_OCTET_STREAM, parts, boundary, length));
+                                }
+                                final long el = parts.get(0).end();
+                                final long sl = parts.get(0).start();
                                 final long cl = el - sl + 1;
                                 return ServerResponse
                                         .status(HttpStatus.PARTIAL_CONTENT)
@@ -91,16 +117,41 @@ public class DownloadHandlerFunction extends AspectHandlerFunction implements Ha
                                         .contentType(MediaType.APPLICATION_OCTET_STREAM)
                                         .header(HttpHeaders.ACCEPT_RANGES, "bytes")
                                         .header(HttpHeaders.CONTENT_RANGE, "bytes " + sl + "-" + el + "/" + length)
+                                        .headers(headers -> signature(headers, fra.model()))
                                         .header("Content-Disposition", "attachment; filename=" + fc)
-                                        .body((response, context) -> response.writeWith(fra.execute(sl, cl)));
+                                        .body((response, context) -> write(response, fra, sl, cl));
                             } else {
+                                final long length = fra.model().getLength();
                                 return ServerResponse
                                         .ok()
+                                        .contentLength(length)
+                                        .headers(headers -> signature(headers, fra.model()))
                                         .header(HttpHeaders.ACCEPT_RANGES, "bytes")
                                         .header("Content-Disposition", "attachment; filename=" + fc)
                                         .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                                        .body((response, context) -> response.writeWith(fra.execute()));
+                                        .body((response, context) -> write(response, fra, length));
                             }
                         });
     }
+
+    /**
+     * 写入文件签名的响应头
+     * 树形签名的叶子节点为分片签名，客户端需要分片的摘要算法和分片的长度才能校验树形签名
+     *
+     * @param headers 响应头
+     * @param model   文件执行器模型
+     */
+    private void signature(HttpHeaders headers, FileActuatorModel model) {
+        final String signature = model.getSignature();
+        if (signature != null && !signature.isEmpty()) {
+            headers.set(SIGNATURE_HEADER, signature);
+            if (model.getSignatureAlgorithm() != null && !model.getSignatureAlgorithm().isEmpty()) {
+                headers.set(SIGNATURE_ALGORITHM_HEADER, model.getSignatureAlgorithm());
+            }
+            if (model.getSignatureSliceSize() > 0) {
+                headers.set(SIGNATURE_SLICE_SIZE_HEADER, String.valueOf(model.getSignatureSliceSize()));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,49 @@
+package club.p6e.coat.file.handler;
+
+import club.p6e.coat.file.FileMetricsService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * 统计数据-处理函数
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = MetricsHandlerFunction.class,
+        ignored = MetricsHandlerFunction.class
+)
+public class MetricsHandlerFunction extends AspectHandlerFunction implements HandlerFunction<ServerResponse> {
+
+    /**
+     * 文件统计数据服务对象
+     */
+    private final FileMetricsService service;
+
+    /**
+     * 构造函数初始化
+     *
+     * @param service 文件统计数据服务对象
+     */
+    public MetricsHandlerFunction(FileMetricsService service) {
+        this.service = service;
+    }
+
+    @NonNull
+    @Override
+    public Mono<ServerResponse> handle(@NonNull ServerRequest request) {
+        return Mono
+                // 读取统计数据
+                .fromSupplier(service::metrics)
+                // 结果返回
+                .flatMap(r -> ServerResponse.ok().bodyValue(ResultContext.build(r)));
+    }
+
+}
@@ -0,0 +1,241 @@
+package club.p6e.coat.file.handler;
+
+import club.p6e.coat.file.actuator.FileReadActuator;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文件读取-处理函数
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public class ReadHandlerFunction extends AspectHandlerFunction {
+
+    /**
+     * 多范围读取时允许合并为一次顺序读取的最大间隔
+     * 间隔内的数据会被读取后丢弃，用以减少随机读取
+     */
+    private static final long RANGE_MERGE_GAP_SIZE = 1024 * 8;
+
+    /**
+     * 换行符号
+     */
+    private static final String CRLF = "\r\n";
+
+    /**
+     * 写入文件的全部内容
+     *
+     * @param message 响应对象
+     * @param fra     文件读取执行器对象
+     * @param length  文件长度
+     * @return 写入结果
+     */
+    public Mono<Void> write(ReactiveHttpOutputMessage message, FileReadActuator fra, long length) {
+        final File file = fra.zeroCopyFile();
+        if (file != null && message instanceof final ZeroCopyHttpOutputMessage zcm) {
+            return zcm.writeWith(file, 0, length);
+        } else {
+            return message.writeWith(fra.execute());
+        }
+    }
+
+    /**
+     * 写入文件的部分内容
+     * 执行器提供本地文件并且响应对象支持零拷贝时，交给 Netty 通过 sendfile 直接发送
+     * 否则回退到执行器的缓冲读取方式
+     *
+     * @param message  响应对象
+     * @param fra      文件读取执行器对象
+     * @param position 读取的文件开始位置
+     * @param size     读取的文件长度
+     * @return 写入结果
+     */
+    public Mono<Void> write(ReactiveHttpOutputMessage message, FileReadActuator fra, long position, long size) {
+        final File file = fra.zeroCopyFile();
+        if (file != null && message instanceof final ZeroCopyHttpOutputMessage zcm) {
+            return zcm.writeWith(file, position, size);
+        } else {
+            return message.writeWith(fra.execute(position, size));
+        }
+    }
+
+    /**
+     * 写入文件的多个范围的内容（multipart/byteranges）
+     * 相邻或者间隔较小的范围合并为一次顺序读取，再按照范围拆分为多个部分输出
+     *
+     * @param message   响应对象
+     * @param fra       文件读取执行器对象
+     * @param mediaType 每个部分的媒体类型
+     * @param parts     范围列表（通过 parts(...) 获取）
+     * @param boundary  分隔符
+     * @param length    文件长度
+     * @return 写入结果
+     */
+    public Mono<Void> write(
+            ReactiveHttpOutputMessage message,
+            FileReadActuator fra,
+            MediaType mediaType,
+            List<RangePart> parts,
+            String boundary,
+            long length
+    ) {
+        final DataBufferFactory factory = message.bufferFactory();
+        final List<List<RangePart>> groups = new ArrayList<>();
+        for (final RangePart part : parts) {
+            final List<RangePart> group = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+            if (group != null && part.start() - group.get(group.size() - 1).end() - 1 <= RANGE_MERGE_GAP_SIZE) {
+                group.add(part);
+            } else {
+                groups.add(new ArrayList<>(List.of(part)));
+            }
+        }
+        return message.writeWith(Flux
+                .fromIterable(groups)
+                .concatMap(group -> Flux.defer(() -> {
+                    final long start = group.get(0).start();
+                    final long end = group.get(group.size() - 1).end();
+                    final long[] offset = new long[]{start};
+                    final int[] index = new int[]{0};
+                    return fra.execute(start, end - start + 1).concatMapIterable(buffer -> {
+                        final List<DataBuffer> result = new ArrayList<>();
+                        while (buffer.readableByteCount() > 0 && index[0] < group.size()) {
+                            final RangePart part = group.get(index[0]);
+                            if (offset[0] < part.start()) {
+                                // 跳过两个范围之间的间隔数据
+                                final int skip = (int) Math.min(part.start() - offset[0], buffer.readableByteCount());
+                                buffer.readPosition(buffer.readPosition() + skip);
+                                offset[0] += skip;
+                                continue;
+                            }
+                            if (offset[0] == part.start()) {
+                                result.add(factory.wrap(partHeader(part, mediaType, boundary, length)));
+                            }
+                            final int take = (int) Math.min(part.end() - offset[0] + 1, buffer.readableByteCount());
+                            result.add(buffer.split(buffer.readPosition() + take));
+                            offset[0] += take;
+                            if (offset[0] > part.end()) {
+                                index[0]++;
+                            }
+                        }
+                        DataBufferUtils.release(buffer);
+                        return result;
+                    });
+                }))
+                .concatWith(Mono.fromSupplier(() -> factory.wrap(finishBoundary(boundary)))));
+    }
+
+    /**
+     * 解析请求的范围列表
+     * 按照开始位置排序，并将重叠或相邻的范围合并为一个部分（RFC 7233 允许合并重叠的范围）
+     *
+     * @param ranges 请求的范围列表
+     * @param length 文件长度
+     * @return 范围列表
+     */
+    public List<RangePart> parts(List<HttpRange> ranges, long length) {
+        final List<RangePart> list = new ArrayList<>();
+        for (final HttpRange range : ranges) {
+            list.add(new RangePart(range.getRangeStart(length), range.getRangeEnd(length)));
+        }
+        list.sort(Comparator.comparingLong(RangePart::start));
+        final List<RangePart> result = new ArrayList<>();
+        for (final RangePart part : list) {
+            final RangePart last = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (last != null && part.start() <= last.end() + 1) {
+                result.set(result.size() - 1, new RangePart(last.start(), Math.max(last.end(), part.end())));
+            } else {
+                result.add(part);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 生成多范围内容的分隔符
+     *
+     * @return 分隔符
+     */
+    public String boundary() {
+        return new String(MimeTypeUtils.generateMultipartBoundary(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 多范围内容的媒体类型
+     *
+     * @param boundary 分隔符
+     * @return 媒体类型
+     */
+    public MediaType multipartMediaType(String boundary) {
+        return new MediaType("multipart", "byteranges", Map.of("boundary", boundary));
+    }
+
+    /**
+     * 计算多范围内容的长度
+     *
+     * @param parts     范围列表
+     * @param mediaType 每个部分的媒体类型
+     * @param boundary  分隔符
+     * @param length    文件长度
+     * @return 内容长度
+     */
+    public long multipartLength(List<RangePart> parts, MediaType mediaType, String boundary, long length) {
+        long result = finishBoundary(boundary).length;
+        for (final RangePart part : parts) {
+            result += partHeader(part, mediaType, boundary, length).length + part.end() - part.start() + 1;
+        }
+        return result;
+    }
+
+    /**
+     * 部分内容的头部
+     *
+     * @param part      范围
+     * @param mediaType 媒体类型
+     * @param boundary  分隔符
+     * @param length    文件长度
+     * @return 头部内容
+     */
+    private byte[] partHeader(RangePart part, MediaType mediaType, String boundary, long length) {
+        return (CRLF + "--" + boundary + CRLF
+                + HttpHeaders.CONTENT_TYPE + ": " + mediaType + CRLF
+                + HttpHeaders.CONTENT_RANGE + ": bytes " + part.start() + "-" + part.end() + "/" + length + CRLF
+                + CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 结束的分隔符
+     *
+     * @param boundary 分隔符
+     * @return 结束的分隔符内容
+     */
+    private byte[] finishBoundary(String boundary) {
+        return (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 范围
+     *
+     * @param start 开始位置
+     * @param end   结束位置（包含）
+     */
+    public record RangePart(long start, long end) {
+    }
+
+}
@@ -29,7 +29,7 @@ import java.util.List;
         value = ResourceHandlerFunction.class,
         ignored = ResourceHandlerFunction.class
 )
-public class ResourceHandlerFunction extends AspectHandlerFunction implements HandlerFunction<ServerResponse> {
+public class ResourceHandlerFunction extends ReadHandlerFunction implements HandlerFunction<ServerResponse> {
 
     /**
      * 资源查看服务对象
@@ -68,9 +68,18 @@ public class ResourceHandlerFunction extends AspectHandlerFunction implements Ha
                             final long length = fra.model().getLength();
                             final List<HttpRange> ranges = request.headers().range();
                             if (!ranges.isEmpty()) {
-                                final HttpRange range = ranges.get(0);
-                                final long el = range.getRangeEnd(length);
-                                final long sl = range.getRangeStart(length);
+                                final List<RangePart> parts = parts(ranges, length);
+                                if (parts.size() > 1) {
+                                    final String boundary = boundary();
+                                    return ServerResponse
+                                            .status(HttpStatus.PARTIAL_CONTENT)
+                                            .contentLength(multipartLength(parts, mediaType, boundary, length))
+                                            .contentType(multipartMediaType(boundary))
+                                            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                                            .body((response, context) -> write(response, fra, mediaType, parts, boundary, length));
+                                }
+                                final long el = parts.get(0).end();
+                                final long sl = parts.get(0).start();
                                 final long cl = el - sl + 1;
                                 return ServerResponse
                                         .status(HttpStatus.PARTIAL_CONTENT)
@@ -78,12 +87,13 @@ public class ResourceHandlerFunction extends AspectHandlerFunction implements Ha
                                         .contentType(mediaType)
                                         .header(HttpHeaders.ACCEPT_RANGES, "bytes")
                                         .header(HttpHeaders.CONTENT_RANGE, "bytes " + sl + "-" + el + "/" + length)
-                                        .body((response, context) -> response.writeWith(fra.execute(sl, cl)));
+                                        .body((response, context) -> write(response, fra, sl, cl));
                             } else {
                                 return ServerResponse
                                         .ok()
+                                        .contentLength(length)
                                         .contentType(mediaType)
-                                        .body((response, context) -> response.writeWith(fra.execute()));
+                                        .body((response, context) -> write(response, fra, length));
                             }
                         });
     }
@@ -0,0 +1,71 @@
+package club.p6e.coat.file.handler;
+
+import club.p6e.coat.file.aspect.SliceUploadStatusAspect;
+import club.p6e.coat.file.context.SliceUploadStatusContext;
+import club.p6e.coat.file.mapper.RequestParameterMapper;
+import club.p6e.coat.file.service.SliceUploadStatusService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 分片上传状态-处理函数
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = SliceUploadStatusHandlerFunction.class,
+        ignored = SliceUploadStatusHandlerFunction.class
+)
+public class SliceUploadStatusHandlerFunction extends AspectHandlerFunction implements HandlerFunction<ServerResponse> {
+
+    /**
+     * 分片上传状态服务对象
+     */
+    private final SliceUploadStatusService service;
+
+    /**
+     * 分片上传状态切面列表对象
+     */
+    private final List<SliceUploadStatusAspect> aspects;
+
+    /**
+     * 构造函数初始化
+     *
+     * @param service 分片上传状态服务对象
+     * @param aspects 分片上传状态切面列表对象
+     */
+    public SliceUploadStatusHandlerFunction(SliceUploadStatusService service, List<SliceUploadStatusAspect> aspects) {
+        this.service = service;
+        this.aspects = aspects;
+    }
+
+    @NonNull
+    @Override
+    public Mono<ServerResponse> handle(@NonNull ServerRequest request) {
+        return
+                // 通过请求参数映射器获取上下文对象
+                RequestParameterMapper.execute(request, SliceUploadStatusContext.class)
+                        // 执行查询分片上传状态之前的切点
+                        .flatMap(c -> before(aspects, c))
+                        .flatMap(m -> {
+                            final SliceUploadStatusContext context = new SliceUploadStatusContext(m);
+                            return
+                                    // 执行查询分片上传状态
+                                    service.execute(context)
+                                            // 执行查询分片上传状态之后的切点
+                                            .flatMap(r -> after(aspects, context, r));
+                        })
+                        // 结果返回
+                        .flatMap(r -> ServerResponse.ok().bodyValue(ResultContext.build(r)));
+    }
+
+}
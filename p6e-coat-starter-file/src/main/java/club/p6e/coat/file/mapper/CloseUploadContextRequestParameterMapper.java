@@ -37,6 +37,11 @@ public class CloseUploadContextRequestParameterMapper extends RequestParameterMa
      */
     private static final String URL_PARAMETER_NODE = "node";
 
+    /**
+     * ASYNC 请求参数
+     */
+    private static final String URL_PARAMETER_ASYNC = "async";
+
     /**
      * PATH URL ID 请求参数
      */
@@ -52,6 +57,11 @@ public class CloseUploadContextRequestParameterMapper extends RequestParameterMa
      */
     private static final String FORM_DATA_PARAMETER_NODE = "node";
 
+    /**
+     * FORM DATA ASYNC 请求参数
+     */
+    private static final String FORM_DATA_PARAMETER_ASYNC = "async";
+
     /**
      * RAW JSON ID 请求参数
      */
@@ -62,6 +72,11 @@ public class CloseUploadContextRequestParameterMapper extends RequestParameterMa
      */
     private static final String RAW_JSON_PARAMETER_NODE = "node";
 
+    /**
+     * RAW JSON ASYNC 请求参数
+     */
+    private static final String RAW_JSON_PARAMETER_ASYNC = "async";
+
     /**
      * 请求路径后缀标记
      */
@@ -115,6 +130,11 @@ public class CloseUploadContextRequestParameterMapper extends RequestParameterMa
                 && queryParams.get(URL_PARAMETER_NODE).get(0) != null) {
             context.setNode(queryParams.get(URL_PARAMETER_NODE).get(0));
         }
+        if (queryParams.get(URL_PARAMETER_ASYNC) != null
+                && !queryParams.get(URL_PARAMETER_ASYNC).isEmpty()
+                && queryParams.get(URL_PARAMETER_ASYNC).get(0) != null) {
+            context.setAsync(Boolean.valueOf(queryParams.get(URL_PARAMETER_ASYNC).get(0)));
+        }
         // 读取请求的媒体类型
         final MediaType mediaType = httpRequest.getHeaders().getContentType();
         if (MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)) {
@@ -149,6 +169,12 @@ public class CloseUploadContextRequestParameterMapper extends RequestParameterMa
                                 ));
                             }
                         }
+                        if (newContext.getAsync() == null) {
+                            final Object rjAsync = newContext.get(RAW_JSON_PREFIX + RAW_JSON_PARAMETER_ASYNC);
+                            if (rjAsync instanceof final Boolean content) {
+                                newContext.setAsync(content);
+                            }
+                        }
                         return Mono.just(newContext);
                     });
         } else if (MediaType.MULTIPART_FORM_DATA.isCompatibleWith(mediaType)) {
@@ -203,6 +229,13 @@ public class CloseUploadContextRequestParameterMapper extends RequestParameterMa
                                 ));
                             }
                         }
+                        if (newContext.getAsync() == null) {
+                            final Object fdAsync = newContext.get(FORM_DATA_PREFIX + FORM_DATA_PARAMETER_ASYNC);
+                            if (fdAsync instanceof final List<?> ol && !ol.isEmpty()
+                                    && ol.get(0) instanceof final FormFieldPart filePart) {
+                                newContext.setAsync(Boolean.valueOf(filePart.value()));
+                            }
+                        }
                         return Mono.just(newContext);
                     });
         } else {
@@ -41,6 +41,41 @@ public class OpenUploadContextRequestParameterMapper extends RequestParameterMap
      */
     private static final String FORM_DATA_PARAMETER_NAME = "name";
 
+    /**
+     * 文件长度请求参数
+     */
+    private static final String PARAMETER_SIZE = "size";
+
+    /**
+     * 文件分片长度请求参数
+     */
+    private static final String PARAMETER_SLICE_SIZE = "sliceSize";
+
+    /**
+     * 上传节点请求参数
+     */
+    private static final String PARAMETER_NODE = "node";
+
+    /**
+     * 分片签名的摘要算法请求参数
+     */
+    private static final String PARAMETER_SIGNATURE_ALGORITHM = "signatureAlgorithm";
+
+    /**
+     * 文件摘要请求参数
+     */
+    private static final String PARAMETER_HASH = "hash";
+
+    /**
+     * 秒传挑战的随机字符请求参数
+     */
+    private static final String PARAMETER_NONCE = "nonce";
+
+    /**
+     * 持有内容的证明请求参数
+     */
+    private static final String PARAMETER_PROOF = "proof";
+
     @Override
     public Class<?> outputClass() {
         return OpenUploadContext.class;
@@ -66,6 +101,7 @@ public class OpenUploadContextRequestParameterMapper extends RequestParameterMap
                 ));
             }
             context.setName(name);
+            initParameterOptional(context);
             return Mono.just(context);
         } else {
             // 读取请求的媒体类型
@@ -86,6 +122,7 @@ public class OpenUploadContextRequestParameterMapper extends RequestParameterMap
                                     ));
                                 }
                                 newContext.setName(name);
+                                initParameterOptional(newContext);
                                 return Mono.just(newContext);
                             }
                             // 如果没有读取到了 RAW JSON 文件名称请求参数那么就抛出参数异常
@@ -112,6 +149,7 @@ public class OpenUploadContextRequestParameterMapper extends RequestParameterMap
                                     ));
                                 }
                                 newContext.setName(FileUtil.name(content));
+                                initParameterOptional(newContext);
                                 return Mono.just(newContext);
                             }
                             // 如果没有读取到了 FORM DATA 文件名称请求参数那么就抛出参数异常
@@ -132,4 +170,66 @@ public class OpenUploadContextRequestParameterMapper extends RequestParameterMap
         }
     }
 
+    /**
+     * 初始化可选的请求参数 SIZE/SLICE SIZE/NODE/SIGNATURE ALGORITHM/HASH/NONCE/PROOF
+     * 依次读取 URL/RAW JSON/FORM DATA 中的参数
+     *
+     * @param context OpenUploadContext 对象
+     */
+    private void initParameterOptional(OpenUploadContext context) {
+        context.setSize(getLongParameter(context, PARAMETER_SIZE));
+        context.setSliceSize(getLongParameter(context, PARAMETER_SLICE_SIZE));
+        context.setNode(getStringParameter(context, PARAMETER_NODE));
+        context.setSignatureAlgorithm(getStringParameter(context, PARAMETER_SIGNATURE_ALGORITHM));
+        context.setHash(getStringParameter(context, PARAMETER_HASH));
+        context.setNonce(getStringParameter(context, PARAMETER_NONCE));
+        context.setProof(getStringParameter(context, PARAMETER_PROOF));
+    }
+
+    /**
+     * 读取 STRING 类型的请求参数
+     *
+     * @param context 上下文对象
+     * @param name    请求参数名称
+     * @return 请求参数的值
+     */
+    private String getStringParameter(OpenUploadContext context, String name) {
+        for (final String key : List.of(name, RAW_JSON_PREFIX + name, FORM_DATA_PREFIX + name)) {
+            Object content = context.get(key);
+            if (content instanceof final List<?> ol) {
+                content = ol.isEmpty() ? null : ol.get(0);
+            }
+            if (content instanceof final String str && !str.isBlank()) {
+                return str.trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取 LONG 类型的请求参数
+     *
+     * @param context 上下文对象
+     * @param name    请求参数名称
+     * @return 请求参数的值
+     */
+    private Long getLongParameter(OpenUploadContext context, String name) {
+        for (final String key : List.of(name, RAW_JSON_PREFIX + name, FORM_DATA_PREFIX + name)) {
+            Object content = context.get(key);
+            if (content instanceof final List<?> ol) {
+                content = ol.isEmpty() ? null : ol.get(0);
+            }
+            if (content instanceof final Number number) {
+                return number.longValue();
+            } else if (content instanceof final String str) {
+                try {
+                    return Long.valueOf(str.trim());
+                } catch (Exception e) {
+                    // 忽略异常
+                }
+            }
+        }
+        return null;
+    }
+
 }
@@ -1,22 +1,36 @@
 package club.p6e.coat.file.mapper;
 
+import club.p6e.coat.common.error.FileException;
 import club.p6e.coat.common.utils.SpringUtil;
 import club.p6e.coat.common.error.RequestParameterMapperException;
 import club.p6e.coat.common.error.TypeMismatchException;
 import club.p6e.coat.common.utils.JsonUtil;
+import club.p6e.coat.file.utils.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.codec.multipart.DefaultPartHttpMessageReader;
 import org.springframework.http.codec.multipart.FormFieldPart;
+import org.springframework.http.codec.multipart.MultipartHttpMessageReader;
 import org.springframework.http.codec.multipart.Part;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.lang.NonNull;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 请求参数映射器
@@ -44,6 +58,11 @@ public abstract class RequestParameterMapper {
      */
     public static final String PARAMETER_DATA_PREFIX = "$PR_";
 
+    /**
+     * Form Data 中除了文件内容以外（分隔符/字段/头部）允许占用的额外长度
+     */
+    public static final long FORM_DATA_EXTRA_SIZE = 1024 * 64;
+
     /**
      * 是否刷新缓存
      */
@@ -54,6 +73,23 @@ public abstract class RequestParameterMapper {
      */
     private static final Map<Class<?>, RequestParameterMapper> CACHE = new Hashtable<>();
 
+    /**
+     * FormData 的数据类型
+     */
+    private static final ResolvableType MULTIPART_DATA_TYPE =
+            ResolvableType.forClassWithGenerics(MultiValueMap.class, String.class, Part.class);
+
+    /**
+     * FormData 读取器中单个 part 在内存中保存的最大长度，超过后写入临时文件
+     */
+    private static final int MULTIPART_MAX_IN_MEMORY_SIZE = 256 * 1024;
+
+    /**
+     * 限制长度的 FormData 读取器缓存（键为请求体的最大长度）
+     * 每个读取器有自己的临时文件夹，不能每个请求创建一个读取器
+     */
+    private static final Map<Long, MultipartHttpMessageReader> MULTIPART_READER_CACHE = new ConcurrentHashMap<>();
+
     private static final Logger LOGGER = LoggerFactory.getLogger(RequestParameterMapper.class);
 
     /**
@@ -118,9 +154,76 @@ public abstract class RequestParameterMapper {
      */
     @SuppressWarnings("ALL")
     public static Mono<Map<String, Object>> requestFormDataMapper(ServerRequest request, Map<String, Object> data) {
-        return request
-                .exchange()
-                .getMultipartData()
+        return requestFormDataMapper(request.exchange().getMultipartData(), data);
+    }
+
+    /**
+     * 读取 FormData 里面的数据（限制请求体的长度）
+     * 声明的 Content-Length 超过最大长度时直接拒绝，否则在解析的过程中统计读取的长度，超过最大长度时中止读取
+     * exchange.getMultipartData() 总是解析原始的请求体，所以通过 FormData 读取器直接解析限制长度的请求体，
+     * 读取器同时限制单个 part 写入临时文件的长度
+     *
+     * @param request ServerRequest 对象
+     * @param data    保存的结果的数据对象
+     * @param maxSize 请求体的最大长度，小于等于 0 表示不限制
+     * @return 结果的数据对象
+     */
+    public static Mono<Map<String, Object>> requestFormDataMapper(ServerRequest request, Map<String, Object> data, long maxSize) {
+        if (maxSize <= 0) {
+            return requestFormDataMapper(request, data);
+        }
+        final ServerWebExchange exchange = request.exchange();
+        final long contentLength = exchange.getRequest().getHeaders().getContentLength();
+        if (contentLength > maxSize) {
+            return Mono.error(new FileException(
+                    RequestParameterMapper.class,
+                    "fun requestFormDataMapper(ServerRequest request, Map<String, Object> data, long maxSize). ==> " +
+                            "requestFormDataMapper(...) request body exceeds the maximum length limit.",
+                    "requestFormDataMapper(...) request body exceeds the maximum length limit."
+            ));
+        }
+        final ServerHttpRequest httpRequest = new ServerHttpRequestDecorator(exchange.getRequest()) {
+            @NonNull
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return FileUtil.limit(super.getBody(), maxSize, () -> new FileException(
+                        RequestParameterMapper.class,
+                        "fun requestFormDataMapper(ServerRequest request, Map<String, Object> data, long maxSize). ==> " +
+                                "requestFormDataMapper(...) request body exceeds the maximum length limit.",
+                        "requestFormDataMapper(...) request body exceeds the maximum length limit."
+                ));
+            }
+        };
+        return requestFormDataMapper(multipartReader(maxSize).readMono(
+                MULTIPART_DATA_TYPE, httpRequest, Collections.emptyMap()), data);
+    }
+
+    /**
+     * 获取限制长度的 FormData 读取器
+     *
+     * @param maxSize 请求体的最大长度
+     * @return FormData 读取器
+     */
+    private static MultipartHttpMessageReader multipartReader(long maxSize) {
+        return MULTIPART_READER_CACHE.computeIfAbsent(maxSize, size -> {
+            final DefaultPartHttpMessageReader reader = new DefaultPartHttpMessageReader();
+            reader.setMaxInMemorySize((int) Math.min(size, MULTIPART_MAX_IN_MEMORY_SIZE));
+            reader.setMaxDiskUsagePerPart(size);
+            return new MultipartHttpMessageReader(reader);
+        });
+    }
+
+    /**
+     * 读取 FormData 里面的数据
+     *
+     * @param multipartData FormData 对象
+     * @param data          保存的结果的数据对象
+     * @return 结果的数据对象
+     */
+    @SuppressWarnings("ALL")
+    private static Mono<Map<String, Object>> requestFormDataMapper(
+            Mono<MultiValueMap<String, Part>> multipartData, Map<String, Object> data) {
+        return multipartData
                 .map(m -> {
                     for (final String key : m.keySet()) {
                         // 如果存在数据
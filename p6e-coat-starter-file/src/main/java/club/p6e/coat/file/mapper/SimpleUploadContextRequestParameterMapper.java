@@ -2,6 +2,8 @@ package club.p6e.coat.file.mapper;
 
 import club.p6e.coat.common.error.MediaTypeException;
 import club.p6e.coat.common.error.ParameterException;
+import club.p6e.coat.common.utils.SpringUtil;
+import club.p6e.coat.file.Properties;
 import club.p6e.coat.file.context.SimpleUploadContext;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.http.MediaType;
@@ -37,6 +39,26 @@ public class SimpleUploadContextRequestParameterMapper extends RequestParameterM
      */
     private static final String FORM_DATA_PARAMETER_FILE = "file";
 
+    /**
+     * 文件摘要请求参数
+     */
+    private static final String PARAMETER_HASH = "hash";
+
+    /**
+     * 文件长度请求参数
+     */
+    private static final String PARAMETER_SIZE = "size";
+
+    /**
+     * 秒传挑战的随机字符请求参数
+     */
+    private static final String PARAMETER_NONCE = "nonce";
+
+    /**
+     * 持有内容的证明请求参数
+     */
+    private static final String PARAMETER_PROOF = "proof";
+
     @Override
     public Class<?> outputClass() {
         return SimpleUploadContext.class;
@@ -64,8 +86,11 @@ public class SimpleUploadContextRequestParameterMapper extends RequestParameterM
                 && queryParams.get(NODE_PARAMETER_NAME).get(0) != null) {
             context.setNode(queryParams.get(NODE_PARAMETER_NAME).get(0));
         }
-        // 读取 FROM DATA 参数并写入
-        return requestFormDataMapper(request, context)
+        // 读取 FROM DATA 参数并写入（URL 参数中提供了节点时，请求体的长度不能超过节点的最大长度）
+        final Properties.Upload upload = context.getNode() == null
+                ? null : SpringUtil.getBean(Properties.class).getUploads().get(context.getNode());
+        final long maxSize = upload == null || upload.getMaxSize() <= 0 ? -1 : upload.getMaxSize() + FORM_DATA_EXTRA_SIZE;
+        return requestFormDataMapper(request, context, maxSize)
                 .flatMap(m -> {
                     final SimpleUploadContext newContext = new SimpleUploadContext(m);
                     if (newContext.getNode() == null) {
@@ -89,6 +114,23 @@ public class SimpleUploadContextRequestParameterMapper extends RequestParameterM
                             && ol.get(0) instanceof final FilePart filePart) {
                         // 如果读取到了 FORM DATA 文件请求参数那么就写入到上下文对象中
                         newContext.setFilePart(filePart);
+                        // 读取可选的文件摘要、文件长度和持有内容的证明请求参数（秒传）
+                        newContext.setHash(getStringParameter(newContext, PARAMETER_HASH));
+                        newContext.setNonce(getStringParameter(newContext, PARAMETER_NONCE));
+                        newContext.setProof(getStringParameter(newContext, PARAMETER_PROOF));
+                        final String size = getStringParameter(newContext, PARAMETER_SIZE);
+                        if (size != null) {
+                            try {
+                                newContext.setSize(Long.valueOf(size));
+                            } catch (Exception e) {
+                                return Mono.error(new ParameterException(
+                                        this.getClass(),
+                                        "fun execute(ServerRequest request). ==> <"
+                                                + PARAMETER_SIZE + "> request parameter type not is long.",
+                                        "<" + PARAMETER_SIZE + "> request parameter type not is long."
+                                ));
+                            }
+                        }
                         return Mono.just(newContext);
                     }
                     // 如果没有读取到了 FORM DATA 文件请求参数那么就抛出参数异常
@@ -100,4 +142,25 @@ public class SimpleUploadContextRequestParameterMapper extends RequestParameterM
                 });
     }
 
+    /**
+     * 读取 STRING 类型的请求参数
+     * 依次读取 URL/FORM DATA 中的参数
+     *
+     * @param context 上下文对象
+     * @param name    请求参数名称
+     * @return 请求参数的值
+     */
+    private String getStringParameter(SimpleUploadContext context, String name) {
+        for (final String key : List.of(name, FORM_DATA_PREFIX + name)) {
+            Object content = context.get(key);
+            if (content instanceof final List<?> ol) {
+                content = ol.isEmpty() ? null : ol.get(0);
+            }
+            if (content instanceof final String str && !str.isBlank()) {
+                return str.trim();
+            }
+        }
+        return null;
+    }
+
 }
@@ -2,6 +2,8 @@ package club.p6e.coat.file.mapper;
 
 import club.p6e.coat.common.error.MediaTypeException;
 import club.p6e.coat.common.error.ParameterException;
+import club.p6e.coat.common.utils.SpringUtil;
+import club.p6e.coat.file.Properties;
 import club.p6e.coat.file.context.SliceUploadContext;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.http.MediaType;
@@ -94,8 +96,10 @@ public class SliceUploadContextRequestParameterMapper extends RequestParameterMa
         initParameterIndex(request, context);
         // 初始化请求参数 SIGNATURE
         initParameterSignature(request, context);
-        // FROM DATA 参数
-        return requestFormDataMapper(request, context)
+        // FROM DATA 参数（请求体的长度不能超过分片的最大长度）
+        final Properties properties = SpringUtil.getBean(Properties.class);
+        final long maxSize = properties.getSliceUpload().getMaxSize() + FORM_DATA_EXTRA_SIZE;
+        return requestFormDataMapper(request, context, maxSize)
                 .flatMap(m -> {
                     final SliceUploadContext newContext = new SliceUploadContext(m);
                     if (newContext.getId() == null) {
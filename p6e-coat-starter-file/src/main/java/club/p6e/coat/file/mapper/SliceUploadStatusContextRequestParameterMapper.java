@@ -0,0 +1,96 @@
+package club.p6e.coat.file.mapper;
+
+import club.p6e.coat.common.error.ParameterException;
+import club.p6e.coat.file.context.SliceUploadStatusContext;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 分片上传状态请求参数映射器
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = SliceUploadStatusContextRequestParameterMapper.class,
+        ignored = SliceUploadStatusContextRequestParameterMapper.class
+)
+public class SliceUploadStatusContextRequestParameterMapper extends RequestParameterMapper {
+
+    /**
+     * URL ID 请求参数
+     */
+    private static final String URL_PARAMETER_ID = "id";
+
+    /**
+     * PATH URL ID 请求参数
+     */
+    private static final String PATH_URL_PARAMETER_ID = "id";
+
+    /**
+     * 请求路径后缀标记
+     */
+    private static final String REQUEST_PATH_FINISH_MARK = "slice";
+
+    @Override
+    public Class<?> outputClass() {
+        return SliceUploadStatusContext.class;
+    }
+
+    @Override
+    public Mono<Object> execute(ServerRequest request) {
+        final SliceUploadStatusContext context = new SliceUploadStatusContext();
+        final ServerHttpRequest httpRequest = request.exchange().getRequest();
+        final MultiValueMap<String, String> queryParams = httpRequest.getQueryParams();
+        context.putAll(queryParams);
+        final List<PathContainer.Element> elements = request.requestPath().elements();
+        final String requestPathFinishContent = elements.get(elements.size() - 1).value();
+        // 如果不是请求后缀标记
+        // 那么请求的后缀是请求参数 ID
+        if (!REQUEST_PATH_FINISH_MARK.equals(requestPathFinishContent)) {
+            try {
+                context.setId(Integer.valueOf(requestPathFinishContent));
+            } catch (Exception e) {
+                return Mono.error(new ParameterException(
+                        this.getClass(),
+                        "fun execute(ServerRequest request). ==> PATH PARAM <"
+                                + PATH_URL_PARAMETER_ID + "> request parameter type not is int.",
+                        "PATH PARAM <" + PATH_URL_PARAMETER_ID + "> request parameter type not is int."
+                ));
+            }
+        }
+        if (context.getId() == null
+                && queryParams.get(URL_PARAMETER_ID) != null
+                && !queryParams.get(URL_PARAMETER_ID).isEmpty()
+                && queryParams.get(URL_PARAMETER_ID).get(0) != null) {
+            try {
+                context.setId(Integer.valueOf(queryParams.get(URL_PARAMETER_ID).get(0)));
+            } catch (Exception e) {
+                return Mono.error(new ParameterException(
+                        this.getClass(),
+                        "fun execute(ServerRequest request). ==> URL PARAM <"
+                                + URL_PARAMETER_ID + "> request parameter type not is int.",
+                        "URL PARAM <" + URL_PARAMETER_ID + "> request parameter type not is int."
+                ));
+            }
+        }
+        if (context.getId() == null) {
+            return Mono.error(new ParameterException(
+                    this.getClass(),
+                    "fun execute(ServerRequest request). ==> execute(...) request parameter is null.",
+                    "execute(...) request parameter is null."
+            ));
+        } else {
+            return Mono.just(context);
+        }
+    }
+
+}
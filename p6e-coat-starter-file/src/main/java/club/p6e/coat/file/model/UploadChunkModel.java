@@ -20,8 +20,10 @@ public class UploadChunkModel implements Serializable {
 
     private Integer id;
     private Integer fid;
+    private Integer index;
     private String name;
     private Long size;
+    private String signature;
     private String creator;
     private String modifier;
     private LocalDateTime creationDateTime;
@@ -32,8 +34,10 @@ public class UploadChunkModel implements Serializable {
         final Map<String, Object> map = new HashMap<>(6);
         map.put("id", id);
         map.put("fid", fid);
+        map.put("index", index);
         map.put("name", name);
         map.put("size", size);
+        map.put("signature", signature);
         map.put("creator", creator);
         map.put("modifier", modifier);
         map.put("creationDateTime", creationDateTime);
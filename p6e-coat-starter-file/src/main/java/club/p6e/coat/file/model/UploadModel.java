@@ -21,7 +21,11 @@ public class UploadModel implements Serializable {
     private Integer id;
     private String name;
     private Long size;
+    private Long sliceSize;
     private String source;
+    private String node;
+    private String signatureAlgorithm;
+    private String signature;
     private String owner;
     private String storageType;
     private String storageLocation;
@@ -37,7 +41,11 @@ public class UploadModel implements Serializable {
         map.put("id", id);
         map.put("name", name);
         map.put("size", size);
+        map.put("sliceSize", sliceSize);
         map.put("source", source);
+        map.put("node", node);
+        map.put("signatureAlgorithm", signatureAlgorithm);
+        map.put("signature", signature);
         map.put("storageType", storageType);
         map.put("storageLocation", storageLocation);
         map.put("owner", owner);
@@ -50,4 +58,30 @@ public class UploadModel implements Serializable {
         return map;
     }
 
+    /**
+     * 复制模型对象
+     *
+     * @return 复制的模型对象
+     */
+    public UploadModel copy() {
+        return new UploadModel()
+                .setId(id)
+                .setName(name)
+                .setSize(size)
+                .setSliceSize(sliceSize)
+                .setSource(source)
+                .setNode(node)
+                .setSignatureAlgorithm(signatureAlgorithm)
+                .setSignature(signature)
+                .setOwner(owner)
+                .setStorageType(storageType)
+                .setStorageLocation(storageLocation)
+                .setLock(lock)
+                .setCreator(creator)
+                .setModifier(modifier)
+                .setCreationDateTime(creationDateTime)
+                .setModificationDateTime(modificationDateTime)
+                .setVersion(version);
+    }
+
 }
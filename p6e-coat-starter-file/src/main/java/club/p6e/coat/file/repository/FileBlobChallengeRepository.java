@@ -0,0 +1,125 @@
+package club.p6e.coat.file.repository;
+
+import club.p6e.DatabaseConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 文件内容挑战存储库
+ * 每个秒传挑战一条记录，验证时删除（只能使用一次），任意实例都可以验证其它实例创建的挑战
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = FileBlobChallengeRepository.class,
+        ignored = FileBlobChallengeRepository.class
+)
+@SuppressWarnings("ALL")
+public class FileBlobChallengeRepository {
+
+    @SuppressWarnings("ALL")
+    private static final String SAVE_SQL = "" +
+            "    INSERT INTO    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_blob_challenge\"    " +
+            "        (    \"nonce\", \"hash\", \"size\", \"path\", \"offset\", \"length\", \"expire_date_time\"    )    " +
+            "    VALUES    " +
+            "        (    :NONCE, :HASH, :SIZE, :PATH, :OFFSET, :LENGTH, :EXPIRE_DATE_TIME    )    " +
+            "    ;    ";
+
+    /**
+     * 删除并返回挑战（是否过期由调用方判断）
+     */
+    @SuppressWarnings("ALL")
+    private static final String CONSUME_SQL = "" +
+            "    DELETE FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_blob_challenge\"    " +
+            "    WHERE    " +
+            "        \"nonce\" = :NONCE    " +
+            "    RETURNING \"hash\", \"size\", \"path\", \"offset\", \"length\", \"expire_date_time\"    " +
+            "    ;    ";
+
+    @SuppressWarnings("ALL")
+    private static final String EXPIRE_DELETE_SQL = "" +
+            "    DELETE FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_blob_challenge\"    " +
+            "    WHERE    " +
+            "        \"expire_date_time\" < :EXPIRE_DATE_TIME    " +
+            "    ;    ";
+
+    /**
+     * DatabaseClient 对象
+     */
+    private final DatabaseClient client;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param client DatabaseClient 对象
+     */
+    public FileBlobChallengeRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 保存挑战
+     *
+     * @param nonce  挑战的随机字符
+     * @param hash   内容的摘要（SHA-256）
+     * @param size   内容的长度
+     * @param path   内容的存储路径
+     * @param offset 挑战区域的开始位置
+     * @param length 挑战区域的长度
+     * @param expire 过期时间
+     * @return Mono<Long> 修改的数据条数
+     */
+    public Mono<Long> save(String nonce, String hash, long size, String path, long offset, long length, LocalDateTime expire) {
+        return client
+                .sql(SAVE_SQL)
+                .bind("NONCE", nonce)
+                .bind("HASH", hash)
+                .bind("SIZE", size)
+                .bind("PATH", path)
+                .bind("OFFSET", offset)
+                .bind("LENGTH", length)
+                .bind("EXPIRE_DATE_TIME", expire)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * 使用挑战
+     * 删除挑战的记录并返回挑战，多个实例同时使用时只有一个实例返回挑战
+     *
+     * @param nonce 挑战的随机字符
+     * @return Mono<Map<String, Object>> 挑战（hash, size, path, offset, length, expire_date_time，挑战不存在时返回空）
+     */
+    public Mono<Map<String, Object>> consume(String nonce) {
+        return client
+                .sql(CONSUME_SQL)
+                .bind("NONCE", nonce)
+                .fetch()
+                .first();
+    }
+
+    /**
+     * 删除已经过期的挑战
+     *
+     * @param expire 过期时间
+     * @return Mono<Long> 删除的数据条数
+     */
+    public Mono<Long> deleteExpire(LocalDateTime expire) {
+        return client
+                .sql(EXPIRE_DELETE_SQL)
+                .bind("EXPIRE_DATE_TIME", expire)
+                .fetch()
+                .rowsUpdated();
+    }
+
+}
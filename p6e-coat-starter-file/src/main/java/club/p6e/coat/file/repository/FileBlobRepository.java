@@ -0,0 +1,213 @@
+package club.p6e.coat.file.repository;
+
+import club.p6e.DatabaseConfig;
+import club.p6e.coat.common.utils.TransformationUtil;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文件内容存储库
+ * 内容寻址存储（CAS）的每个内容（SHA-256 + 长度）一条记录，记录内容的存储路径和引用的数量
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = FileBlobRepository.class,
+        ignored = FileBlobRepository.class
+)
+@SuppressWarnings("ALL")
+public class FileBlobRepository {
+
+    /**
+     * 登记内容并增加引用
+     * 内容已经存在时只增加引用，返回已经存在的存储路径
+     */
+    @SuppressWarnings("ALL")
+    private static final String ACQUIRE_SQL = "" +
+            "    INSERT INTO    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_blob\" AS \"b\"    " +
+            "        (    " +
+            "            \"hash\",    " +
+            "            \"size\",    " +
+            "            \"path\",    " +
+            "            \"ref\",    " +
+            "            \"create_date_time\",    " +
+            "            \"modification_date_time\"    " +
+            "        )    " +
+            "    VALUES    " +
+            "        (    " +
+            "            :HASH,    " +
+            "            :SIZE,    " +
+            "            :PATH,    " +
+            "            1,    " +
+            "            :MODIFICATION_DATE_TIME,    " +
+            "            :MODIFICATION_DATE_TIME    " +
+            "        )    " +
+            "    ON CONFLICT (\"hash\", \"size\") DO UPDATE SET    " +
+            "        \"ref\" = \"b\".\"ref\" + 1,    " +
+            "        \"modification_date_time\" = EXCLUDED.\"modification_date_time\"    " +
+            "    RETURNING \"path\"    " +
+            "    ;    ";
+
+    /**
+     * 根据内容（摘要 + 长度）查询存储路径
+     */
+    @SuppressWarnings("ALL")
+    private static final String SELECT_SQL = "" +
+            "    SELECT    " +
+            "        \"path\"    " +
+            "    FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_blob\"    " +
+            "    WHERE    " +
+            "        \"hash\" = :HASH AND \"size\" = :SIZE    " +
+            "    ;    ";
+
+    /**
+     * 根据内容（摘要 + 长度）增加引用
+     * 通过主键索引查询，内容不存在时不修改
+     */
+    @SuppressWarnings("ALL")
+    private static final String RETAIN_SQL = "" +
+            "    UPDATE    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_blob\"    " +
+            "    SET    " +
+            "        \"ref\" = \"ref\" + 1,    " +
+            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "    WHERE    " +
+            "        \"hash\" = :HASH AND \"size\" = :SIZE    " +
+            "    RETURNING \"path\"    " +
+            "    ;    ";
+
+    /**
+     * 减少引用
+     */
+    @SuppressWarnings("ALL")
+    private static final String RELEASE_SQL = "" +
+            "    UPDATE    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_blob\"    " +
+            "    SET    " +
+            "        \"ref\" = \"ref\" - 1,    " +
+            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "    WHERE    " +
+            "        \"path\" = :PATH AND \"ref\" > 0    " +
+            "    RETURNING \"ref\"    " +
+            "    ;    ";
+
+    /**
+     * 删除没有引用的内容
+     * 删除之前其它上传增加了引用时不删除
+     */
+    @SuppressWarnings("ALL")
+    private static final String DELETE_SQL = "" +
+            "    DELETE FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_blob\"    " +
+            "    WHERE    " +
+            "        \"path\" = :PATH AND \"ref\" <= 0    " +
+            "    ;    ";
+
+    /**
+     * DatabaseClient 对象
+     */
+    private final DatabaseClient client;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param client DatabaseClient 对象
+     */
+    public FileBlobRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 登记内容并增加引用
+     *
+     * @param hash 内容的摘要（SHA-256）
+     * @param size 内容的长度
+     * @param path 内容的存储路径
+     * @return Mono<String> 内容的存储路径（内容已经存在时为已经存在的存储路径）
+     */
+    public Mono<String> acquire(String hash, long size, String path) {
+        return client
+                .sql(ACQUIRE_SQL)
+                .bind("HASH", hash)
+                .bind("SIZE", size)
+                .bind("PATH", path)
+                .bind("MODIFICATION_DATE_TIME", LocalDateTime.now())
+                .fetch()
+                .first()
+                .map(row -> TransformationUtil.objectToString(row.get("path")));
+    }
+
+    /**
+     * 根据内容（摘要 + 长度）查询存储路径
+     *
+     * @param hash 内容的摘要（SHA-256）
+     * @param size 内容的长度
+     * @return Mono<String> 内容的存储路径（内容不存在时返回空）
+     */
+    public Mono<String> select(String hash, long size) {
+        return client
+                .sql(SELECT_SQL)
+                .bind("HASH", hash)
+                .bind("SIZE", size)
+                .fetch()
+                .first()
+                .map(row -> TransformationUtil.objectToString(row.get("path")));
+    }
+
+    /**
+     * 根据内容（摘要 + 长度）增加引用
+     *
+     * @param hash 内容的摘要（SHA-256）
+     * @param size 内容的长度
+     * @return Mono<String> 内容的存储路径（内容不存在时返回空）
+     */
+    public Mono<String> retain(String hash, long size) {
+        return client
+                .sql(RETAIN_SQL)
+                .bind("HASH", hash)
+                .bind("SIZE", size)
+                .bind("MODIFICATION_DATE_TIME", LocalDateTime.now())
+                .fetch()
+                .first()
+                .map(row -> TransformationUtil.objectToString(row.get("path")));
+    }
+
+    /**
+     * 减少引用
+     *
+     * @param path 内容的存储路径
+     * @return Mono<Long> 剩余的引用数量（内容不存在时返回空）
+     */
+    public Mono<Long> release(String path) {
+        return client
+                .sql(RELEASE_SQL)
+                .bind("PATH", path)
+                .bind("MODIFICATION_DATE_TIME", LocalDateTime.now())
+                .fetch()
+                .first()
+                .map(row -> TransformationUtil.objectToLong(row.get("ref")));
+    }
+
+    /**
+     * 删除没有引用的内容
+     *
+     * @param path 内容的存储路径
+     * @return Mono<Long> 删除的数据条数
+     */
+    public Mono<Long> delete(String path) {
+        return client
+                .sql(DELETE_SQL)
+                .bind("PATH", path)
+                .fetch()
+                .rowsUpdated();
+    }
+
+}
@@ -0,0 +1,179 @@
+package club.p6e.coat.file.repository;
+
+import club.p6e.DatabaseConfig;
+import club.p6e.coat.common.utils.TransformationUtil;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * 文件清除租约存储库
+ * 每个分区一条租约记录，记录持有租约的实例、清除的批次和清除的进度
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = FileCleanLeaseRepository.class,
+        ignored = FileCleanLeaseRepository.class
+)
+@SuppressWarnings("ALL")
+public class FileCleanLeaseRepository {
+
+    /**
+     * 分区在当前批次已经清除完成的进度标记
+     */
+    public static final int FINISH_CHECKPOINT = -1;
+
+    /**
+     * 获取租约
+     * 租约不存在、已经过期或者属于当前实例时获取成功，批次变化时重置进度
+     */
+    @SuppressWarnings("ALL")
+    private static final String ACQUIRE_SQL = "" +
+            "    INSERT INTO    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_clean_lease\" AS \"l\"    " +
+            "        (    " +
+            "            \"shard\",    " +
+            "            \"sweep\",    " +
+            "            \"owner\",    " +
+            "            \"checkpoint\",    " +
+            "            \"expire_date_time\",    " +
+            "            \"modification_date_time\"    " +
+            "        )    " +
+            "    VALUES    " +
+            "        (    " +
+            "            :SHARD,    " +
+            "            :SWEEP,    " +
+            "            :OWNER,    " +
+            "            0,    " +
+            "            :EXPIRE_DATE_TIME,    " +
+            "            :MODIFICATION_DATE_TIME    " +
+            "        )    " +
+            "    ON CONFLICT (\"shard\") DO UPDATE SET    " +
+            "        \"checkpoint\" = CASE WHEN \"l\".\"sweep\" = EXCLUDED.\"sweep\" THEN \"l\".\"checkpoint\" ELSE 0 END,    " +
+            "        \"sweep\" = EXCLUDED.\"sweep\",    " +
+            "        \"owner\" = EXCLUDED.\"owner\",    " +
+            "        \"expire_date_time\" = EXCLUDED.\"expire_date_time\",    " +
+            "        \"modification_date_time\" = EXCLUDED.\"modification_date_time\"    " +
+            "    WHERE    " +
+            "        \"l\".\"expire_date_time\" < :MODIFICATION_DATE_TIME OR \"l\".\"owner\" = EXCLUDED.\"owner\"    " +
+            "    RETURNING \"checkpoint\"    " +
+            "    ;    ";
+
+    /**
+     * 记录进度并续约
+     */
+    @SuppressWarnings("ALL")
+    private static final String CHECKPOINT_SQL = "" +
+            "    UPDATE    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_clean_lease\"    " +
+            "    SET    " +
+            "        \"checkpoint\" = :CHECKPOINT,    " +
+            "        \"expire_date_time\" = :EXPIRE_DATE_TIME,    " +
+            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "    WHERE    " +
+            "        \"shard\" = :SHARD AND \"owner\" = :OWNER AND \"sweep\" = :SWEEP    " +
+            "    RETURNING \"checkpoint\"    " +
+            "    ;    ";
+
+    /**
+     * 释放租约
+     */
+    @SuppressWarnings("ALL")
+    private static final String RELEASE_SQL = "" +
+            "    UPDATE    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_clean_lease\"    " +
+            "    SET    " +
+            "        \"expire_date_time\" = :MODIFICATION_DATE_TIME,    " +
+            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "    WHERE    " +
+            "        \"shard\" = :SHARD AND \"owner\" = :OWNER    " +
+            "    ;    ";
+
+    /**
+     * DatabaseClient 对象
+     */
+    private final DatabaseClient client;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param client DatabaseClient 对象
+     */
+    public FileCleanLeaseRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 获取分区的租约
+     *
+     * @param shard 分区的编号
+     * @param sweep 清除的批次
+     * @param owner 实例的标识
+     * @param lease 租约的时长（毫秒）
+     * @return Mono<Integer> 分区的清除进度（租约被其它实例持有时返回空）
+     */
+    public Mono<Integer> acquire(int shard, String sweep, String owner, long lease) {
+        final LocalDateTime now = LocalDateTime.now();
+        return client
+                .sql(ACQUIRE_SQL)
+                .bind("SHARD", shard)
+                .bind("SWEEP", sweep)
+                .bind("OWNER", owner)
+                .bind("EXPIRE_DATE_TIME", now.plus(Duration.ofMillis(lease)))
+                .bind("MODIFICATION_DATE_TIME", now)
+                .fetch()
+                .first()
+                .map(row -> TransformationUtil.objectToInteger(row.get("checkpoint")));
+    }
+
+    /**
+     * 记录分区的清除进度并续约
+     *
+     * @param shard      分区的编号
+     * @param sweep      清除的批次
+     * @param owner      实例的标识
+     * @param lease      租约的时长（毫秒）
+     * @param checkpoint 清除进度（已经清除的最大上传编号）
+     * @return Mono<Boolean> 是否仍然持有租约
+     */
+    public Mono<Boolean> checkpoint(int shard, String sweep, String owner, long lease, int checkpoint) {
+        final LocalDateTime now = LocalDateTime.now();
+        return client
+                .sql(CHECKPOINT_SQL)
+                .bind("SHARD", shard)
+                .bind("SWEEP", sweep)
+                .bind("OWNER", owner)
+                .bind("CHECKPOINT", checkpoint)
+                .bind("EXPIRE_DATE_TIME", now.plus(Duration.ofMillis(lease)))
+                .bind("MODIFICATION_DATE_TIME", now)
+                .fetch()
+                .first()
+                .map(row -> true)
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * 释放分区的租约
+     *
+     * @param shard 分区的编号
+     * @param owner 实例的标识
+     * @return Mono<Long> 修改的数据条数
+     */
+    public Mono<Long> release(int shard, String owner) {
+        return client
+                .sql(RELEASE_SQL)
+                .bind("SHARD", shard)
+                .bind("OWNER", owner)
+                .bind("MODIFICATION_DATE_TIME", LocalDateTime.now())
+                .fetch()
+                .rowsUpdated();
+    }
+
+}
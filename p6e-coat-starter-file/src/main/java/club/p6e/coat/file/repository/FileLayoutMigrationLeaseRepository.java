@@ -0,0 +1,166 @@
+package club.p6e.coat.file.repository;
+
+import club.p6e.DatabaseConfig;
+import club.p6e.coat.common.utils.TransformationUtil;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * 存储布局迁移租约存储库
+ * 每个上传节点一条租约记录（按照上传节点的名称区分），记录持有租约的实例和迁移的进度
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = FileLayoutMigrationLeaseRepository.class,
+        ignored = FileLayoutMigrationLeaseRepository.class
+)
+@SuppressWarnings("ALL")
+public class FileLayoutMigrationLeaseRepository {
+
+    /**
+     * 获取租约
+     * 租约不存在、已经过期或者属于当前实例时获取成功
+     */
+    @SuppressWarnings("ALL")
+    private static final String ACQUIRE_SQL = "" +
+            "    INSERT INTO    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_layout_migration_lease\" AS \"l\"    " +
+            "        (    " +
+            "            \"node\",    " +
+            "            \"owner\",    " +
+            "            \"checkpoint\",    " +
+            "            \"expire_date_time\",    " +
+            "            \"modification_date_time\"    " +
+            "        )    " +
+            "    VALUES    " +
+            "        (    " +
+            "            :NODE,    " +
+            "            :OWNER,    " +
+            "            0,    " +
+            "            :EXPIRE_DATE_TIME,    " +
+            "            :MODIFICATION_DATE_TIME    " +
+            "        )    " +
+            "    ON CONFLICT (\"node\") DO UPDATE SET    " +
+            "        \"owner\" = EXCLUDED.\"owner\",    " +
+            "        \"expire_date_time\" = EXCLUDED.\"expire_date_time\",    " +
+            "        \"modification_date_time\" = EXCLUDED.\"modification_date_time\"    " +
+            "    WHERE    " +
+            "        \"l\".\"expire_date_time\" < :MODIFICATION_DATE_TIME OR \"l\".\"owner\" = EXCLUDED.\"owner\"    " +
+            "    RETURNING \"checkpoint\"    " +
+            "    ;    ";
+
+    /**
+     * 记录进度并续约
+     */
+    @SuppressWarnings("ALL")
+    private static final String CHECKPOINT_SQL = "" +
+            "    UPDATE    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_layout_migration_lease\"    " +
+            "    SET    " +
+            "        \"checkpoint\" = :CHECKPOINT,    " +
+            "        \"expire_date_time\" = :EXPIRE_DATE_TIME,    " +
+            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "    WHERE    " +
+            "        \"node\" = :NODE AND \"owner\" = :OWNER    " +
+            "    RETURNING \"checkpoint\"    " +
+            "    ;    ";
+
+    /**
+     * 释放租约
+     */
+    @SuppressWarnings("ALL")
+    private static final String RELEASE_SQL = "" +
+            "    UPDATE    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_layout_migration_lease\"    " +
+            "    SET    " +
+            "        \"expire_date_time\" = :MODIFICATION_DATE_TIME,    " +
+            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "    WHERE    " +
+            "        \"node\" = :NODE AND \"owner\" = :OWNER    " +
+            "    ;    ";
+
+    /**
+     * DatabaseClient 对象
+     */
+    private final DatabaseClient client;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param client DatabaseClient 对象
+     */
+    public FileLayoutMigrationLeaseRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 获取上传节点的租约
+     *
+     * @param node  上传节点
+     * @param owner 实例的标识
+     * @param lease 租约的时长（毫秒）
+     * @return Mono<Integer> 上传节点的迁移进度（租约被其它实例持有时返回空）
+     */
+    public Mono<Integer> acquire(String node, String owner, long lease) {
+        final LocalDateTime now = LocalDateTime.now();
+        return client
+                .sql(ACQUIRE_SQL)
+                .bind("NODE", node)
+                .bind("OWNER", owner)
+                .bind("EXPIRE_DATE_TIME", now.plus(Duration.ofMillis(lease)))
+                .bind("MODIFICATION_DATE_TIME", now)
+                .fetch()
+                .first()
+                .map(row -> TransformationUtil.objectToInteger(row.get("checkpoint")));
+    }
+
+    /**
+     * 记录上传节点的迁移进度并续约
+     *
+     * @param node       上传节点
+     * @param owner      实例的标识
+     * @param lease      租约的时长（毫秒）
+     * @param checkpoint 迁移进度（已经迁移的最大上传编号）
+     * @return Mono<Boolean> 是否仍然持有租约
+     */
+    public Mono<Boolean> checkpoint(String node, String owner, long lease, int checkpoint) {
+        final LocalDateTime now = LocalDateTime.now();
+        return client
+                .sql(CHECKPOINT_SQL)
+                .bind("NODE", node)
+                .bind("OWNER", owner)
+                .bind("CHECKPOINT", checkpoint)
+                .bind("EXPIRE_DATE_TIME", now.plus(Duration.ofMillis(lease)))
+                .bind("MODIFICATION_DATE_TIME", now)
+                .fetch()
+                .first()
+                .map(row -> true)
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * 释放上传节点的租约
+     *
+     * @param node  上传节点
+     * @param owner 实例的标识
+     * @return Mono<Long> 修改的数据条数
+     */
+    public Mono<Long> release(String node, String owner) {
+        return client
+                .sql(RELEASE_SQL)
+                .bind("NODE", node)
+                .bind("OWNER", owner)
+                .bind("MODIFICATION_DATE_TIME", LocalDateTime.now())
+                .fetch()
+                .rowsUpdated();
+    }
+
+}
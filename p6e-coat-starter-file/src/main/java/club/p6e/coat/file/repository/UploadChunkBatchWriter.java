@@ -0,0 +1,486 @@
+package club.p6e.coat.file.repository;
+
+import club.p6e.DatabaseConfig;
+import club.p6e.coat.common.error.DataBaseException;
+import club.p6e.coat.common.utils.TransformationUtil;
+import club.p6e.coat.file.Properties;
+import club.p6e.coat.file.model.UploadChunkModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件块延迟批量写入
+ * 分片记录先保存在内存队列中，达到数量或者时间间隔时通过一条多行的 SQL 写入
+ * 同一批次中同一个 (fid, index) 只会出现一次，重复的分片记录放到下一个批次写入
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = UploadChunkBatchWriter.class,
+        ignored = UploadChunkBatchWriter.class
+)
+public class UploadChunkBatchWriter implements DisposableBean {
+
+    /**
+     * 持久化级别: 分片记录已经写入数据库
+     */
+    public static final String DURABILITY_DATABASE = "DATABASE";
+
+    /**
+     * 持久化级别: 分片数据已经同步到磁盘
+     */
+    public static final String DURABILITY_DISK = "DISK";
+
+    /**
+     * 持久化级别: 分片数据已经写入文件
+     */
+    public static final String DURABILITY_NONE = "NONE";
+
+    /**
+     * 写入的字段
+     */
+    private static final String COLUMNS = "" +
+            "\"fid\", \"index\", \"name\", \"size\", \"signature\", \"creator\", " +
+            "\"modifier\", \"creation_date_time\", \"modification_date_time\", \"version\"";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadChunkBatchWriter.class);
+
+    /**
+     * 配置文件对象
+     */
+    private final Properties.UploadChunkBatch properties;
+
+    /**
+     * DatabaseClient 对象
+     */
+    private final DatabaseClient client;
+
+    /**
+     * 批量写入的 SQL 缓存（下标为行数）
+     */
+    private final String[] sqlCache;
+
+    /**
+     * 等待写入的分片记录队列
+     */
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 等待写入的分片记录数量
+     */
+    private final AtomicInteger queueSize = new AtomicInteger(0);
+
+    /**
+     * 还没有写入完成（在队列中或者正在写入）的分片记录 (fid_index) 和数量
+     */
+    private final Map<String, Integer> pendingKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 还没有写入完成（在队列中或者正在写入）的分片记录 (fid) 和数量
+     */
+    private final Map<Integer, Integer> pendingFids = new ConcurrentHashMap<>();
+
+    /**
+     * 写入数据库失败的分片索引 (fid -> index)
+     * 延迟写入时分片上传已经返回结果，客户端通过分片上传状态获取写入失败的分片并重新上传
+     * 只保存在执行写入的实例中（其它实例查询不到），分片上传状态以数据库中的分片清单为准，失败的分片在清单中同样缺失
+     * 上传关闭、上传会话到期回收或者分片清理时清除
+     */
+    private final Map<Integer, Set<Integer>> failures = new ConcurrentHashMap<>();
+
+    /**
+     * 写入请求，所有的写入依次执行
+     */
+    private final Sinks.Many<Sinks.One<Void>> flushes = Sinks.many().unicast().onBackpressureBuffer();
+
+    /**
+     * 批量写入的次数
+     */
+    private final AtomicLong batchCount = new AtomicLong(0);
+
+    /**
+     * 批量写入的分片记录数量
+     */
+    private final AtomicLong rowCount = new AtomicLong(0);
+
+    /**
+     * 构造方法初始化
+     *
+     * @param properties    配置文件对象
+     * @param client        DatabaseClient 对象
+     * @param taskScheduler 任务调度器对象
+     */
+    public UploadChunkBatchWriter(Properties properties, DatabaseClient client, TaskScheduler taskScheduler) {
+        this.properties = properties.getUploadChunkBatch();
+        this.client = client;
+        this.sqlCache = new String[Math.max(this.properties.getSize(), 1) + 1];
+        this.flushes.asFlux().concatMap(done -> drain().doFinally(s -> done.tryEmitEmpty())).subscribe();
+        if (this.properties.isEnabled()) {
+            taskScheduler.scheduleWithFixedDelay(() -> {
+                if (queueSize.get() > 0) {
+                    flush().subscribe();
+                }
+            }, Duration.ofMillis(Math.max(this.properties.getInterval(), 1)));
+        }
+    }
+
+    /**
+     * 是否开启延迟批量写入
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 分片上传返回结果之前是否需要等待分片记录写入数据库
+     *
+     * @return 是否需要等待
+     */
+    public boolean isDurabilityDatabase() {
+        return !DURABILITY_DISK.equalsIgnoreCase(properties.getDurability())
+                && !DURABILITY_NONE.equalsIgnoreCase(properties.getDurability());
+    }
+
+    /**
+     * 分片上传返回结果之前是否需要将分片数据同步到磁盘
+     *
+     * @return 是否需要同步
+     */
+    public boolean isDurabilityDisk() {
+        return DURABILITY_DISK.equalsIgnoreCase(properties.getDurability());
+    }
+
+    /**
+     * 分片上传返回结果时的持久化级别
+     * 没有开启延迟批量写入时分片记录直接写入数据库
+     *
+     * @return 持久化级别（DATABASE/DISK/NONE）
+     */
+    public String durability() {
+        if (!isEnabled() || isDurabilityDatabase()) {
+            return DURABILITY_DATABASE;
+        }
+        return isDurabilityDisk() ? DURABILITY_DISK : DURABILITY_NONE;
+    }
+
+    /**
+     * 写入数据库失败的分片索引
+     *
+     * @param fid FID
+     * @return 按照顺序排列的分片索引
+     */
+    public List<Integer> failures(int fid) {
+        final Set<Integer> indexes = failures.get(fid);
+        return indexes == null ? List.of() : indexes.stream().sorted().toList();
+    }
+
+    /**
+     * 清除写入数据库失败的分片索引
+     * 上传关闭之后不再需要重新上传分片
+     *
+     * @param fid FID
+     */
+    public void clear(int fid) {
+        failures.remove(fid);
+    }
+
+    /**
+     * 清除写入数据库失败的分片索引
+     * 上传会话到期回收或者分片清理删除上传之后调用
+     *
+     * @param fids FID 列表
+     */
+    public void clear(List<Integer> fids) {
+        fids.forEach(failures::remove);
+    }
+
+    /**
+     * 提交分片记录
+     * 返回的结果在分片记录写入数据库后完成，结果为被覆盖的分片名称（没有覆盖时为空字符串）
+     * 上传已经关闭或者不存在时返回异常
+     *
+     * @param model 模型对象
+     * @return Mono<String> 被覆盖的分片名称
+     */
+    public Mono<String> submit(UploadChunkModel model) {
+        if (model == null || model.getFid() == null || model.getIndex() == null
+                || model.getName() == null || model.getSize() == null) {
+            return Mono.error(new DataBaseException(
+                    this.getClass(),
+                    "fun submit(UploadChunkModel model). ==> " +
+                            "submit(...) model<UploadChunkModel> object attribute [ fid/index/name/size ] data is null.",
+                    "submit(...) UploadChunkModel object attribute [ fid/index/name/size ] data is null."
+            ));
+        }
+        final LocalDateTime now = LocalDateTime.now();
+        model.setId(null);
+        model.setVersion(0);
+        model.setCreationDateTime(now);
+        model.setModificationDateTime(now);
+        if (model.getCreator() == null) {
+            model.setCreator("sys");
+        }
+        if (model.getModifier() == null) {
+            model.setModifier("sys");
+        }
+        if (model.getSignature() == null) {
+            model.setSignature("");
+        }
+        final Sinks.One<String> sink = Sinks.one();
+        pendingKeys.merge(key(model), 1, Integer::sum);
+        pendingFids.merge(model.getFid(), 1, Integer::sum);
+        queue.add(new Pending(model, sink));
+        if (queueSize.incrementAndGet() >= properties.getSize()) {
+            flush().subscribe();
+        }
+        return sink.asMono();
+    }
+
+    /**
+     * 写入队列中的全部分片记录
+     * 关闭上传读取分片清单之前需要执行
+     *
+     * @return Mono<Void> 写入完成
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            final Sinks.One<Void> done = Sinks.one();
+            flushes.emitNext(done, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+            return done.asMono();
+        });
+    }
+
+    /**
+     * 写入指定上传还没有写入完成的分片记录
+     * 没有该上传的记录时不需要写入，用于查询分片上传状态之前保证分片清单包含已经返回结果的分片
+     *
+     * @param fid FID
+     * @return Mono<Void> 写入完成
+     */
+    public Mono<Void> flush(int fid) {
+        return Mono.defer(() -> pendingFids.containsKey(fid) ? flush() : Mono.empty());
+    }
+
+    /**
+     * 写入指定分片还没有写入完成的分片记录
+     * 没有该分片的记录时不需要写入，用于删除分片记录之前保证之后不会再写入旧的分片记录
+     *
+     * @param fid   FID
+     * @param index 分片索引
+     * @return Mono<Void> 写入完成
+     */
+    public Mono<Void> flush(int fid, int index) {
+        return Mono.defer(() -> pendingKeys.containsKey(fid + "_" + index) ? flush() : Mono.empty());
+    }
+
+    /**
+     * 获取批量写入的统计数据
+     *
+     * @return 批量写入的统计数据
+     */
+    public Map<String, Long> metrics() {
+        return new HashMap<>() {{
+            put("queueSize", (long) queueSize.get());
+            put("batchCount", batchCount.get());
+            put("rowCount", rowCount.get());
+            put("failureUploadCount", (long) failures.size());
+        }};
+    }
+
+    @Override
+    public void destroy() {
+        // 退出之前写入队列中的分片记录
+        flush().block(Duration.ofSeconds(30));
+    }
+
+    /**
+     * 读取队列中的分片记录并分批写入
+     *
+     * @return Mono<Void> 写入完成
+     */
+    private Mono<Void> drain() {
+        final List<List<Pending>> batches = new ArrayList<>();
+        List<Pending> batch = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            queueSize.decrementAndGet();
+            final String key = key(pending.model());
+            if (batch.size() >= properties.getSize() || keys.contains(key)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                keys = new HashSet<>();
+            }
+            batch.add(pending);
+            keys.add(key);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return Flux.fromIterable(batches).concatMap(this::write).then();
+    }
+
+    /**
+     * 批量写入分片记录
+     * 写入失败时每个分片记录的结果都返回异常，不影响后续的批次
+     *
+     * @param batch 分片记录列表
+     * @return Mono<Void> 写入完成
+     */
+    private Mono<Void> write(List<Pending> batch) {
+        DatabaseClient.GenericExecuteSpec spec = client.sql(sql(batch.size()));
+        for (int i = 0; i < batch.size(); i++) {
+            final UploadChunkModel model = batch.get(i).model();
+            spec = spec
+                    .bind("FID" + i, model.getFid())
+                    .bind("INDEX" + i, model.getIndex())
+                    .bind("NAME" + i, model.getName())
+                    .bind("SIZE" + i, model.getSize())
+                    .bind("SIGNATURE" + i, model.getSignature())
+                    .bind("CREATOR" + i, model.getCreator())
+                    .bind("MODIFIER" + i, model.getModifier())
+                    .bind("CREATION_DATE_TIME" + i, model.getCreationDateTime())
+                    .bind("MODIFICATION_DATE_TIME" + i, model.getModificationDateTime())
+                    .bind("VERSION" + i, model.getVersion());
+        }
+        return spec
+                .fetch()
+                .all()
+                .collectMap(row -> TransformationUtil.objectToInteger(row.get("fid"))
+                        + "_" + TransformationUtil.objectToInteger(row.get("index")), row -> row)
+                .doOnNext(rows -> {
+                    batchCount.incrementAndGet();
+                    rowCount.addAndGet(rows.size());
+                    for (final Pending item : batch) {
+                        final UploadChunkModel model = item.model();
+                        final Map<String, Object> row = rows.get(model.getFid() + "_" + model.getIndex());
+                        if (row == null) {
+                            item.sink().tryEmitError(new DataBaseException(
+                                    this.getClass(),
+                                    "fun write(List<Pending> batch). ==> write(...) upload has been closed or does not exist.",
+                                    "write(...) upload has been closed or does not exist."
+                            ));
+                        } else {
+                            model.setId(TransformationUtil.objectToInteger(row.get("id")));
+                            final String name = TransformationUtil.objectToString(row.get("previous_name"));
+                            item.sink().tryEmitValue(name == null ? "" : name);
+                            // 重新上传的分片写入成功后不再是失败的分片
+                            failures.computeIfPresent(model.getFid(), (k, v) -> {
+                                v.remove(model.getIndex());
+                                return v.isEmpty() ? null : v;
+                            });
+                        }
+                    }
+                })
+                .onErrorResume(e -> {
+                    LOGGER.error("upload chunk batch write error >>> {}", batch.size(), e);
+                    for (final Pending item : batch) {
+                        item.sink().tryEmitError(e);
+                        failures.computeIfAbsent(item.model().getFid(),
+                                k -> ConcurrentHashMap.newKeySet()).add(item.model().getIndex());
+                    }
+                    return Mono.empty();
+                })
+                .doFinally(s -> batch.forEach(item -> {
+                    pendingKeys.computeIfPresent(key(item.model()), (k, v) -> v > 1 ? v - 1 : null);
+                    pendingFids.computeIfPresent(item.model().getFid(), (k, v) -> v > 1 ? v - 1 : null);
+                }))
+                .then();
+    }
+
+    /**
+     * 分片记录的键
+     *
+     * @param model 模型对象
+     * @return 分片记录的键（fid_index）
+     */
+    private static String key(UploadChunkModel model) {
+        return model.getFid() + "_" + model.getIndex();
+    }
+
+    /**
+     * 获取批量写入的 SQL
+     * 同一个行数的 SQL 只生成一次
+     *
+     * @param size 行数
+     * @return 批量写入的 SQL
+     */
+    private String sql(int size) {
+        String sql = sqlCache[size];
+        if (sql == null) {
+            final String table = "\"" + DatabaseConfig.TABLE_PREFIX + "file_upload_chunk\"";
+            final StringBuilder builder = new StringBuilder()
+                    .append("    WITH \"rows\" (").append(COLUMNS).append(") AS (VALUES    ");
+            for (int i = 0; i < size; i++) {
+                builder.append(i == 0 ? "" : ",    ")
+                        .append("(:FID").append(i).append(", :INDEX").append(i)
+                        .append(", :NAME").append(i).append(", :SIZE").append(i)
+                        .append(", :SIGNATURE").append(i).append(", :CREATOR").append(i)
+                        .append(", :MODIFIER").append(i).append(", :CREATION_DATE_TIME").append(i)
+                        .append(", :MODIFICATION_DATE_TIME").append(i).append(", :VERSION").append(i).append(")");
+            }
+            builder.append("),    ")
+                    .append("    \"previous\" AS (    ")
+                    .append("        SELECT \"c\".\"fid\", \"c\".\"index\", \"c\".\"name\" FROM ").append(table).append(" AS \"c\"    ")
+                    .append("        JOIN \"rows\" AS \"r\" ON \"c\".\"fid\" = \"r\".\"fid\" AND \"c\".\"index\" = \"r\".\"index\"    ")
+                    .append("    )    ")
+                    .append("    INSERT INTO ").append(table).append(" AS \"t\" (").append(COLUMNS).append(")    ")
+                    .append("    SELECT \"r\".* FROM \"rows\" AS \"r\"    ")
+                    .append("    WHERE EXISTS (    ")
+                    .append("        SELECT 1 FROM \"").append(DatabaseConfig.TABLE_PREFIX).append("file_upload\" AS \"u\"    ")
+                    .append("        WHERE \"u\".\"id\" = \"r\".\"fid\" AND \"u\".\"lock\" >= 0    ")
+                    .append("        FOR SHARE    ")
+                    .append("    )    ")
+                    .append("    ON CONFLICT (\"fid\", \"index\") DO UPDATE SET    ")
+                    .append("        \"name\" = EXCLUDED.\"name\",    ")
+                    .append("        \"size\" = EXCLUDED.\"size\",    ")
+                    .append("        \"signature\" = EXCLUDED.\"signature\",    ")
+                    .append("        \"modifier\" = EXCLUDED.\"modifier\",    ")
+                    .append("        \"modification_date_time\" = EXCLUDED.\"modification_date_time\",    ")
+                    .append("        \"version\" = \"t\".\"version\" + 1    ")
+                    .append("    RETURNING \"t\".\"id\", \"t\".\"fid\", \"t\".\"index\",    ")
+                    .append("        (SELECT \"p\".\"name\" FROM \"previous\" AS \"p\"    ")
+                    .append("         WHERE \"p\".\"fid\" = \"t\".\"fid\" AND \"p\".\"index\" = \"t\".\"index\") AS \"previous_name\"    ")
+                    .append("    ;    ");
+            sql = builder.toString();
+            sqlCache[size] = sql;
+        }
+        return sql;
+    }
+
+    /**
+     * 等待写入的分片记录
+     *
+     * @param model 模型对象
+     * @param sink  写入结果
+     */
+    private record Pending(UploadChunkModel model, Sinks.One<String> sink) {
+    }
+
+}
@@ -7,9 +7,12 @@ import club.p6e.coat.file.model.UploadChunkModel;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 文件块上传存储库
@@ -27,28 +30,48 @@ public class UploadChunkRepository {
 
     @SuppressWarnings("ALL")
     private static final String CREATE_SQL = "" +
+            "    WITH \"previous\" AS (    " +
+            "        SELECT \"name\" FROM \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_chunk\"    " +
+            "        WHERE \"fid\" = :FID AND \"index\" = :INDEX    " +
+            "    )    " +
             "    INSERT INTO    " +
             "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_chunk\"    " +
             "        (    " +
             "            \"fid\",    " +
+            "            \"index\",    " +
             "            \"name\",    " +
             "            \"size\",    " +
+            "            \"signature\",    " +
             "            \"creator\",    " +
             "            \"modifier\",    " +
             "            \"creation_date_time\",    " +
             "            \"modification_date_time\",    " +
             "            \"version\"    " +
             "        )    " +
-            "    VALUES (    " +
+            "    SELECT    " +
             "            :FID,    " +
+            "            :INDEX,    " +
             "            :NAME,    " +
             "            :SIZE,    " +
+            "            :SIGNATURE,    " +
             "            :CREATOR,    " +
             "            :MODIFIER,    " +
             "            :CREATOR_DATE_TIME,    " +
             "            :MODIFICATION_DATE_TIME,    " +
             "            :VERSION     " +
-            "   ) RETURNING id      " +
+            "    WHERE EXISTS (    " +
+            "        SELECT 1 FROM \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
+            "        WHERE \"id\" = :FID AND \"lock\" >= 0    " +
+            "        FOR SHARE    " +
+            "    )    " +
+            "    ON CONFLICT (\"fid\", \"index\") DO UPDATE SET    " +
+            "            \"name\" = EXCLUDED.\"name\",    " +
+            "            \"size\" = EXCLUDED.\"size\",    " +
+            "            \"signature\" = EXCLUDED.\"signature\",    " +
+            "            \"modifier\" = EXCLUDED.\"modifier\",    " +
+            "            \"modification_date_time\" = EXCLUDED.\"modification_date_time\",    " +
+            "            \"version\" = \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_chunk\".\"version\" + 1    " +
+            "   RETURNING \"id\", (SELECT \"name\" FROM \"previous\") AS \"previous_name\"      " +
             "   ;   ";
 
     @SuppressWarnings("ALL")
@@ -59,13 +82,37 @@ public class UploadChunkRepository {
             "        fid = :FID        " +
             "    ;    ";
 
+    @SuppressWarnings("ALL")
+    private static final String FID_SELECT_SQL = "" +
+            "    SELECT    " +
+            "        \"id\",    " +
+            "        \"fid\",    " +
+            "        \"index\",    " +
+            "        \"name\",    " +
+            "        \"size\",    " +
+            "        \"signature\",    " +
+            "        \"creator\",    " +
+            "        \"modifier\",    " +
+            "        \"creation_date_time\",    " +
+            "        \"modification_date_time\",    " +
+            "        \"version\"    " +
+            "    FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_chunk\"    " +
+            "    WHERE    " +
+            "        \"fid\" = :FID    " +
+            "    ORDER BY    " +
+            "        \"index\" ASC NULLS LAST, \"id\" ASC    " +
+            "    ;    ";
+
     @SuppressWarnings("ALL")
     private static final String EXPIRE_SELECT_SQL = "" +
             "    SELECT    " +
             "        \"id\",    " +
             "        \"fid\",    " +
+            "        \"index\",    " +
             "        \"name\",    " +
             "        \"size\",    " +
+            "        \"signature\",    " +
             "        \"creator\",    " +
             "        \"modifier\",    " +
             "        \"creation_date_time\",    " +
@@ -76,7 +123,49 @@ public class UploadChunkRepository {
             "    WHERE    " +
             "        \"id\" > :ID AND \"creation_date_time\" < :CREATION_DATE_TIME    " +
             "    ORDER BY    " +
-            "        \"id\" AES    " +
+            "        \"id\" ASC    " +
+            "    ;    ";
+
+    @SuppressWarnings("ALL")
+    private static final String EXPIRE_FID_SELECT_SQL = "" +
+            "    SELECT    " +
+            "        \"fid\"    " +
+            "    FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_chunk\"    " +
+            "    WHERE    " +
+            "        \"fid\" > :FID AND \"creation_date_time\" < :CREATION_DATE_TIME    " +
+            "        AND \"fid\" % :SHARDS = :SHARD    " +
+            "    GROUP BY    " +
+            "        \"fid\"    " +
+            "    ORDER BY    " +
+            "        \"fid\" ASC    " +
+            "    LIMIT :SIZE    " +
+            "    ;    ";
+
+    @SuppressWarnings("ALL")
+    private static final String FIDS_BY_DELETE_SQL = "" +
+            "    DELETE FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_chunk\"    " +
+            "    WHERE    " +
+            "        \"fid\" = ANY(:FIDS)        " +
+            "    ;    ";
+
+    /**
+     * 只有在上传没有关闭（lock >= 0）时才能删除，返回上传的 ID（上传已经关闭或者不存在时没有返回）
+     */
+    @SuppressWarnings("ALL")
+    private static final String FID_INDEX_BY_DELETE_SQL = "" +
+            "    WITH \"upload\" AS (    " +
+            "        SELECT \"id\" FROM \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
+            "        WHERE \"id\" = :FID AND \"lock\" >= 0    " +
+            "        FOR SHARE    " +
+            "    ), \"chunk\" AS (    " +
+            "        DELETE FROM    " +
+            "            \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_chunk\"    " +
+            "        WHERE    " +
+            "            \"fid\" IN (SELECT \"id\" FROM \"upload\") AND \"index\" = :INDEX    " +
+            "    )    " +
+            "    SELECT \"id\" FROM \"upload\"    " +
             "    ;    ";
 
 
@@ -96,27 +185,43 @@ public class UploadChunkRepository {
 
     /**
      * 创建数据
+     * 通过 (fid, index) 唯一约束登记分片，重复上传的分片覆盖之前的记录
+     * 只有在上传没有关闭（lock >= 0）时才能登记，不需要修改上传记录
+     * 登记时共享锁定上传记录（FOR SHARE），分片之间不互斥，关闭上传（修改 lock）会等待正在进行的登记结束，
+     * 关闭后读取的分片清单一定包含关闭前已经登记的分片，关闭后的登记一定失败
      *
      * @param model 模型对象
      * @return Mono<UploadChunkModel> 模型对象
      */
     public Mono<UploadChunkModel> create(UploadChunkModel model) {
+        return replace(model).map(n -> model);
+    }
+
+    /**
+     * 创建或者覆盖数据
+     * 返回被覆盖的分片名称，用于删除之前上传的分片文件
+     *
+     * @param model 模型对象
+     * @return Mono<String> 被覆盖的分片名称（没有覆盖时为空字符串）
+     */
+    public Mono<String> replace(UploadChunkModel model) {
         if (model == null) {
             return Mono.error(new DataBaseException(
                     this.getClass(),
-                    "fun create(UploadChunkModel model). ==> " +
-                            "create(...) model<UploadChunkModel> object data is null.",
-                    "create(...) UploadChunkModel object data is null."
+                    "fun replace(UploadChunkModel model). ==> " +
+                            "replace(...) model<UploadChunkModel> object data is null.",
+                    "replace(...) UploadChunkModel object data is null."
             ));
         }
         if (model.getFid() == null
+                || model.getIndex() == null
                 || model.getName() == null
                 || model.getSize() == null) {
             return Mono.error(new DataBaseException(
                     this.getClass(),
-                    "fun create(UploadChunkModel model). ==> " +
-                            "create(...) model<UploadChunkModel> object attribute [ fid/name/size ] data is null.",
-                    "create(...) UploadChunkModel object attribute [ fid/name/size ] data is null."
+                    "fun replace(UploadChunkModel model). ==> " +
+                            "replace(...) model<UploadChunkModel> object attribute [ fid/index/name/size ] data is null.",
+                    "replace(...) UploadChunkModel object attribute [ fid/index/name/size ] data is null."
             ));
         }
         final LocalDateTime now = LocalDateTime.now();
@@ -130,11 +235,16 @@ public class UploadChunkRepository {
         if (model.getModifier() == null) {
             model.setModifier("sys");
         }
+        if (model.getSignature() == null) {
+            model.setSignature("");
+        }
         return client
                 .sql(CREATE_SQL)
                 .bind("FID", model.getFid())
+                .bind("INDEX", model.getIndex())
                 .bind("NAME", model.getName())
                 .bind("SIZE", model.getSize())
+                .bind("SIGNATURE", model.getSignature())
                 .bind("CREATOR", model.getCreator())
                 .bind("MODIFIER", model.getModifier())
                 .bind("CREATOR_DATE_TIME", model.getCreationDateTime())
@@ -142,11 +252,15 @@ public class UploadChunkRepository {
                 .bind("VERSION", model.getVersion())
                 .fetch()
                 .first()
-                .map(row -> model.setId(TransformationUtil.objectToInteger(row.get("id"))))
+                .map(row -> {
+                    model.setId(TransformationUtil.objectToInteger(row.get("id")));
+                    final String name = TransformationUtil.objectToString(row.get("previous_name"));
+                    return name == null ? "" : name;
+                })
                 .switchIfEmpty(Mono.error(new DataBaseException(
                         this.getClass(),
-                        "fun create(UploadChunkModel model). ==> create(...) create data is null.",
-                        "create(...) create data is null."
+                        "fun replace(UploadChunkModel model). ==> replace(...) upload has been closed or does not exist.",
+                        "replace(...) upload has been closed or does not exist."
                 )));
     }
 
@@ -160,6 +274,69 @@ public class UploadChunkRepository {
         return client.sql(FID_BY_DELETE_SQL).bind("FID", fid).fetch().rowsUpdated();
     }
 
+    /**
+     * 根据 FID 和分片索引删除数据
+     * 和登记一样只有在上传没有关闭（lock >= 0）时才能删除，并且共享锁定上传记录
+     * 删除成功后关闭上传读取的分片清单一定缺少这个分片，上传已经关闭时返回异常
+     *
+     * @param fid   FID
+     * @param index 分片索引
+     * @return Mono<Void> 删除完成
+     */
+    public Mono<Void> deleteByFidAndIndex(Integer fid, Integer index) {
+        return client
+                .sql(FID_INDEX_BY_DELETE_SQL)
+                .bind("FID", fid)
+                .bind("INDEX", index)
+                .fetch()
+                .first()
+                .switchIfEmpty(Mono.error(new DataBaseException(
+                        this.getClass(),
+                        "fun deleteByFidAndIndex(Integer fid, Integer index). ==> " +
+                                "deleteByFidAndIndex(...) upload has been closed or does not exist.",
+                        "deleteByFidAndIndex(...) upload has been closed or does not exist."
+                )))
+                .then();
+    }
+
+    /**
+     * 根据 FID 列表删除数据
+     *
+     * @param fids FID 列表
+     * @return Mono<Long> 删除的数据条数
+     */
+    public Mono<Long> deleteByFids(List<Integer> fids) {
+        if (fids == null || fids.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return client.sql(FIDS_BY_DELETE_SQL).bind("FIDS", fids.toArray(new Integer[0])).fetch().rowsUpdated();
+    }
+
+    /**
+     * 分页查询过期的 FID
+     * 按照 FID 排序，下一页从上一页最后的 FID 开始查询
+     * FID 按照取模划分为多个分区，每次只查询一个分区
+     *
+     * @param fid           起始 FID（不包含）
+     * @param localDateTime 终止时间
+     * @param size          查询的数量
+     * @param shards        分区的数量
+     * @param shard         分区的编号
+     * @return Flux<Integer> FID
+     */
+    public Flux<Integer> selectExpireFid(Integer fid, LocalDateTime localDateTime, int size, int shards, int shard) {
+        return client
+                .sql(EXPIRE_FID_SELECT_SQL)
+                .bind("FID", fid)
+                .bind("CREATION_DATE_TIME", localDateTime)
+                .bind("SIZE", size)
+                .bind("SHARDS", shards)
+                .bind("SHARD", shard)
+                .fetch()
+                .all()
+                .map(row -> TransformationUtil.objectToInteger(row.get("fid")));
+    }
+
     /**
      * 查询过期数据
      *
@@ -174,19 +351,45 @@ public class UploadChunkRepository {
                 .bind("CREATION_DATE_TIME", localDateTime)
                 .fetch()
                 .first()
-                .map(row -> {
-                    final UploadChunkModel model = new UploadChunkModel();
-                    model.setId(TransformationUtil.objectToInteger(row.get("id")));
-                    model.setFid(TransformationUtil.objectToInteger(row.get("fid")));
-                    model.setName(TransformationUtil.objectToString(row.get("name")));
-                    model.setSize(TransformationUtil.objectToLong(row.get("size")));
-                    model.setCreator(TransformationUtil.objectToString(row.get("creator")));
-                    model.setCreationDateTime(TransformationUtil.objectToLocalDateTime(row.get("creation_date_time")));
-                    model.setModifier(TransformationUtil.objectToString(row.get("modifier")));
-                    model.setModificationDateTime(TransformationUtil.objectToLocalDateTime(row.get("modification_date_time")));
-                    model.setVersion(TransformationUtil.objectToInteger(row.get("version")));
-                    return model;
-                });
+                .map(this::toModel);
+    }
+
+    /**
+     * 根据 FID 查询数据
+     * 按照分片索引排序，作为合并分片的清单
+     *
+     * @param fid FID
+     * @return Flux<UploadChunkModel> 模型对象
+     */
+    public Flux<UploadChunkModel> findByFid(Integer fid) {
+        return client
+                .sql(FID_SELECT_SQL)
+                .bind("FID", fid)
+                .fetch()
+                .all()
+                .map(this::toModel);
+    }
+
+    /**
+     * 数据行转换为模型对象
+     *
+     * @param row 数据行
+     * @return 模型对象
+     */
+    private UploadChunkModel toModel(Map<String, Object> row) {
+        final UploadChunkModel model = new UploadChunkModel();
+        model.setId(TransformationUtil.objectToInteger(row.get("id")));
+        model.setFid(TransformationUtil.objectToInteger(row.get("fid")));
+        model.setIndex(TransformationUtil.objectToInteger(row.get("index")));
+        model.setName(TransformationUtil.objectToString(row.get("name")));
+        model.setSize(TransformationUtil.objectToLong(row.get("size")));
+        model.setSignature(TransformationUtil.objectToString(row.get("signature")));
+        model.setCreator(TransformationUtil.objectToString(row.get("creator")));
+        model.setCreationDateTime(TransformationUtil.objectToLocalDateTime(row.get("creation_date_time")));
+        model.setModifier(TransformationUtil.objectToString(row.get("modifier")));
+        model.setModificationDateTime(TransformationUtil.objectToLocalDateTime(row.get("modification_date_time")));
+        model.setVersion(TransformationUtil.objectToInteger(row.get("version")));
+        return model;
     }
 
 }
@@ -0,0 +1,159 @@
+package club.p6e.coat.file.repository;
+
+import club.p6e.coat.file.model.UploadModel;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上传数据缓存
+ * 有最大数量（按照最近最少使用淘汰）和过期时间的限制
+ * 失效时保留数据的版本号，版本号更小（旧的）的查询结果不会再次写入缓存
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public class UploadModelCache {
+
+    /**
+     * 删除后的版本号
+     */
+    private static final int DELETE_VERSION = Integer.MAX_VALUE;
+
+    /**
+     * 缓存的最大数量
+     */
+    private final int maxSize;
+
+    /**
+     * 缓存的过期时间（毫秒）
+     */
+    private final long expire;
+
+    /**
+     * 缓存对象
+     */
+    private final LinkedHashMap<Integer, Entry> cache;
+
+    /**
+     * 命中的次数
+     */
+    private final AtomicLong hitCount = new AtomicLong(0);
+
+    /**
+     * 未命中的次数
+     */
+    private final AtomicLong missCount = new AtomicLong(0);
+
+    /**
+     * 失效的次数
+     */
+    private final AtomicLong invalidateCount = new AtomicLong(0);
+
+    /**
+     * 构造方法初始化
+     *
+     * @param maxSize 缓存的最大数量
+     * @param expire  缓存的过期时间（毫秒）
+     */
+    public UploadModelCache(int maxSize, long expire) {
+        this.maxSize = maxSize;
+        this.expire = expire;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > UploadModelCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @param id 模型 ID
+     * @return 模型对象的副本（没有缓存时为 null）
+     */
+    public synchronized UploadModel get(int id) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        final Entry entry = cache.get(id);
+        if (entry == null || entry.model() == null || entry.expireTime() < System.currentTimeMillis()) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.model().copy();
+    }
+
+    /**
+     * 写入缓存
+     * 缓存中的版本号（包括失效时保留的版本号）更大时不写入
+     *
+     * @param model 模型对象
+     */
+    public synchronized void put(UploadModel model) {
+        if (maxSize <= 0 || model == null || model.getId() == null || model.getVersion() == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Entry entry = cache.get(model.getId());
+        if (entry != null && entry.expireTime() >= now && entry.version() > model.getVersion()) {
+            return;
+        }
+        cache.put(model.getId(), new Entry(model.copy(), model.getVersion(), now + expire));
+    }
+
+    /**
+     * 缓存失效
+     * 保留修改后的版本号，用以拒绝修改之前发起的查询结果
+     *
+     * @param id      模型 ID
+     * @param version 修改后的版本号
+     */
+    public synchronized void invalidate(int id, int version) {
+        if (maxSize <= 0) {
+            return;
+        }
+        invalidateCount.incrementAndGet();
+        final Entry entry = cache.get(id);
+        final int value = entry == null ? version : Math.max(entry.version(), version);
+        cache.put(id, new Entry(null, value, System.currentTimeMillis() + expire));
+    }
+
+    /**
+     * 缓存失效（删除数据）
+     *
+     * @param id 模型 ID
+     */
+    public void invalidate(int id) {
+        invalidate(id, DELETE_VERSION);
+    }
+
+    /**
+     * 获取缓存的统计数据
+     *
+     * @return 缓存的统计数据
+     */
+    public synchronized Map<String, Long> metrics() {
+        return new HashMap<>() {{
+            put("size", (long) cache.size());
+            put("hitCount", hitCount.get());
+            put("missCount", missCount.get());
+            put("invalidateCount", invalidateCount.get());
+        }};
+    }
+
+    /**
+     * 缓存项
+     *
+     * @param model      模型对象（失效时为 null）
+     * @param version    版本号
+     * @param expireTime 过期时间
+     */
+    private record Entry(UploadModel model, int version, long expireTime) {
+    }
+
+}
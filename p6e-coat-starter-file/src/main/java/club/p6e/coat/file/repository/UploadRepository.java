@@ -2,24 +2,23 @@ package club.p6e.coat.file.repository;
 
 import club.p6e.DatabaseConfig;
 import club.p6e.coat.common.error.DataBaseException;
-import club.p6e.coat.common.utils.CopyUtil;
 import club.p6e.coat.common.utils.TransformationUtil;
+import club.p6e.coat.file.Properties;
 import club.p6e.coat.file.model.UploadModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 文件上传存储库
@@ -36,27 +35,90 @@ import java.util.concurrent.ThreadLocalRandom;
 public class UploadRepository {
 
     /**
-     * 最大重试次数
+     * 日志对象
      */
-    private static final int MAX_RETRY_COUNT = 3;
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadRepository.class);
+
+    @SuppressWarnings("ALL")
+    private static final String SELECT_SQL = "" +
+            "  SELECT " +
+            "       \"id\",    " +
+            "       \"name\",    " +
+            "       \"size\",    " +
+            "       \"slice_size\",    " +
+            "       \"source\",    " +
+            "       \"node\",    " +
+            "       \"signature_algorithm\",    " +
+            "       \"signature\",    " +
+            "       \"owner\",    " +
+            "       \"storage_type\",    " +
+            "       \"storage_location\",    " +
+            "       \"lock\",    " +
+            "       \"creator\",    " +
+            "       \"modifier\",    " +
+            "       \"creation_date_time\",    " +
+            "       \"modification_date_time\",    " +
+            "       \"version\"    " +
+            "  FROM    " +
+            "       \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
+            "  WHERE    " +
+            "       \"id\" = :ID    " +
+            "    ;    ";
 
     /**
-     * 重试间隔时间
+     * 修改数据时允许修改的字段
      */
-    private static final int RETRY_INTERVAL_DATE = 1000;
+    private static final String[] UPDATE_COLUMNS = new String[]{
+            "name", "size", "source", "signature", "storage_type", "storage_location", "owner", "modifier"
+    };
 
     /**
-     * 日志对象
+     * 修改数据时字段对应的参数名称
      */
-    private static final Logger LOGGER = LoggerFactory.getLogger(UploadRepository.class);
+    private static final String[] UPDATE_PARAMETERS = new String[]{
+            "NAME", "SIZE", "SOURCE", "SIGNATURE", "STORAGE_TYPE", "STORAGE_LOCATION", "OWNER", "MODIFIER"
+    };
+
+    /**
+     * 修改数据的 SQL 缓存（下标为修改字段的组合）
+     */
+    private static final String[] UPDATE_SQL_CACHE = new String[1 << (UPDATE_COLUMNS.length + 1)];
 
     @SuppressWarnings("ALL")
-    private static final String SELECT_SQL = "" +
+    private static final String RETURNING_SQL = "" +
+            "  RETURNING " +
+            "       \"id\",    " +
+            "       \"name\",    " +
+            "       \"size\",    " +
+            "       \"slice_size\",    " +
+            "       \"source\",    " +
+            "       \"node\",    " +
+            "       \"signature_algorithm\",    " +
+            "       \"signature\",    " +
+            "       \"owner\",    " +
+            "       \"storage_type\",    " +
+            "       \"storage_location\",    " +
+            "       \"lock\",    " +
+            "       \"creator\",    " +
+            "       \"modifier\",    " +
+            "       \"creation_date_time\",    " +
+            "       \"modification_date_time\",    " +
+            "       \"version\"    ";
+
+    /**
+     * 按照编号分页查询已经关闭的上传（存储类型和存储位置匹配）
+     */
+    @SuppressWarnings("ALL")
+    private static final String STORAGE_LOCATION_LIKE_SELECT_SQL = "" +
             "  SELECT " +
             "       \"id\",    " +
             "       \"name\",    " +
             "       \"size\",    " +
+            "       \"slice_size\",    " +
             "       \"source\",    " +
+            "       \"node\",    " +
+            "       \"signature_algorithm\",    " +
+            "       \"signature\",    " +
             "       \"owner\",    " +
             "       \"storage_type\",    " +
             "       \"storage_location\",    " +
@@ -69,7 +131,45 @@ public class UploadRepository {
             "  FROM    " +
             "       \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
             "  WHERE    " +
-            "       \"id\" = :ID    " +
+            "       \"id\" > :ID AND \"lock\" < 0    " +
+            "       AND \"storage_type\" = :STORAGE_TYPE AND \"storage_location\" LIKE :STORAGE_LOCATION    " +
+            "  ORDER BY    " +
+            "       \"id\" ASC    " +
+            "  LIMIT :SIZE    " +
+            "    ;    ";
+
+    /**
+     * 根据存储位置查询数据
+     * 下载时读取文件签名，需要存储位置的索引（表名加上 TABLE_PREFIX）:
+     * CREATE INDEX "file_upload_storage_location_index" ON "file_upload" ("storage_location", "id" DESC);
+     */
+    @SuppressWarnings("ALL")
+    private static final String STORAGE_LOCATION_SELECT_SQL = "" +
+            "  SELECT " +
+            "       \"id\",    " +
+            "       \"name\",    " +
+            "       \"size\",    " +
+            "       \"slice_size\",    " +
+            "       \"source\",    " +
+            "       \"node\",    " +
+            "       \"signature_algorithm\",    " +
+            "       \"signature\",    " +
+            "       \"owner\",    " +
+            "       \"storage_type\",    " +
+            "       \"storage_location\",    " +
+            "       \"lock\",    " +
+            "       \"creator\",    " +
+            "       \"modifier\",    " +
+            "       \"creation_date_time\",    " +
+            "       \"modification_date_time\",    " +
+            "       \"version\"    " +
+            "  FROM    " +
+            "       \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
+            "  WHERE    " +
+            "       \"storage_location\" = :STORAGE_LOCATION    " +
+            "  ORDER BY    " +
+            "       \"id\" DESC    " +
+            "  LIMIT 1    " +
             "    ;    ";
 
     @SuppressWarnings("ALL")
@@ -79,7 +179,11 @@ public class UploadRepository {
             "    (    " +
             "       \"name\",    " +
             "       \"size\",    " +
+            "       \"slice_size\",    " +
             "       \"source\",    " +
+            "       \"node\",    " +
+            "       \"signature_algorithm\",    " +
+            "       \"signature\",    " +
             "       \"owner\",    " +
             "       \"storage_type\",    " +
             "       \"storage_location\",    " +
@@ -91,7 +195,7 @@ public class UploadRepository {
             "       \"version\"    " +
             "    )    " +
             "    VALUES    " +
-            "        (    :NAME, :SIZE, :SOURCE, :OWNER, :STORAGE_TYPE, :STORAGE_LOCATION, :LOCK, :CREATOR, :MODIFIER, :CREATION_DATE_TIME, :MODIFICATION_DATE_TIME, :VERSION    )    " +
+            "        (    :NAME, :SIZE, :SLICE_SIZE, :SOURCE, :NODE, :SIGNATURE_ALGORITHM, :SIGNATURE, :OWNER, :STORAGE_TYPE, :STORAGE_LOCATION, :LOCK, :CREATOR, :MODIFIER, :CREATION_DATE_TIME, :MODIFICATION_DATE_TIME, :VERSION    )    " +
             "    RETURNING id    " +
             "    ;    ";
 
@@ -104,29 +208,44 @@ public class UploadRepository {
             "    ;    ";
 
     @SuppressWarnings("ALL")
+    private static final String IDS_DELETE_SQL = "" +
+            "    DELETE FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
+            "    WHERE    " +
+            "        \"id\" = ANY(:IDS)    " +
+            "    ;    ";
+
+    /**
+     * 锁增加 1
+     * 修改版本号，用以让上传数据缓存失效
+     */
+    @SuppressWarnings("ALL")
     private static final String ACQUIRE_LOCK_SQL = "" +
             "    UPDATE    " +
             "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
             "    SET " +
-            "        \"lock\" = :LOCK,    " +
-            "        \"version\" = :NEW_VERSION,    " +
-            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "        \"lock\" = \"lock\" + 1,    " +
+            "        \"version\" = \"version\" + 1    " +
             "    WHERE    " +
             "        \"id\" = :ID    " +
-            "        AND \"version\" = :OLD_VERSION    " +
+            "        AND \"lock\" >= 0    " +
+            "    RETURNING \"lock\", \"version\"    " +
             "    ;    ";
 
+    /**
+     * 锁减少 1
+     */
     @SuppressWarnings("ALL")
     private static final String RELEASE_LOCK_SQL = "" +
             "    UPDATE    " +
             "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
             "    SET " +
-            "        \"lock\" = :LOCK,    " +
-            "        \"version\" = :NEW_VERSION,    " +
-            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "        \"lock\" = \"lock\" - 1,    " +
+            "        \"version\" = \"version\" + 1    " +
             "    WHERE    " +
             "        \"id\" = :ID    " +
-            "        AND \"version\" = :OLD_VERSION    " +
+            "        AND \"lock\" > 0    " +
+            "    RETURNING \"lock\", \"version\"    " +
             "    ;    ";
 
     @SuppressWarnings("ALL")
@@ -134,14 +253,85 @@ public class UploadRepository {
             "    UPDATE    " +
             "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
             "    SET    " +
-            "        \"lock\" = :LOCK,    " +
-            "        \"version\" = :NEW_VERSION,    " +
+            "        \"lock\" = -1,    " +
+            "        \"version\" = \"version\" + 1,    " +
+            "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
+            "    WHERE " +
+            "        \"id\" = :ID    " +
+            "        AND \"lock\" = 0    " +
+            "    RETURNING \"lock\", \"version\"    " +
+            "    ;    ";
+
+    /**
+     * 重新打开关闭的锁
+     * 只有还没有合并完成（没有存储位置）的上传才能重新打开
+     */
+    @SuppressWarnings("ALL")
+    private static final String OPEN_LOCK_SQL = "" +
+            "    UPDATE    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload\"    " +
+            "    SET    " +
+            "        \"lock\" = 0,    " +
+            "        \"version\" = \"version\" + 1,    " +
             "        \"modification_date_time\" = :MODIFICATION_DATE_TIME    " +
             "    WHERE " +
             "        \"id\" = :ID    " +
-            "        AND \"version\" = :OLD_VERSION    " +
+            "        AND \"lock\" = -1    " +
+            "        AND \"storage_location\" = ''    " +
+            "    RETURNING \"lock\", \"version\"    " +
             "    ;    ";
 
+    /**
+     * 获取锁的次数
+     */
+    private final AtomicLong acquireLockCount = new AtomicLong(0);
+
+    /**
+     * 获取锁冲突（失败）的次数
+     */
+    private final AtomicLong acquireLockConflictCount = new AtomicLong(0);
+
+    /**
+     * 释放锁的次数
+     */
+    private final AtomicLong releaseLockCount = new AtomicLong(0);
+
+    /**
+     * 释放锁冲突（失败）的次数
+     */
+    private final AtomicLong releaseLockConflictCount = new AtomicLong(0);
+
+    /**
+     * 关闭锁的次数
+     */
+    private final AtomicLong closeLockCount = new AtomicLong(0);
+
+    /**
+     * 关闭锁冲突（失败）的次数
+     */
+    private final AtomicLong closeLockConflictCount = new AtomicLong(0);
+
+    /**
+     * 上传数据缓存对象
+     */
+    private final UploadModelCache cache;
+
+    /**
+     * 存储位置和上传编号的缓存（没有上传记录时编号为 -1）
+     * 存储位置在关闭上传后不再属于其它的上传，缓存编号后通过上传数据缓存读取数据
+     */
+    private final Map<String, LocationEntry> locations;
+
+    /**
+     * 存储位置缓存的最大数量
+     */
+    private final int locationMaxSize;
+
+    /**
+     * 存储位置缓存的过期时间（毫秒）
+     */
+    private final long locationExpire;
+
     /**
      * DatabaseClient 对象
      */
@@ -150,10 +340,23 @@ public class UploadRepository {
     /**
      * 构造方法初始化
      *
-     * @param client DatabaseClient 对象
+     * @param properties 配置文件对象
+     * @param client     DatabaseClient 对象
      */
-    public UploadRepository(DatabaseClient client) {
+    public UploadRepository(Properties properties, DatabaseClient client) {
         this.client = client;
+        this.cache = new UploadModelCache(
+                properties.getUploadCache().getMaxSize(),
+                properties.getUploadCache().getExpire()
+        );
+        this.locationMaxSize = properties.getUploadCache().getMaxSize();
+        this.locationExpire = properties.getUploadCache().getExpire();
+        this.locations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocationEntry> eldest) {
+                return size() > locationMaxSize;
+            }
+        };
     }
 
     /**
@@ -181,6 +384,18 @@ public class UploadRepository {
         if (model.getSize() == null) {
             model.setSize(0L);
         }
+        if (model.getSliceSize() == null) {
+            model.setSliceSize(0L);
+        }
+        if (model.getNode() == null) {
+            model.setNode("");
+        }
+        if (model.getSignatureAlgorithm() == null) {
+            model.setSignatureAlgorithm("");
+        }
+        if (model.getSignature() == null) {
+            model.setSignature("");
+        }
         if (model.getOwner() == null) {
             model.setOwner("sys");
         }
@@ -198,7 +413,8 @@ public class UploadRepository {
         }
         final LocalDateTime now = LocalDateTime.now();
         model.setId(null);
-        model.setLock(0);
+        // 创建已经关闭的上传（秒传）时保留关闭的状态
+        model.setLock(model.getLock() != null && model.getLock() < 0 ? model.getLock() : 0);
         model.setVersion(0);
         model.setCreationDateTime(now);
         model.setModificationDateTime(now);
@@ -206,7 +422,11 @@ public class UploadRepository {
                 .sql(CREATE_SQL)
                 .bind("NAME", model.getName())
                 .bind("SIZE", model.getSize())
+                .bind("SLICE_SIZE", model.getSliceSize())
                 .bind("SOURCE", model.getSource())
+                .bind("NODE", model.getNode())
+                .bind("SIGNATURE_ALGORITHM", model.getSignatureAlgorithm())
+                .bind("SIGNATURE", model.getSignature())
                 .bind("OWNER", model.getOwner())
                 .bind("STORAGE_TYPE", model.getStorageType())
                 .bind("STORAGE_LOCATION", model.getStorageLocation())
@@ -219,6 +439,7 @@ public class UploadRepository {
                 .fetch()
                 .first()
                 .map(row -> model.setId(TransformationUtil.objectToInteger(row.get("id"))))
+                .doOnNext(cache::put)
                 .switchIfEmpty(Mono.error(new DataBaseException(
                         this.getClass(),
                         "fun create(UploadModel model). ==> create(...) create data is null.",
@@ -228,284 +449,320 @@ public class UploadRepository {
 
     /**
      * 修改数据--锁增加 1
+     * 单条语句原子修改，不需要先查询数据，也不需要重试
+     * 上传已经关闭（lock < 0）或者不存在时返回异常
+     * 分片上传不使用这个锁（分片通过 (fid, index) 唯一的分片记录登记），持有锁期间上传不能关闭
      *
      * @param id ID
-     * @return Mono<Long> 修改的数据条数
+     * @return Mono<Long> 锁的数量
      */
     public Mono<Long> acquireLock(int id) {
-        return acquireLock(id, 0);
+        acquireLockCount.incrementAndGet();
+        return client
+                .sql(ACQUIRE_LOCK_SQL)
+                .bind("ID", id)
+                .fetch()
+                .first()
+                .map(row -> {
+                    // 修改锁之后让缓存失效，避免关闭检查和上传状态读取到缓存中旧的锁
+                    cache.invalidate(id, TransformationUtil.objectToInteger(row.get("version")));
+                    return TransformationUtil.objectToLong(row.get("lock"));
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    acquireLockConflictCount.incrementAndGet();
+                    return Mono.error(new DataBaseException(
+                            this.getClass(),
+                            "fun acquireLock(int id). ==> acquireLock(...) upload has been closed or does not exist.",
+                            "acquireLock(...) upload has been closed or does not exist."
+                    ));
+                }));
     }
 
     /**
-     * 修改数据--锁增加 1
+     * 修改数据--锁减少 1
+     * 单条语句原子修改，不需要先查询数据，也不需要重试
+     *
+     * @param id ID
+     * @return Mono<Long> 锁的数量
+     */
+    public Mono<Long> releaseLock(int id) {
+        releaseLockCount.incrementAndGet();
+        return client
+                .sql(RELEASE_LOCK_SQL)
+                .bind("ID", id)
+                .fetch()
+                .first()
+                .map(row -> {
+                    // 修改锁之后让缓存失效，避免关闭检查和上传状态读取到缓存中旧的锁
+                    cache.invalidate(id, TransformationUtil.objectToInteger(row.get("version")));
+                    return TransformationUtil.objectToLong(row.get("lock"));
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    releaseLockConflictCount.incrementAndGet();
+                    return Mono.error(new DataBaseException(
+                            this.getClass(),
+                            "fun releaseLock(int id). ==> releaseLock(...) upload is not locked.",
+                            "releaseLock(...) upload is not locked."
+                    ));
+                }));
+    }
+
+    /**
+     * 关闭锁
+     * 单条语句原子修改，只有在没有被锁定时（lock = 0）才能关闭
+     * 正在登记或者删除的分片记录共享锁定上传记录，关闭会等待这些语句结束
      *
-     * @param id    ID
-     * @param retry 重试次数
+     * @param id 模型 ID
      * @return Mono<Long> 修改的数据条数
      */
-    private Mono<Long> acquireLock(int id, int retry) {
-        if (retry == 0) {
-            return acquireLock0(id).flatMap(c -> c > 0 ? Mono.just(c) : acquireLock(id, (retry + 1)));
-        } else if (retry <= MAX_RETRY_COUNT) {
-            final long interval = RETRY_INTERVAL_DATE * ThreadLocalRandom.current().nextInt(100) / 100;
-            return Mono
-                    .delay(Duration.of(interval, ChronoUnit.MILLIS))
-                    .flatMap(r -> acquireLock0(id))
-                    .flatMap(c -> c > 0 ? Mono.just(c) : acquireLock(id, (retry + 1)));
-        } else {
-            return Mono.error(new DataBaseException(
-                    this.getClass(),
-                    "fun acquireLock(int id, int retry). ==> " +
-                            "acquireLock(...) exceptions exceeding the latest retry count.",
-                    "acquireLock(...) exceptions exceeding the latest retry count."
-            ));
-        }
+    public Mono<Long> closeLock(int id) {
+        closeLockCount.incrementAndGet();
+        return client
+                .sql(CLOSE_LOCK_SQL)
+                .bind("ID", id)
+                .bind("MODIFICATION_DATE_TIME", LocalDateTime.now())
+                .fetch()
+                .first()
+                .map(row -> {
+                    cache.invalidate(id, TransformationUtil.objectToInteger(row.get("version")));
+                    return 1L;
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    closeLockConflictCount.incrementAndGet();
+                    // 修改失败时查询数据库（不读取缓存），用以返回准确的异常信息
+                    return this.selectById(id).<Long>flatMap(m -> m.getLock() == -1 ? Mono.error(new DataBaseException(
+                            this.getClass(),
+                            "fun closeLock(int id). ==> closeLock(...) " +
+                                    "it is already in a closed state and cannot be closed again.",
+                            "closeLock(...) it is already in a closed state and cannot be closed again."
+                    )) : Mono.error(new DataBaseException(
+                            this.getClass(),
+                            "fun closeLock(int id). ==> closeLock(...) " +
+                                    "there are upload sharding requests and cannot be closed.",
+                            "closeLock(...) there are upload sharding requests and cannot be closed."
+                    )));
+                }));
     }
 
     /**
-     * 修改数据--锁增加 1
+     * 重新打开锁
+     * 单条语句原子修改，只有关闭（lock = -1）并且还没有合并完成的上传才能重新打开
      *
-     * @param id ID
+     * @param id 模型 ID
      * @return Mono<Long> 修改的数据条数
      */
-    private Mono<Long> acquireLock0(int id) {
-        return this.findById(id)
-                .switchIfEmpty(Mono.error(new DataBaseException(
+    public Mono<Long> openLock(int id) {
+        return client
+                .sql(OPEN_LOCK_SQL)
+                .bind("ID", id)
+                .bind("MODIFICATION_DATE_TIME", LocalDateTime.now())
+                .fetch()
+                .first()
+                .map(row -> {
+                    cache.invalidate(id, TransformationUtil.objectToInteger(row.get("version")));
+                    return 1L;
+                })
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new DataBaseException(
                         this.getClass(),
-                        "fun acquireLock0(int id). ==> acquireLock0(...) get data does not exist exception.",
-                        "acquireLock0(...) get data does not exist exception."
-                )))
-                .flatMap(m -> {
-                    m.setModificationDateTime(LocalDateTime.now());
-                    if (m.getLock() >= 0) {
-                        return client
-                                .sql(ACQUIRE_LOCK_SQL)
-                                .bind("ID", m.getId())
-                                .bind("OLD_VERSION", m.getVersion())
-                                .bind("LOCK", (m.getLock() + 1))
-                                .bind("NEW_VERSION", (m.getVersion() + 1))
-                                .bind("MODIFICATION_DATE_TIME", m.getModificationDateTime())
-                                .fetch()
-                                .rowsUpdated()
-                                .switchIfEmpty(Mono.error(new DataBaseException(
-                                        this.getClass(),
-                                        "fun acquireLock0(int id). acquireLock0(...) update data exception.",
-                                        "acquireLock0(...) update data exception."
-                                )));
-                    } else {
-                        return Mono.error(new DataBaseException(
-                                this.getClass(),
-                                "fun acquireLock0(int id). acquireLock0(...) incomplete sharding exceptions.",
-                                "acquireLock0(...) incomplete sharding exceptions."
-                        ));
-                    }
-                });
+                        "fun openLock(int id). ==> openLock(...) upload is not closed or has been merged.",
+                        "openLock(...) upload is not closed or has been merged."
+                ))));
     }
 
     /**
-     * 修改数据--锁减少 1
+     * 获取锁的统计数据
      *
-     * @param id ID
-     * @return Mono<Long> 修改的数据条数
+     * @return 锁的统计数据
      */
-    public Mono<Long> releaseLock(int id) {
-        return releaseLock(id, 0);
+    public Map<String, Long> lockMetrics() {
+        return new HashMap<>() {{
+            put("acquireLockCount", acquireLockCount.get());
+            put("acquireLockConflictCount", acquireLockConflictCount.get());
+            put("releaseLockCount", releaseLockCount.get());
+            put("releaseLockConflictCount", releaseLockConflictCount.get());
+            put("closeLockCount", closeLockCount.get());
+            put("closeLockConflictCount", closeLockConflictCount.get());
+        }};
     }
 
     /**
-     * 修改数据--锁减少 1
+     * 获取缓存的统计数据
      *
-     * @param id    ID
-     * @param retry 重试次数
-     * @return Mono<Long> 修改的数据条数
+     * @return 缓存的统计数据
      */
-    private Mono<Long> releaseLock(int id, int retry) {
-        if (retry == 0) {
-            return releaseLock0(id).flatMap(c -> c > 0 ? Mono.just(c) : releaseLock(id, (retry + 1)));
-        } else if (retry <= MAX_RETRY_COUNT) {
-            final long interval = RETRY_INTERVAL_DATE * ThreadLocalRandom.current().nextInt(100) / 100;
-            return Mono
-                    .delay(Duration.of(interval, ChronoUnit.MILLIS))
-                    .flatMap(r -> releaseLock0(id))
-                    .flatMap(c -> c > 0 ? Mono.just(c) : releaseLock(id, (retry + 1)));
-        } else {
-            return Mono.error(new DataBaseException(
-                    this.getClass(),
-                    "fun releaseLock(int id, int retry). ==> releaseLock(...) exceptions exceeding the latest retry count.",
-                    "releaseLock(...) exceptions exceeding the latest retry count."
-            ));
-        }
+    public Map<String, Long> cacheMetrics() {
+        return cache.metrics();
     }
 
     /**
-     * 修改数据--锁减少 1
+     * 根据 ID 查询数据
+     * 优先读取缓存，缓存不存在或者过期时查询数据库并写入缓存
      *
-     * @param id ID
-     * @return Mono<Long> 修改的数据条数
+     * @param id 模型 ID
+     * @return Mono<UploadModel> 模型对象
      */
-    private Mono<Long> releaseLock0(int id) {
-        return this.findById(id)
-                .switchIfEmpty(Mono.error(new DataBaseException(
-                        this.getClass(),
-                        "fun releaseLock0(int id). ==> releaseLock0(...) get data does not exist exception.",
-                        "releaseLock0(...) get data does not exist exception."
-                )))
-                .flatMap(m -> {
-                    m.setModificationDateTime(LocalDateTime.now());
-                    if (m.getLock() >= 0) {
-                        return client
-                                .sql(RELEASE_LOCK_SQL)
-                                .bind("ID", m.getId())
-                                .bind("OLD_VERSION", m.getVersion())
-                                .bind("LOCK", (m.getLock() + 1))
-                                .bind("NEW_VERSION", (m.getVersion() + 1))
-                                .bind("MODIFICATION_DATE_TIME", m.getModificationDateTime())
-                                .fetch()
-                                .rowsUpdated()
-                                .switchIfEmpty(Mono.error(new DataBaseException(
-                                        this.getClass(),
-                                        "fun releaseLock0(int id). ==> releaseLock0(...) update data exception.",
-                                        "releaseLock0(...) update data exception."
-                                )));
-                    } else {
-                        return Mono.error(new DataBaseException(
-                                this.getClass(),
-                                "fun releaseLock0(int id). ==> releaseLock0(...) incomplete sharding exceptions.",
-                                "releaseLock0(...) incomplete sharding exceptions."
-                        ));
-                    }
-                });
+    public Mono<UploadModel> findById(int id) {
+        return Mono.defer(() -> {
+            final UploadModel model = cache.get(id);
+            return model == null ? selectById(id) : Mono.just(model);
+        });
     }
 
     /**
-     * 关闭锁
+     * 根据 ID 查询数据库
+     * 不读取缓存，用于需要读取最新数据（例如锁）的场景，查询的结果写入缓存
      *
      * @param id 模型 ID
-     * @return Mono<UploadModel> 修改的数据条数
+     * @return Mono<UploadModel> 模型对象
      */
-    public Mono<Long> closeLock(int id) {
-        return closeLock(id, 0);
+    public Mono<UploadModel> selectById(int id) {
+        return client
+                .sql(SELECT_SQL)
+                .bind("ID", id)
+                .fetch()
+                .first()
+                .map(this::toModel)
+                .doOnNext(cache::put)
+                .switchIfEmpty(Mono.error(new DataBaseException(
+                        this.getClass(),
+                        "fun selectById(int id). ==> selectById(...) find id data is null.",
+                        "selectById(...) find id data is null."
+                )));
     }
 
     /**
-     * 关闭锁
+     * 根据存储位置查询数据
+     * 查询不到数据时返回空
+     * 存储位置对应的上传编号有缓存，命中时通过 findById 读取（上传数据缓存），不需要查询数据库
      *
-     * @param id    模型 ID
-     * @param retry 重试次数
-     * @return Mono<UploadModel> 修改的数据条数
-     */
-    private Mono<Long> closeLock(int id, int retry) {
-        if (retry == 0) {
-            return closeLock0(id).flatMap(c -> c > 0 ? Mono.just(c) : closeLock(id, (retry + 1)));
-        } else if (retry <= MAX_RETRY_COUNT) {
-            final long interval = RETRY_INTERVAL_DATE * ThreadLocalRandom.current().nextInt(100) / 100;
-            return Mono
-                    .delay(Duration.of(interval, ChronoUnit.MILLIS))
-                    .flatMap(t -> closeLock0(id))
-                    .flatMap(c -> c > 0 ? Mono.just(c) : closeLock(id, (retry + 1)));
-        } else {
-            return Mono.error(new DataBaseException(
-                    this.getClass(),
-                    "fun closeLock(int id, int retry). ==> closeLock(...) exceptions exceeding the latest retry count.",
-                    "closeLock(...) exceptions exceeding the latest retry count."
-            ));
+     * @param storageLocation 存储位置
+     * @return Mono<UploadModel> 模型对象
+     */
+    public Mono<UploadModel> findByStorageLocation(String storageLocation) {
+        if (storageLocation == null || storageLocation.isEmpty()) {
+            return Mono.empty();
         }
+        return Mono.defer(() -> {
+            final Integer id = location(storageLocation);
+            if (id == null) {
+                return selectStorageLocation(storageLocation);
+            } else if (id < 0) {
+                return Mono.empty();
+            } else {
+                // 上传记录已经删除时重新查询
+                return findById(id).onErrorResume(DataBaseException.class, e -> selectStorageLocation(storageLocation));
+            }
+        });
     }
 
     /**
-     * 关闭锁
+     * 根据存储位置查询数据库
      *
-     * @param id 模型 ID
-     * @return Mono<UploadModel> 修改的数据条数
+     * @param storageLocation 存储位置
+     * @return Mono<UploadModel> 模型对象
      */
-    private Mono<Long> closeLock0(int id) {
-        return this.findById(id)
-                .switchIfEmpty(Mono.error(new DataBaseException(
-                        this.getClass(),
-                        "fun closeLock0(int id). ==> closeLock0(...) get data does not exist exception.",
-                        "closeLock0(...) get data does not exist exception."
-                )))
-                .flatMap(m -> {
-                    m.setModificationDateTime(LocalDateTime.now());
-                    if (m.getLock() == -1) {
-                        return Mono.error(new DataBaseException(
-                                this.getClass(),
-                                "fun closeLock0(int id). ==> closeLock0(...) " +
-                                        "it is already in a closed state and cannot be closed again.",
-                                "closeLock0(...) it is already in a closed state and cannot be closed again."
-                        ));
-                    } else if (m.getLock() > 0) {
-                        return Mono.error(new DataBaseException(
-                                this.getClass(),
-                                "fun closeLock0(int id). ==> closeLock0(...) " +
-                                        "there are upload sharding requests and cannot be closed.",
-                                "closeLock0(...) there are upload sharding requests and cannot be closed."
-                        ));
-                    } else if (m.getLock() == 0) {
-                        return client
-                                .sql(CLOSE_LOCK_SQL)
-                                .bind("LOCK", -1)
-                                .bind("ID", id)
-                                .bind("OLD_VERSION", m.getVersion())
-                                .bind("NEW_VERSION", (m.getVersion() + 1))
-                                .bind("MODIFICATION_DATE_TIME", m.getModificationDateTime())
-                                .fetch()
-                                .rowsUpdated()
-                                .switchIfEmpty(Mono.error(new DataBaseException(
-                                        this.getClass(),
-                                        "fun closeLock0(int id). ==> closeLock0(...) update data exception.",
-                                        "closeLock0(...) update data exception."
-                                )));
-                    } else {
-                        return Mono.just(0L);
-                    }
-                });
+    private Mono<UploadModel> selectStorageLocation(String storageLocation) {
+        return client
+                .sql(STORAGE_LOCATION_SELECT_SQL)
+                .bind("STORAGE_LOCATION", storageLocation)
+                .fetch()
+                .first()
+                .map(this::toModel)
+                .doOnNext(m -> {
+                    cache.put(m);
+                    location(storageLocation, m.getId());
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> location(storageLocation, -1)));
     }
 
+    /**
+     * 读取存储位置缓存
+     *
+     * @param storageLocation 存储位置
+     * @return 上传编号（没有缓存或者过期时为 null）
+     */
+    private Integer location(String storageLocation) {
+        if (locationMaxSize <= 0) {
+            return null;
+        }
+        synchronized (locations) {
+            final LocationEntry entry = locations.get(storageLocation);
+            return entry == null || entry.expireTime() < System.currentTimeMillis() ? null : entry.id();
+        }
+    }
 
     /**
-     * 根据 ID 查询数据
+     * 写入存储位置缓存
      *
-     * @param id 模型 ID
-     * @return Mono<UploadModel> 模型对象
+     * @param storageLocation 存储位置
+     * @param id              上传编号（没有上传记录时为 -1）
      */
-    public Mono<UploadModel> findById(int id) {
+    private void location(String storageLocation, int id) {
+        if (locationMaxSize <= 0) {
+            return;
+        }
+        synchronized (locations) {
+            locations.put(storageLocation, new LocationEntry(id, System.currentTimeMillis() + locationExpire));
+        }
+    }
+
+    /**
+     * 按照编号分页查询已经关闭的上传
+     *
+     * @param id              起始编号（不包含）
+     * @param storageType     存储类型
+     * @param storageLocation 存储位置的匹配模式（LIKE）
+     * @param size            查询的数量
+     * @return Flux<UploadModel> 模型对象
+     */
+    public Flux<UploadModel> selectByStorageLocation(int id, String storageType, String storageLocation, int size) {
         return client
-                .sql(SELECT_SQL)
+                .sql(STORAGE_LOCATION_LIKE_SELECT_SQL)
                 .bind("ID", id)
+                .bind("STORAGE_TYPE", storageType)
+                .bind("STORAGE_LOCATION", storageLocation)
+                .bind("SIZE", size)
                 .fetch()
-                .first()
-                .map(row -> {
-                    final UploadModel model = new UploadModel();
-                    model.setId(TransformationUtil.objectToInteger(row.get("id")));
-                    model.setName(TransformationUtil.objectToString(row.get("name")));
-                    model.setSize(TransformationUtil.objectToLong(row.get("size")));
-                    model.setSource(TransformationUtil.objectToString(row.get("source")));
-                    model.setOwner(TransformationUtil.objectToString(row.get("owner")));
-                    model.setStorageType(TransformationUtil.objectToString(row.get("storage_type")));
-                    model.setStorageLocation(TransformationUtil.objectToString(row.get("storage_location")));
-                    model.setLock(TransformationUtil.objectToInteger(row.get("lock")));
-                    model.setCreator(TransformationUtil.objectToString(row.get("creator")));
-                    model.setModifier(TransformationUtil.objectToString(row.get("modifier")));
-                    model.setCreationDateTime(TransformationUtil.objectToLocalDateTime(row.get("creation_date_time")));
-                    model.setModificationDateTime(TransformationUtil.objectToLocalDateTime(row.get("modification_date_time")));
-                    model.setVersion(TransformationUtil.objectToInteger(row.get("version")));
-                    return model;
-                })
-                .switchIfEmpty(Mono.error(new DataBaseException(
-                        this.getClass(),
-                        "fun findById(int id). ==> findById(...) find id data is null.",
-                        "findById(...) find id data is null."
-                )));
+                .all()
+                .map(this::toModel);
+    }
+
+    /**
+     * 数据行转换为模型对象
+     *
+     * @param row 数据行
+     * @return 模型对象
+     */
+    private UploadModel toModel(Map<String, Object> row) {
+        final UploadModel model = new UploadModel();
+        model.setId(TransformationUtil.objectToInteger(row.get("id")));
+        model.setName(TransformationUtil.objectToString(row.get("name")));
+        model.setSize(TransformationUtil.objectToLong(row.get("size")));
+        model.setSliceSize(TransformationUtil.objectToLong(row.get("slice_size")));
+        model.setSource(TransformationUtil.objectToString(row.get("source")));
+        model.setNode(TransformationUtil.objectToString(row.get("node")));
+        model.setSignatureAlgorithm(TransformationUtil.objectToString(row.get("signature_algorithm")));
+        model.setSignature(TransformationUtil.objectToString(row.get("signature")));
+        model.setOwner(TransformationUtil.objectToString(row.get("owner")));
+        model.setStorageType(TransformationUtil.objectToString(row.get("storage_type")));
+        model.setStorageLocation(TransformationUtil.objectToString(row.get("storage_location")));
+        model.setLock(TransformationUtil.objectToInteger(row.get("lock")));
+        model.setCreator(TransformationUtil.objectToString(row.get("creator")));
+        model.setModifier(TransformationUtil.objectToString(row.get("modifier")));
+        model.setCreationDateTime(TransformationUtil.objectToLocalDateTime(row.get("creation_date_time")));
+        model.setModificationDateTime(TransformationUtil.objectToLocalDateTime(row.get("modification_date_time")));
+        model.setVersion(TransformationUtil.objectToInteger(row.get("version")));
+        return model;
     }
 
     /**
      * 修改数据
+     * 只修改不为空的字段，通过 RETURNING 返回修改后的数据，不需要先查询数据
+     * 模型对象携带版本号时，只有版本号匹配才会修改
      *
      * @param model 模型对象
-     * @return Mono<UploadModel> 修改的数据条数
+     * @return Mono<UploadModel> 修改后的模型对象
      */
-    @SuppressWarnings("ALL")
     public Mono<UploadModel> update(UploadModel model) {
         if (model == null) {
             return Mono.error(new DataBaseException(
@@ -521,100 +778,95 @@ public class UploadRepository {
                     "update(...) UploadModel object attribute [ id ] data is null."
             ));
         }
-        return this.findById(model.getId())
-                .switchIfEmpty(Mono.error(new DataBaseException(
-                        this.getClass(),
-                        "fun update(UploadModel model). ==> update(...) get data does not exist exception.",
-                        "update(...) get data does not exist exception."
-                )))
-                .flatMap(m -> {
-                    final List<Map<String, Object>> list = new ArrayList<>();
-                    model.setVersion(m.getVersion());
-                    model.setModificationDateTime(LocalDateTime.now());
-                    list.add(new HashMap<>() {{
-                        put("modification_date_time", model.getModificationDateTime());
-                    }});
-                    if (model.getName() != null) {
-                        list.add(new HashMap<>() {{
-                            put("name", model.getName());
-                        }});
-                    }
-                    if (model.getSize() != null) {
-                        list.add(new HashMap<>() {{
-                            put("size", model.getSize());
-                        }});
-                    }
-                    if (model.getSource() != null) {
-                        list.add(new HashMap<>() {{
-                            put("source", model.getSource());
-                        }});
-                    }
-                    if (model.getStorageType() != null) {
-                        list.add(new HashMap<>() {{
-                            put("storage_type", model.getStorageType());
-                        }});
-                    }
-                    if (model.getStorageLocation() != null) {
-                        list.add(new HashMap<>() {{
-                            put("storage_location", model.getStorageLocation());
-                        }});
-                    }
-                    if (model.getOwner() != null) {
-                        list.add(new HashMap<>() {{
-                            put("owner", model.getOwner());
-                        }});
-                    }
-                    if (model.getModifier() != null) {
-                        list.add(new HashMap<>() {{
-                            put("modifier", model.getModifier());
-                        }});
-                    }
-                    final StringBuffer sql = new StringBuffer();
-                    sql.append("    UPDATE    ")
-                            .append("\"")
-                            .append(DatabaseConfig.TABLE_PREFIX)
-                            .append("file_upload")
-                            .append("\"")
-                            .append("    SET    ");
-                    for (final Map<String, Object> item : list) {
-                        for (final String key : item.keySet()) {
-                            sql.append("    ")
-                                    .append("\"")
-                                    .append(key)
-                                    .append("\"")
-                                    .append("    =    ")
-                                    .append(":")
-                                    .append(key.toUpperCase())
-                                    .append(",");
-                        }
-                    }
-                    sql.append("    \"version\" = :NEW_VERSION    ")
-                            .append("    WHERE \"id\" = :ID    ")
-                            .append("        AND \"version\" = :OLD_VERSION    ").append(";");
-                    LOGGER.info("[ SQL ] >>> {}", sql);
-                    LOGGER.info("[ LIST ] >>> {}", list);
-                    LOGGER.info("[ MODEL ] >>> {}", model);
-                    DatabaseClient.GenericExecuteSpec spec = client.sql(sql.toString());
-                    for (int i = 0; i < list.size(); i++) {
-                        final Map<String, Object> item = list.get(i);
-                        for (final String key : item.keySet()) {
-                            spec = spec.bind(key.toUpperCase(), item.get(key));
-                        }
+        int mask = 0;
+        for (int i = 0; i < UPDATE_COLUMNS.length; i++) {
+            if (updateValue(model, i) != null) {
+                mask |= 1 << i;
+            }
+        }
+        if (model.getVersion() != null) {
+            mask |= 1 << UPDATE_COLUMNS.length;
+        }
+        DatabaseClient.GenericExecuteSpec spec = client
+                .sql(updateSql(mask))
+                .bind("ID", model.getId())
+                .bind("MODIFICATION_DATE_TIME", LocalDateTime.now());
+        for (int i = 0; i < UPDATE_COLUMNS.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                spec = spec.bind(UPDATE_PARAMETERS[i], updateValue(model, i));
+            }
+        }
+        if (model.getVersion() != null) {
+            spec = spec.bind("VERSION", model.getVersion());
+        }
+        return spec
+                .fetch()
+                .first()
+                .map(this::toModel)
+                .doOnNext(cache::put)
+                .switchIfEmpty(Mono.defer(() -> {
+                    if (model.getVersion() != null) {
+                        cache.invalidate(model.getId(), model.getVersion() + 1);
                     }
-                    spec = spec.bind("ID", model.getId());
-                    spec = spec.bind("OLD_VERSION", model.getVersion());
-                    spec = spec.bind("NEW_VERSION", model.getVersion() + 1);
-                    spec.bind("MODIFICATION_DATE_TIME", model.getModificationDateTime());
-                    return spec
-                            .fetch()
-                            .rowsUpdated()
-                            .map(row -> CopyUtil.run(model, m).setVersion(model.getVersion() + 1))
-                            .switchIfEmpty((Mono.error(new DataBaseException(
-                                    this.getClass(),
-                                    "fun update(UploadModel model) ==> update(...) model<UploadModel> data is null.",
-                                    "update(...) UploadModel data is null."
-                            ))));
-                });
+                    return Mono.error(new DataBaseException(
+                            this.getClass(),
+                            "fun update(UploadModel model) ==> update(...) data does not exist or version does not match.",
+                            "update(...) data does not exist or version does not match."
+                    ));
+                }));
+    }
+
+    /**
+     * 获取修改数据的 SQL
+     * 每一种修改字段的组合只生成一次 SQL
+     *
+     * @param mask 修改字段的组合（最高位表示是否校验版本号）
+     * @return 修改数据的 SQL
+     */
+    private static String updateSql(int mask) {
+        String sql = UPDATE_SQL_CACHE[mask];
+        if (sql == null) {
+            final StringBuilder builder = new StringBuilder()
+                    .append("    UPDATE    \"").append(DatabaseConfig.TABLE_PREFIX).append("file_upload\"    ")
+                    .append("    SET    ");
+            for (int i = 0; i < UPDATE_COLUMNS.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    builder.append("\"").append(UPDATE_COLUMNS[i]).append("\" = :").append(UPDATE_PARAMETERS[i]).append(",    ");
+                }
+            }
+            builder.append("\"modification_date_time\" = :MODIFICATION_DATE_TIME,    ")
+                    .append("\"version\" = \"version\" + 1    ")
+                    .append("    WHERE \"id\" = :ID    ");
+            if ((mask & (1 << UPDATE_COLUMNS.length)) != 0) {
+                builder.append("        AND \"version\" = :VERSION    ");
+            }
+            builder.append(RETURNING_SQL).append(";");
+            sql = builder.toString();
+            UPDATE_SQL_CACHE[mask] = sql;
+            LOGGER.debug("[ UPDATE SQL ] >>> {} :: {}", mask, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 获取修改字段的值
+     *
+     * @param model 模型对象
+     * @param index 修改字段的索引（UPDATE_COLUMNS）
+     * @return 修改字段的值
+     */
+    private static Object updateValue(UploadModel model, int index) {
+        return switch (index) {
+            case 0 -> model.getName();
+            case 1 -> model.getSize();
+            case 2 -> model.getSource();
+            case 3 -> model.getSignature();
+            case 4 -> model.getStorageType();
+            case 5 -> model.getStorageLocation();
+            case 6 -> model.getOwner();
+            case 7 -> model.getModifier();
+            default -> null;
+        };
     }
 
     /**
@@ -629,6 +881,7 @@ public class UploadRepository {
                 .bind("ID", id)
                 .fetch()
                 .rowsUpdated()
+                .doOnNext(c -> cache.invalidate(id))
                 .switchIfEmpty(Mono.error(new DataBaseException(
                         this.getClass(),
                         "fun delete(int id). ==> delete(...) find id data is null.",
@@ -636,4 +889,31 @@ public class UploadRepository {
                 )));
     }
 
+    /**
+     * 根据 ID 列表删除数据
+     *
+     * @param ids ID 列表
+     * @return Mono<Long> 删除的数据条数
+     */
+    public Mono<Long> deleteByIds(List<Integer> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return client
+                .sql(IDS_DELETE_SQL)
+                .bind("IDS", ids.toArray(new Integer[0]))
+                .fetch()
+                .rowsUpdated()
+                .doOnNext(c -> ids.forEach(cache::invalidate));
+    }
+
+    /**
+     * 存储位置缓存项
+     *
+     * @param id         上传编号（没有上传记录时为 -1）
+     * @param expireTime 过期时间
+     */
+    private record LocationEntry(int id, long expireTime) {
+    }
+
 }
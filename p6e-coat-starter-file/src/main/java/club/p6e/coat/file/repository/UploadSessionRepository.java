@@ -0,0 +1,172 @@
+package club.p6e.coat.file.repository;
+
+import club.p6e.DatabaseConfig;
+import club.p6e.coat.common.utils.TransformationUtil;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 上传会话存储库
+ * 每个打开的分片上传一条会话记录，记录会话空闲到期的时间
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = UploadSessionRepository.class,
+        ignored = UploadSessionRepository.class
+)
+@SuppressWarnings("ALL")
+public class UploadSessionRepository {
+
+    @SuppressWarnings("ALL")
+    private static final String SAVE_SQL = "" +
+            "    INSERT INTO    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_session\"    " +
+            "        (    \"fid\", \"expire_date_time\"    )    " +
+            "    VALUES    " +
+            "        (    :FID, :EXPIRE_DATE_TIME    )    " +
+            "    ON CONFLICT (\"fid\") DO UPDATE SET    " +
+            "        \"expire_date_time\" = EXCLUDED.\"expire_date_time\"    " +
+            "    ;    ";
+
+    @SuppressWarnings("ALL")
+    private static final String SELECT_SQL = "" +
+            "    SELECT    " +
+            "        \"fid\", \"expire_date_time\"    " +
+            "    FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_session\"    " +
+            "    WHERE    " +
+            "        \"fid\" = :FID    " +
+            "    ;    ";
+
+    @SuppressWarnings("ALL")
+    private static final String EXPIRE_SELECT_SQL = "" +
+            "    SELECT    " +
+            "        \"fid\", \"expire_date_time\"    " +
+            "    FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_session\"    " +
+            "    WHERE    " +
+            "        \"fid\" > :FID AND \"expire_date_time\" < :EXPIRE_DATE_TIME    " +
+            "    ORDER BY \"fid\" ASC    " +
+            "    LIMIT :SIZE    " +
+            "    ;    ";
+
+    @SuppressWarnings("ALL")
+    private static final String EXPIRE_DELETE_SQL = "" +
+            "    DELETE FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_session\"    " +
+            "    WHERE    " +
+            "        \"fid\" = :FID AND \"expire_date_time\" <= :EXPIRE_DATE_TIME    " +
+            "    ;    ";
+
+    @SuppressWarnings("ALL")
+    private static final String DELETE_SQL = "" +
+            "    DELETE FROM    " +
+            "        \"" + DatabaseConfig.TABLE_PREFIX + "file_upload_session\"    " +
+            "    WHERE    " +
+            "        \"fid\" = :FID    " +
+            "    ;    ";
+
+    /**
+     * DatabaseClient 对象
+     */
+    private final DatabaseClient client;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param client DatabaseClient 对象
+     */
+    public UploadSessionRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 保存会话的到期时间
+     *
+     * @param fid    上传 ID
+     * @param expire 到期时间
+     * @return Mono<Long> 修改的数据条数
+     */
+    public Mono<Long> save(int fid, LocalDateTime expire) {
+        return client
+                .sql(SAVE_SQL)
+                .bind("FID", fid)
+                .bind("EXPIRE_DATE_TIME", expire)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * 读取会话的到期时间
+     *
+     * @param fid 上传 ID
+     * @return Mono<LocalDateTime> 到期时间
+     */
+    public Mono<LocalDateTime> findExpireDateTime(int fid) {
+        return client
+                .sql(SELECT_SQL)
+                .bind("FID", fid)
+                .fetch()
+                .first()
+                .map(row -> TransformationUtil.objectToLocalDateTime(row.get("expire_date_time")));
+    }
+
+    /**
+     * 按照上传 ID 分页读取指定时间之前到期的会话
+     *
+     * @param fid    起始上传 ID（不包含）
+     * @param expire 到期时间
+     * @param size   读取的数量
+     * @return Flux<Map<String, Object>> 会话（fid, expire_date_time）
+     */
+    public Flux<Map<String, Object>> selectExpire(int fid, LocalDateTime expire, int size) {
+        return client
+                .sql(EXPIRE_SELECT_SQL)
+                .bind("FID", fid)
+                .bind("EXPIRE_DATE_TIME", expire)
+                .bind("SIZE", size)
+                .fetch()
+                .all();
+    }
+
+    /**
+     * 删除已经到期的会话
+     * 会话被刷新（到期时间晚于指定时间）时不删除，多个实例同时到期时只有一个实例删除成功
+     *
+     * @param fid    上传 ID
+     * @param expire 到期时间
+     * @return Mono<Long> 删除的数据条数
+     */
+    public Mono<Long> deleteExpire(int fid, LocalDateTime expire) {
+        return client
+                .sql(EXPIRE_DELETE_SQL)
+                .bind("FID", fid)
+                .bind("EXPIRE_DATE_TIME", expire)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * 删除会话
+     *
+     * @param fid 上传 ID
+     * @return Mono<Long> 删除的数据条数
+     */
+    public Mono<Long> delete(int fid) {
+        return client
+                .sql(DELETE_SQL)
+                .bind("FID", fid)
+                .fetch()
+                .rowsUpdated();
+    }
+
+}
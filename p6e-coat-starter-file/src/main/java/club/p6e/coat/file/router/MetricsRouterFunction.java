@@ -0,0 +1,36 @@
+package club.p6e.coat.file.router;
+
+import club.p6e.coat.file.Properties;
+import club.p6e.coat.file.handler.MetricsHandlerFunction;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * 统计数据操作路由函数
+ * 没有开启统计数据路由时不匹配任何请求
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = MetricsRouterFunction.class,
+        ignored = MetricsRouterFunction.class
+)
+public class MetricsRouterFunction extends BaseRouterFunction implements RouterFunction<ServerResponse> {
+
+    /**
+     * 构造方法初始化
+     *
+     * @param properties      配置文件对象
+     * @param handlerFunction 处理器函数对象
+     */
+    public MetricsRouterFunction(Properties properties, MetricsHandlerFunction handlerFunction) {
+        super(properties.getMetrics().isEnabled()
+                ? RequestPredicates.GET("/metrics") : request -> false, handlerFunction);
+    }
+
+}
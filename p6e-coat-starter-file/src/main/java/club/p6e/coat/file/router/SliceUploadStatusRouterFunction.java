@@ -0,0 +1,33 @@
+package club.p6e.coat.file.router;
+
+import club.p6e.coat.file.handler.SliceUploadStatusHandlerFunction;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * 分片上传状态操作路由函数
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = SliceUploadStatusRouterFunction.class,
+        ignored = SliceUploadStatusRouterFunction.class
+)
+public class SliceUploadStatusRouterFunction extends BaseRouterFunction implements RouterFunction<ServerResponse> {
+
+    /**
+     * 构造方法初始化
+     *
+     * @param handlerFunction 处理器函数对象
+     */
+    public SliceUploadStatusRouterFunction(SliceUploadStatusHandlerFunction handlerFunction) {
+        super(RequestPredicates.GET("/upload/slice")
+                .or(RequestPredicates.GET("/upload/slice/{id}")), handlerFunction);
+    }
+
+}
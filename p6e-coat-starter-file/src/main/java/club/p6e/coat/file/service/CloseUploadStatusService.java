@@ -0,0 +1,25 @@
+package club.p6e.coat.file.service;
+
+import club.p6e.coat.file.context.CloseUploadStatusContext;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * 分片上传服务
+ * 查询关闭分片上传（合并任务）的状态
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public interface CloseUploadStatusService {
+
+    /**
+     * 执行查询关闭分片上传状态操作
+     *
+     * @param context 关闭分片上传状态上下文对象
+     * @return 结果对象
+     */
+    public Mono<Map<String, Object>> execute(CloseUploadStatusContext context);
+
+}
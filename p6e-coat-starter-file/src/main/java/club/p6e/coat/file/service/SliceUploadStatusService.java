@@ -0,0 +1,25 @@
+package club.p6e.coat.file.service;
+
+import club.p6e.coat.file.context.SliceUploadStatusContext;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * 分片上传服务
+ * 查询已经上传的分片，用于断点续传
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public interface SliceUploadStatusService {
+
+    /**
+     * 执行查询分片上传状态操作
+     *
+     * @param context 分片上传状态上下文对象
+     * @return 结果对象
+     */
+    public Mono<Map<String, Object>> execute(SliceUploadStatusContext context);
+
+}
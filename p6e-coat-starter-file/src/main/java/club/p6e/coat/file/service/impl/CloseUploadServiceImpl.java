@@ -1,25 +1,42 @@
 package club.p6e.coat.file.service.impl;
 
+import club.p6e.coat.common.error.FileException;
 import club.p6e.coat.common.error.ResourceException;
 import club.p6e.coat.common.error.ResourceNodeException;
+import club.p6e.coat.file.FileIoSchedulerService;
+import club.p6e.coat.file.FileMergeJobService;
 import club.p6e.coat.file.FilePermissionService;
 import club.p6e.coat.file.FileReadWriteService;
+import club.p6e.coat.file.FileSignatureService;
 import club.p6e.coat.file.Properties;
 import club.p6e.coat.file.actuator.FileWriteActuator;
 import club.p6e.coat.file.context.CloseUploadContext;
+import club.p6e.coat.file.model.UploadChunkModel;
 import club.p6e.coat.file.model.UploadModel;
+import club.p6e.coat.file.repository.UploadChunkBatchWriter;
+import club.p6e.coat.file.repository.UploadChunkRepository;
 import club.p6e.coat.file.repository.UploadRepository;
 import club.p6e.coat.file.service.CloseUploadService;
+import club.p6e.coat.file.task.UploadSessionExpireTask;
 import club.p6e.coat.file.utils.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * 分片上传服务
@@ -37,6 +54,11 @@ public class CloseUploadServiceImpl implements CloseUploadService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CloseUploadServiceImpl.class);
 
+    /**
+     * 错误信息中列出的缺失分片范围的最大数量
+     */
+    private static final int MISSING_REPORT_SIZE = 16;
+
     /**
      * 配置文件对象
      */
@@ -47,34 +69,82 @@ public class CloseUploadServiceImpl implements CloseUploadService {
      */
     private final UploadRepository repository;
 
+    /**
+     * 上传块存储库对象
+     */
+    private final UploadChunkRepository uploadChunkRepository;
+
+    /**
+     * 上传块延迟批量写入对象
+     */
+    private final UploadChunkBatchWriter uploadChunkBatchWriter;
+
     /**
      * 文件读写服务对象
      */
     private final FileReadWriteService fileReadWriteService;
 
+    /**
+     * 文件签名服务对象
+     */
+    private final FileSignatureService fileSignatureService;
+
     /**
      * 文件权限服务对象
      */
     private final FilePermissionService filePermissionService;
 
+    /**
+     * 文件 IO 调度服务对象
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 文件合并任务服务对象
+     */
+    private final FileMergeJobService fileMergeJobService;
+
+    /**
+     * 上传会话过期任务对象
+     */
+    private final UploadSessionExpireTask uploadSessionExpireTask;
+
     /**
      * 构造方法初始化
      *
-     * @param properties            配置文件对象
-     * @param repository            上传存储库对象
-     * @param fileReadWriteService  文件读写服务对象
-     * @param filePermissionService 文件权限服务对象
+     * @param properties              配置文件对象
+     * @param repository              上传存储库对象
+     * @param uploadChunkRepository   上传块存储库对象
+     * @param uploadChunkBatchWriter  上传块延迟批量写入对象
+     * @param fileReadWriteService    文件读写服务对象
+     * @param fileSignatureService    文件签名服务对象
+     * @param filePermissionService   文件权限服务对象
+     * @param fileIoSchedulerService  文件 IO 调度服务对象
+     * @param fileMergeJobService     文件合并任务服务对象
+     * @param uploadSessionExpireTask 上传会话过期任务对象
      */
     public CloseUploadServiceImpl(
             Properties properties,
             UploadRepository repository,
+            UploadChunkRepository uploadChunkRepository,
+            UploadChunkBatchWriter uploadChunkBatchWriter,
             FileReadWriteService fileReadWriteService,
-            FilePermissionService filePermissionService
+            FileSignatureService fileSignatureService,
+            FilePermissionService filePermissionService,
+            FileIoSchedulerService fileIoSchedulerService,
+            FileMergeJobService fileMergeJobService,
+            UploadSessionExpireTask uploadSessionExpireTask
     ) {
         this.properties = properties;
         this.repository = repository;
+        this.uploadChunkRepository = uploadChunkRepository;
+        this.uploadChunkBatchWriter = uploadChunkBatchWriter;
         this.fileReadWriteService = fileReadWriteService;
+        this.fileSignatureService = fileSignatureService;
         this.filePermissionService = filePermissionService;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        this.fileMergeJobService = fileMergeJobService;
+        this.uploadSessionExpireTask = uploadSessionExpireTask;
     }
 
     @Override
@@ -94,43 +164,42 @@ public class CloseUploadServiceImpl implements CloseUploadService {
                     LOGGER.info("permission >>> {}", b);
                     if (b) {
                         return repository
-                                .closeLock(context.getId())
-                                .flatMap(l -> repository.findById(context.getId()))
-                                .flatMap(m -> {
-                                    final Object operator = context.get("$operator");
-                                    if (operator instanceof final String content) {
-                                        m.setModifier(content);
-                                    }
-                                    LOGGER.info("operator >>> {}", operator);
-                                    // 文件夹绝对路径
-                                    final String absolutePath = FileUtil.convertAbsolutePath(
-                                            FileUtil.composePath(properties.getSliceUpload().getPath(), String.valueOf(m.getId()))
-                                    );
-                                    LOGGER.info("absolutePath >>> {}", absolutePath);
-                                    final File[] files = FileUtil.readFolder(absolutePath);
-                                    for (int i = 0; i < files.length; i++) {
-                                        for (int j = i; j < files.length; j++) {
-                                            final String in = files[i].getName();
-                                            final String jn = files[j].getName();
-                                            final int iw = Integer.parseInt(in.substring(0, in.indexOf("_")));
-                                            final int jw = Integer.parseInt(jn.substring(0, jn.indexOf("_")));
-                                            if (iw > jw) {
-                                                final File v = files[j];
-                                                files[j] = files[i];
-                                                files[i] = v;
+                                .findById(context.getId())
+                                // 先关闭锁再读取分片清单，关闭之后分片不能再登记（替换），读取的分片清单不会再变化
+                                // 分片不完整时重新打开锁，分片清单完整之后不再跟踪上传会话
+                                .flatMap(m -> uploadChunkBatchWriter.flush(m.getId()).then(repository.closeLock(m.getId()))
+                                        .then(manifest(m).onErrorResume(e -> reopen(m.getId()).then(Mono.error(e))))
+                                        .flatMap(chunks -> {
+                                            uploadChunkBatchWriter.clear(m.getId());
+                                            return uploadSessionExpireTask.close(m.getId()).thenReturn(chunks);
+                                        })
+                                        .flatMap(chunks -> {
+                                            final Object operator = context.get("$operator");
+                                            if (operator instanceof final String content) {
+                                                m.setModifier(content);
                                             }
-                                        }
-                                    }
-                                    LOGGER.info("fileReadWriteServicefileReadWriteService >>> {}", fileReadWriteService);
-                                    return fileReadWriteService
-                                            .write(m.getName(), new HashMap<>() {{
-                                                putAll(context);
-                                                putAll(upload.getExtend());
-                                            }}, new CustomFileWriteActuator(files, upload))
-                                            .flatMap(fm -> repository.update(new UploadModel().setId(m.getId()).setSize(fm.getLength()).setStorageType(fm.getType()).setStorageLocation(fm.getPath())))
-                                            .flatMap(rl -> repository.findById(m.getId()))
-                                            .map(UploadModel::toMap);
-                                });
+                                            LOGGER.info("operator >>> {}", operator);
+                                            LOGGER.info("fileReadWriteServicefileReadWriteService >>> {}", fileReadWriteService);
+                                            final Mono<Map<String, Object>> work = actuator(m, chunks, upload)
+                                                    .flatMap(actuator -> fileReadWriteService.write(m.getName(), new HashMap<>() {{
+                                                        putAll(context);
+                                                        putAll(upload.getExtend());
+                                                    }}, actuator))
+                                                    .flatMap(fm -> tree(m.getId(), chunks, fm.getLength()).flatMap(signature -> repository.update(
+                                                            new UploadModel().setId(m.getId()).setSize(fm.getLength()).setSignature(signature)
+                                                                    .setStorageType(fm.getType()).setStorageLocation(fm.getPath()))))
+                                                    .map(UploadModel::toMap)
+                                                    // 合并失败时重新打开锁和上传会话，客户端可以补充分片后再次关闭
+                                                    .onErrorResume(e -> reopen(m.getId()).then(Mono.error(e)));
+                                            // 合并任务进入所在磁盘的队列，异步关闭时立即返回任务状态
+                                            final Mono<Map<String, Object>> result =
+                                                    fileMergeJobService.submit(m.getId(), upload.getPath(), work);
+                                            if (Boolean.TRUE.equals(context.getAsync())) {
+                                                return fileMergeJobService.status(m.getId());
+                                            } else {
+                                                return result;
+                                            }
+                                        }));
                     } else {
                         return Mono.error(new ResourceException(
                                 this.getClass(),
@@ -142,15 +211,249 @@ public class CloseUploadServiceImpl implements CloseUploadService {
                 });
     }
 
+    /**
+     * 重新打开上传
+     * 重新打开失败时只记录日志，返回合并失败的异常
+     *
+     * @param id 上传编号
+     * @return Mono<Void> 打开完成
+     */
+    private Mono<Void> reopen(int id) {
+        return repository
+                .openLock(id)
+                .then(uploadSessionExpireTask.open(id))
+                .onErrorResume(e -> {
+                    LOGGER.warn("CLOSE UPLOAD REOPEN ERROR >>> {}", id, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 创建文件写入执行器
+     * 检查预分配文件或者分片文件是否存在，文件系统操作在文件 IO 线程中执行
+     *
+     * @param m      上传模型对象
+     * @param chunks 按照索引排序的分片清单
+     * @param upload 上传配置对象
+     * @return 文件写入执行器
+     */
+    private Mono<FileWriteActuator> actuator(UploadModel m, List<UploadChunkModel> chunks, Properties.Upload upload) {
+        return fileIoSchedulerService.execute(() -> {
+            // 文件夹绝对路径
+            final String absolutePath = FileUtil.convertAbsolutePath(
+                    FileUtil.composePath(properties.getSliceUpload().getPath(), String.valueOf(m.getId()))
+            );
+            LOGGER.info("absolutePath >>> {}", absolutePath);
+            if (m.getSliceSize() != null && m.getSliceSize() > 0) {
+                // 预分配文件的长度在打开上传时已经确定，不能说明分片是否写入
+                // 需要每个索引都登记了分片并且分片的长度和索引对应的区域长度相同，然后移动文件
+                final File file = new File(FileUtil.composePath(
+                        absolutePath, OpenUploadServiceImpl.PREALLOCATE_FILE_NAME));
+                if (!FileUtil.checkFileExist(file)) {
+                    throw new FileException(
+                            this.getClass(),
+                            "fun execute(CloseUploadContext context). ==> " +
+                                    "execute(...) preallocate file does not exist.",
+                            "execute(...) preallocate file does not exist.");
+                }
+                for (int i = 0; i < chunks.size(); i++) {
+                    final UploadChunkModel chunk = chunks.get(i);
+                    final long length = Math.min(m.getSliceSize(), m.getSize() - (long) i * m.getSliceSize());
+                    if (index(chunk) != i || chunk.getSize() == null || chunk.getSize() != length) {
+                        throw new FileException(
+                                this.getClass(),
+                                "fun execute(CloseUploadContext context). ==> " +
+                                        "execute(...) file slice (" + i + ") is not written completely.",
+                                "execute(...) file slice (" + i + ") is not written completely.");
+                    }
+                }
+                return new PreallocateFileWriteActuator(file, upload, fileIoSchedulerService.scheduler());
+            } else {
+                // 按照分片清单的索引顺序合并分片文件
+                final File[] files = new File[chunks.size()];
+                for (int i = 0; i < files.length; i++) {
+                    files[i] = new File(FileUtil.composePath(absolutePath, chunks.get(i).getName()));
+                    if (!FileUtil.checkFileExist(files[i])) {
+                        throw new FileException(
+                                this.getClass(),
+                                "fun execute(CloseUploadContext context). ==> " +
+                                        "execute(...) file slice (" + index(chunks.get(i)) + ") does not exist.",
+                                "execute(...) file slice (" + index(chunks.get(i)) + ") does not exist.");
+                    }
+                }
+                return new CustomFileWriteActuator(files, upload, properties.getSliceUpload().getMergeConcurrency(),
+                        fileIoSchedulerService.scheduler());
+            }
+        });
+    }
+
+    /**
+     * 读取分片清单
+     * 同一个索引只保留最后一次登记的分片，并检查分片索引是否完整
+     * 预分配文件的分片数量由文件长度和分片长度计算，否则分片索引需要从 0 开始连续
+     *
+     * @param model 上传模型对象
+     * @return 按照索引排序的分片清单
+     */
+    private Mono<List<UploadChunkModel>> manifest(UploadModel model) {
+        // 读取分片清单之前写入延迟写入的分片记录
+        return uploadChunkBatchWriter
+                .flush(model.getId())
+                .thenMany(uploadChunkRepository.findByFid(model.getId()))
+                .collect(TreeMap<Integer, UploadChunkModel>::new, (map, chunk) -> map.put(index(chunk), chunk))
+                .<List<UploadChunkModel>>flatMap(chunks -> {
+                    final long count;
+                    if (model.getSliceSize() != null && model.getSliceSize() > 0) {
+                        count = (model.getSize() + model.getSliceSize() - 1) / model.getSliceSize();
+                    } else {
+                        count = chunks.isEmpty() ? 0 : chunks.lastKey() + 1;
+                    }
+                    final String missing = missing(chunks.keySet(), count);
+                    if (count == 0 || chunks.size() != count || !missing.isEmpty()) {
+                        return Mono.error(new FileException(
+                                this.getClass(),
+                                "fun manifest(UploadModel model). ==> " +
+                                        "manifest(...) file slices are incomplete (" + chunks.size() + "/" + count + "), missing [" + missing + "].",
+                                "manifest(...) file slices are incomplete (" + chunks.size() + "/" + count + "), missing [" + missing + "]."
+                        ));
+                    }
+                    return Mono.just(new ArrayList<>(chunks.values()));
+                });
+    }
+
+    /**
+     * 缺失的分片索引范围
+     * 连续缺失的索引合并为一个范围（例如 1,4-7）
+     *
+     * @param indexes 已经登记的分片索引
+     * @param count   分片数量
+     * @return 缺失的分片索引范围（没有缺失时为空字符串）
+     */
+    private String missing(Set<Integer> indexes, long count) {
+        final List<String> result = new ArrayList<>();
+        long start = -1;
+        for (long i = 0; i <= count; i++) {
+            final boolean absent = i < count && !indexes.contains((int) i);
+            if (absent && start < 0) {
+                start = i;
+            } else if (!absent && start >= 0) {
+                result.add(start == i - 1 ? String.valueOf(start) : start + "-" + (i - 1));
+                start = -1;
+            }
+            if (result.size() >= MISSING_REPORT_SIZE) {
+                result.add("...");
+                break;
+            }
+        }
+        return String.join(",", result);
+    }
+
+    /**
+     * 获取分片的索引
+     * 没有索引的历史数据从分片名称（索引_名称）中读取
+     *
+     * @param chunk 上传块模型对象
+     * @return 分片的索引
+     */
+    private int index(UploadChunkModel chunk) {
+        if (chunk.getIndex() != null) {
+            return chunk.getIndex();
+        }
+        final String name = chunk.getName();
+        return Integer.parseInt(name.substring(0, name.indexOf("_")));
+    }
+
+    /**
+     * 根据分片签名计算整个文件的树形签名
+     * 分片签名不完整或者长度不匹配时签名为空字符串
+     *
+     * @param id     上传编号
+     * @param chunks 按照索引排序的分片清单
+     * @param length 文件长度
+     * @return 树形签名
+     */
+    private Mono<String> tree(int id, List<UploadChunkModel> chunks, long length) {
+        return Mono.fromSupplier(() -> {
+            long size = 0;
+            final List<String> signatures = new ArrayList<>();
+            for (final UploadChunkModel chunk : chunks) {
+                if (chunk.getSignature() == null || chunk.getSignature().isEmpty()) {
+                    return "";
+                }
+                size += chunk.getSize();
+                signatures.add(chunk.getSignature());
+            }
+            final String signature = size == length ? fileSignatureService.tree(signatures) : null;
+            LOGGER.info("tree signature >>> {} :: {}", id, signature);
+            return signature == null ? "" : signature;
+        });
+    }
+
     /**
      * 自定义的文件写入执行器
      *
-     * @param files      文件列表
-     * @param properties 上传配置对象
+     * @param files       文件列表
+     * @param properties  上传配置对象
+     * @param concurrency 合并分片时并行拷贝的最大数量
+     * @param scheduler   文件 IO 的调度器
      */
     private record CustomFileWriteActuator(
             File[] files,
-            Properties.Upload properties
+            Properties.Upload properties,
+            int concurrency,
+            Scheduler scheduler
+    ) implements FileWriteActuator {
+
+        @Override
+        public String type() {
+            return properties.getType();
+        }
+
+        @Override
+        public String path() {
+            return properties.getPath();
+        }
+
+        @Override
+        public File source() {
+            // 只有一个分片时分片文件就是完整的文件
+            return files.length == 1 ? files[0] : null;
+        }
+
+        @Override
+        public Flux<DataBuffer> content() {
+            // 按照顺序读取分片文件，写入的同时计算内容的摘要（只读取一次分片，不再并行拷贝）
+            return Flux.fromArray(files).concatMap(f -> Flux.defer(() -> FileUtil.readFile(f)).subscribeOn(scheduler));
+        }
+
+        @Override
+        public Mono<File> execute(File file) {
+            final long start = System.currentTimeMillis();
+            return FileUtil
+                    .mergeFileSlice(files, file, concurrency, (merged, total) ->
+                            LOGGER.debug("merge file slice progress >>> {} :: {}/{}", file, merged, total), scheduler)
+                    .doOnNext(f -> {
+                        final long time = Math.max(System.currentTimeMillis() - start, 1);
+                        LOGGER.info("merge file slice >>> {} :: slices {}, length {}, time {} ms, speed {} KB/s",
+                                f, files.length, f.length(), time, f.length() * 1000 / time / 1024);
+                    });
+        }
+
+    }
+
+    /**
+     * 预分配文件的写入执行器
+     * 分片已经按照位置写入到预分配文件中，同一个文件系统内通过硬链接提升，否则复制到目标位置
+     * 预分配文件保留到分片清理，合并失败重新打开上传后分片清单仍然对应预分配文件
+     *
+     * @param source     预分配文件
+     * @param properties 上传配置对象
+     * @param scheduler  文件 IO 的调度器
+     */
+    private record PreallocateFileWriteActuator(
+            File source,
+            Properties.Upload properties,
+            Scheduler scheduler
     ) implements FileWriteActuator {
 
         @Override
@@ -165,7 +468,10 @@ public class CloseUploadServiceImpl implements CloseUploadService {
 
         @Override
         public Mono<File> execute(File file) {
-            return FileUtil.mergeFileSlice(files, file);
+            return Mono.fromCallable(() -> {
+                Files.copy(source.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                return file;
+            }).subscribeOn(scheduler);
         }
 
     }
@@ -0,0 +1,96 @@
+package club.p6e.coat.file.service.impl;
+
+import club.p6e.coat.common.error.FileException;
+import club.p6e.coat.file.FileMergeJobService;
+import club.p6e.coat.file.context.CloseUploadStatusContext;
+import club.p6e.coat.file.model.UploadModel;
+import club.p6e.coat.file.repository.UploadRepository;
+import club.p6e.coat.file.service.CloseUploadStatusService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分片上传服务
+ * 查询关闭分片上传（合并任务）的状态
+ * 合并任务的状态只保存在执行任务的实例中，当前实例没有该任务时根据上传记录推断状态
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = CloseUploadStatusService.class,
+        ignored = CloseUploadStatusServiceImpl.class
+)
+public class CloseUploadStatusServiceImpl implements CloseUploadStatusService {
+
+    /**
+     * 上传还没有关闭
+     */
+    public static final String STATUS_OPEN = "OPEN";
+
+    /**
+     * 上传存储库对象
+     */
+    private final UploadRepository uploadRepository;
+
+    /**
+     * 文件合并任务服务对象
+     */
+    private final FileMergeJobService fileMergeJobService;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param uploadRepository    上传存储库对象
+     * @param fileMergeJobService 文件合并任务服务对象
+     */
+    public CloseUploadStatusServiceImpl(UploadRepository uploadRepository, FileMergeJobService fileMergeJobService) {
+        this.uploadRepository = uploadRepository;
+        this.fileMergeJobService = fileMergeJobService;
+    }
+
+    @Override
+    public Mono<Map<String, Object>> execute(CloseUploadStatusContext context) {
+        final long wait = context.getWait() == null ? 0 : context.getWait();
+        return fileMergeJobService
+                .await(context.getId(), Duration.ofMillis(wait))
+                // 其它实例执行的合并任务会修改上传记录，查询数据库（不读取缓存）
+                .switchIfEmpty(uploadRepository
+                        .selectById(context.getId())
+                        .switchIfEmpty(Mono.error(new FileException(this.getClass(),
+                                "fun execute(CloseUploadStatusContext context). ==> " +
+                                        "execute(...) upload (" + context.getId() + ") does not exist.",
+                                "execute(...) upload (" + context.getId() + ") does not exist.")
+                        ))
+                        .map(this::status));
+    }
+
+    /**
+     * 根据上传记录推断状态
+     * 已经关闭并且写入了存储位置为完成，已经关闭但是没有存储位置为执行中（或者执行的实例已经退出）
+     * 合并失败时上传重新打开，状态为还没有关闭（其它实例查询不到失败的原因）
+     *
+     * @param model 上传模型对象
+     * @return 状态
+     */
+    private Map<String, Object> status(UploadModel model) {
+        final Map<String, Object> result = new HashMap<>();
+        result.put("id", model.getId());
+        if (model.getLock() == null || model.getLock() >= 0) {
+            result.put("status", STATUS_OPEN);
+        } else if (model.getStorageLocation() == null || model.getStorageLocation().isEmpty()) {
+            result.put("status", FileMergeJobService.STATUS_RUNNING);
+        } else {
+            result.put("status", FileMergeJobService.STATUS_DONE);
+            result.put("result", model.toMap());
+        }
+        return result;
+    }
+
+}
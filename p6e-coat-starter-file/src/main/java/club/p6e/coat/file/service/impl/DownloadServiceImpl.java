@@ -4,17 +4,24 @@ import club.p6e.coat.common.error.DownloadNodeException;
 import club.p6e.coat.common.error.ResourceException;
 import club.p6e.coat.file.FilePermissionService;
 import club.p6e.coat.file.FileReadWriteService;
+import club.p6e.coat.file.FileReadWriteServiceImpl;
+import club.p6e.coat.file.FileSignatureService;
 import club.p6e.coat.file.Properties;
+import club.p6e.coat.file.actuator.FileActuatorModel;
 import club.p6e.coat.file.actuator.FileReadActuator;
 import club.p6e.coat.file.context.DownloadContext;
+import club.p6e.coat.file.repository.UploadRepository;
 import club.p6e.coat.file.service.DownloadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.File;
 import java.util.HashMap;
 
 /**
@@ -37,6 +44,11 @@ public class DownloadServiceImpl implements DownloadService {
      */
     private final Properties properties;
 
+    /**
+     * 上传存储库对象
+     */
+    private final UploadRepository repository;
+
     /**
      * 文件读写服务对象
      */
@@ -51,15 +63,18 @@ public class DownloadServiceImpl implements DownloadService {
      * 构造方法初始化
      *
      * @param properties            配置文件对象
+     * @param repository            上传存储库对象
      * @param fileReadWriteService  文件读写服务对象
      * @param filePermissionService 文件权限服务对象
      */
     public DownloadServiceImpl(
             Properties properties,
+            UploadRepository repository,
             FileReadWriteService fileReadWriteService,
             FilePermissionService filePermissionService
     ) {
         this.properties = properties;
+        this.repository = repository;
         this.fileReadWriteService = fileReadWriteService;
         this.filePermissionService = filePermissionService;
     }
@@ -89,8 +104,17 @@ public class DownloadServiceImpl implements DownloadService {
                                     new HashMap<>() {{
                                         putAll(context);
                                         putAll(download.getExtend());
+                                        put(FileReadWriteServiceImpl.READ_BUFFER_SIZE_EXTEND_NAME, download.getReadBufferSize());
                                     }}
-                            );
+                            ).flatMap(fra -> repository
+                                    // 读取上传时计算的文件签名（存储位置对应的上传编号有缓存）
+                                    .findByStorageLocation(context.getPath())
+                                    .<FileReadActuator>map(m -> m.getSignature() == null || m.getSignature().isEmpty()
+                                            ? fra : new SignatureFileReadActuator(fra, m.getSignature(),
+                                            m.getSignatureAlgorithm() == null || m.getSignatureAlgorithm().isEmpty()
+                                                    ? FileSignatureService.DEFAULT_ALGORITHM : m.getSignatureAlgorithm(),
+                                            m.getSliceSize() == null ? 0 : m.getSliceSize()))
+                                    .defaultIfEmpty(fra));
                         } else {
                             return Mono.error(new ResourceException(
                                     this.getClass(),
@@ -102,4 +126,50 @@ public class DownloadServiceImpl implements DownloadService {
                     });
         }
     }
+
+    /**
+     * 带有文件签名的文件读取执行器
+     *
+     * @param actuator  文件读取执行器
+     * @param signature 文件签名
+     * @param algorithm 分片签名的摘要算法
+     * @param sliceSize 分片的长度
+     */
+    private record SignatureFileReadActuator(
+            FileReadActuator actuator,
+            String signature,
+            String algorithm,
+            long sliceSize
+    ) implements FileReadActuator {
+
+        @Override
+        public MediaType mediaType() {
+            return actuator.mediaType();
+        }
+
+        @Override
+        public FileActuatorModel model() {
+            return actuator.model()
+                    .setSignature(signature)
+                    .setSignatureAlgorithm(algorithm)
+                    .setSignatureSliceSize(sliceSize);
+        }
+
+        @Override
+        public Flux<DataBuffer> execute() {
+            return actuator.execute();
+        }
+
+        @Override
+        public Flux<DataBuffer> execute(long position, long size) {
+            return actuator.execute(position, size);
+        }
+
+        @Override
+        public File zeroCopyFile() {
+            return actuator.zeroCopyFile();
+        }
+
+    }
+
 }
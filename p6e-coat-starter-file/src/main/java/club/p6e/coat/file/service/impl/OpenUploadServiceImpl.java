@@ -1,10 +1,17 @@
 package club.p6e.coat.file.service.impl;
 
 import club.p6e.coat.common.error.ParameterException;
+import club.p6e.coat.common.error.ResourceNodeException;
+import club.p6e.coat.file.FileBlobService;
+import club.p6e.coat.file.FileIoSchedulerService;
+import club.p6e.coat.file.FilePermissionService;
+import club.p6e.coat.file.FileSignatureService;
+import club.p6e.coat.file.Properties;
 import club.p6e.coat.file.context.OpenUploadContext;
 import club.p6e.coat.file.model.UploadModel;
 import club.p6e.coat.file.repository.UploadRepository;
 import club.p6e.coat.file.service.OpenUploadService;
+import club.p6e.coat.file.task.UploadSessionExpireTask;
 import club.p6e.coat.file.utils.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +19,8 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.io.File;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -33,20 +42,76 @@ public class OpenUploadServiceImpl implements OpenUploadService {
      */
     private static final String SOURCE = "SLICE_UPLOAD";
 
+    /**
+     * 预分配文件的名称
+     * 打开上传时提供了文件长度和分片长度，分片将直接写入到分片文件夹下的该文件中
+     */
+    public static final String PREALLOCATE_FILE_NAME = "preallocate";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenUploadServiceImpl.class);
 
+    /**
+     * 配置文件对象
+     */
+    private final Properties properties;
+
     /**
      * 上传存储库对象
      */
     private final UploadRepository repository;
 
+    /**
+     * 文件签名服务对象
+     */
+    private final FileSignatureService fileSignatureService;
+
+    /**
+     * 文件 IO 调度服务对象
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 文件内容服务对象
+     */
+    private final FileBlobService fileBlobService;
+
+    /**
+     * 文件权限服务对象
+     */
+    private final FilePermissionService filePermissionService;
+
+    /**
+     * 上传会话过期任务对象
+     */
+    private final UploadSessionExpireTask uploadSessionExpireTask;
+
     /**
      * 构造方法初始化
      *
-     * @param repository 上传存储库对象
+     * @param properties              配置文件对象
+     * @param repository              上传存储库对象
+     * @param fileSignatureService    文件签名服务对象
+     * @param fileIoSchedulerService  文件 IO 调度服务对象
+     * @param fileBlobService         文件内容服务对象
+     * @param filePermissionService   文件权限服务对象
+     * @param uploadSessionExpireTask 上传会话过期任务对象
      */
-    public OpenUploadServiceImpl(UploadRepository repository) {
+    public OpenUploadServiceImpl(
+            Properties properties,
+            UploadRepository repository,
+            FileSignatureService fileSignatureService,
+            FileIoSchedulerService fileIoSchedulerService,
+            FileBlobService fileBlobService,
+            FilePermissionService filePermissionService,
+            UploadSessionExpireTask uploadSessionExpireTask
+    ) {
+        this.properties = properties;
         this.repository = repository;
+        this.fileSignatureService = fileSignatureService;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        this.fileBlobService = fileBlobService;
+        this.filePermissionService = filePermissionService;
+        this.uploadSessionExpireTask = uploadSessionExpireTask;
     }
 
     @Override
@@ -70,7 +135,148 @@ public class OpenUploadServiceImpl implements OpenUploadService {
         model.setName(name);
         model.setSource(SOURCE);
         LOGGER.info("OpenUploadServiceImpl >>>>>>>>> NAME >>>> {}", name);
-        return repository.create(model).map(UploadModel::toMap);
+        // 协商分片签名的摘要算法
+        final String signatureAlgorithm;
+        final String requestSignatureAlgorithm = context.getSignatureAlgorithm();
+        if (context.getNode() == null) {
+            signatureAlgorithm = requestSignatureAlgorithm == null
+                    ? FileSignatureService.DEFAULT_ALGORITHM : requestSignatureAlgorithm.toUpperCase();
+        } else {
+            final Properties.Upload upload = properties.getUploads().get(context.getNode());
+            if (upload == null) {
+                return Mono.error(new ResourceNodeException(
+                        this.getClass(),
+                        "fun execute(OpenUploadContext context). ==> " +
+                                "execute(...) unable to find corresponding resource context node.",
+                        "execute(...) unable to find corresponding resource context node.")
+                );
+            }
+            if (requestSignatureAlgorithm == null) {
+                signatureAlgorithm = upload.getSignatureAlgorithm().toUpperCase();
+            } else if (upload.getSignatureAlgorithms().isEmpty() || upload.getSignatureAlgorithms()
+                    .stream().anyMatch(requestSignatureAlgorithm::equalsIgnoreCase)) {
+                signatureAlgorithm = requestSignatureAlgorithm.toUpperCase();
+            } else {
+                signatureAlgorithm = null;
+            }
+            model.setNode(context.getNode());
+        }
+        if (signatureAlgorithm == null || !fileSignatureService.isSupported(signatureAlgorithm)) {
+            return Mono.error(new ParameterException(
+                    this.getClass(),
+                    "fun execute(OpenUploadContext context). ==> " +
+                            "execute(...) request parameter <signatureAlgorithm> exception.",
+                    "execute(...) request parameter <signatureAlgorithm> exception.")
+            );
+        }
+        model.setSignatureAlgorithm(signatureAlgorithm);
+        if (context.getHash() == null) {
+            return open(model, context);
+        }
+        // 提供了文件的摘要时需要同时提供文件的长度和上传节点
+        if (!fileBlobService.isHash(context.getHash())
+                || context.getSize() == null || context.getSize() < 0 || context.getNode() == null) {
+            return Mono.error(new ParameterException(
+                    this.getClass(),
+                    "fun execute(OpenUploadContext context). ==> " +
+                            "execute(...) request parameter <hash/size/node> exception.",
+                    "execute(...) request parameter <hash/size/node> exception.")
+            );
+        }
+        // 只有使用内容寻址存储的上传节点可以秒传
+        if (!fileBlobService.isEnabled(properties.getUploads().get(context.getNode()).getExtend())) {
+            return open(model, context);
+        }
+        return instant(model, context).switchIfEmpty(Mono.defer(() -> open(model, context)));
+    }
+
+    /**
+     * 秒传
+     * 有上传权限并且上传节点的文件路径下已经保存了相同内容（摘要 + 长度）的文件时，
+     * 没有提供持有内容的证明时返回挑战（challenge），不打开上传；
+     * 提供的证明验证通过时直接创建已经关闭的上传记录，存储位置指向已经保存的内容，不需要上传分片
+     *
+     * @param model   上传模型对象
+     * @param context 打开分片上传上下文对象
+     * @return 结果对象（没有相同内容的文件或者证明验证失败时返回空）
+     */
+    private Mono<Map<String, Object>> instant(UploadModel model, OpenUploadContext context) {
+        final Properties.Upload upload = properties.getUploads().get(context.getNode());
+        final Mono<Boolean> permission = filePermissionService.execute("U", context).filter(b -> b);
+        if (context.getProof() == null) {
+            return permission
+                    .flatMap(b -> fileBlobService.challenge(upload.getPath(), context.getHash(), context.getSize()))
+                    .map(challenge -> {
+                        final Map<String, Object> result = new HashMap<>();
+                        result.put("challenge", challenge);
+                        result.put("complete", false);
+                        return result;
+                    });
+        }
+        return permission
+                .flatMap(b -> fileBlobService.verify(upload.getPath(),
+                        context.getHash(), context.getSize(), context.getNonce(), context.getProof()))
+                .filter(b -> b)
+                .flatMap(b -> fileBlobService.retain(upload.getPath(), context.getHash(), context.getSize()))
+                .flatMap(blob -> {
+                    final String location = FileUtil.composePath(blob, model.getName());
+                    model.setSize(context.getSize());
+                    model.setStorageType(upload.getType());
+                    model.setStorageLocation(location);
+                    model.setLock(-1);
+                    LOGGER.info("OpenUploadServiceImpl >>>>>>>>> INSTANT >>>> {} :: {}", context.getHash(), location);
+                    return repository
+                            .create(model)
+                            .map(m -> {
+                                final Map<String, Object> result = m.toMap();
+                                result.put("complete", true);
+                                return result;
+                            })
+                            .onErrorResume(e -> fileBlobService.release(upload.getPath(), location).then(Mono.error(e)));
+                });
+    }
+
+    /**
+     * 打开分片上传
+     *
+     * @param model   上传模型对象
+     * @param context 打开分片上传上下文对象
+     * @return 结果对象
+     */
+    private Mono<Map<String, Object>> open(UploadModel model, OpenUploadContext context) {
+        final Long size = context.getSize();
+        final Long sliceSize = context.getSliceSize();
+        if (size == null || sliceSize == null) {
+            return repository
+                    .create(model)
+                    .flatMap(m -> uploadSessionExpireTask.open(m.getId()).thenReturn(m))
+                    .map(UploadModel::toMap);
+        }
+        final Properties.Upload upload = context.getNode() == null ? null : properties.getUploads().get(context.getNode());
+        if (size <= 0 || sliceSize <= 0 || sliceSize > properties.getSliceUpload().getMaxSize()
+                || (upload != null && upload.getMaxSize() > 0 && size > upload.getMaxSize())) {
+            return Mono.error(new ParameterException(
+                    this.getClass(),
+                    "fun open(UploadModel model, OpenUploadContext context). ==> " +
+                            "execute(...) request parameter <size/sliceSize> exception.",
+                    "execute(...) request parameter <size/sliceSize> exception.")
+            );
+        }
+        model.setSize(size);
+        model.setSliceSize(sliceSize);
+        return repository
+                .create(model)
+                // 预分配文件，分片上传时直接写入到文件的对应位置
+                .flatMap(m -> fileIoSchedulerService.execute(() -> {
+                    final String absolutePath = FileUtil.convertAbsolutePath(
+                            FileUtil.composePath(properties.getSliceUpload().getPath(), String.valueOf(m.getId()))
+                    );
+                    FileUtil.createFolder(absolutePath);
+                    FileUtil.preallocateFile(new File(FileUtil.composePath(absolutePath, PREALLOCATE_FILE_NAME)), size);
+                    return m;
+                }))
+                .flatMap(m -> uploadSessionExpireTask.open(m.getId()).thenReturn(m))
+                .map(UploadModel::toMap);
     }
 
 }
@@ -4,6 +4,7 @@ import club.p6e.coat.common.error.ResourceException;
 import club.p6e.coat.common.error.ResourceNodeException;
 import club.p6e.coat.file.FilePermissionService;
 import club.p6e.coat.file.FileReadWriteService;
+import club.p6e.coat.file.FileReadWriteServiceImpl;
 import club.p6e.coat.file.Properties;
 import club.p6e.coat.file.actuator.FileReadActuator;
 import club.p6e.coat.file.context.ResourceContext;
@@ -94,6 +95,7 @@ public class ResourceServiceImpl implements ResourceService {
                                         new HashMap<>() {{
                                             putAll(context);
                                             putAll(resource.getExtend());
+                                            put(FileReadWriteServiceImpl.READ_BUFFER_SIZE_EXTEND_NAME, resource.getReadBufferSize());
                                         }}
                                 );
                             } else {
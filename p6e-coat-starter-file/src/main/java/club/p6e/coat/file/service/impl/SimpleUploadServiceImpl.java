@@ -1,8 +1,11 @@
 package club.p6e.coat.file.service.impl;
 
+import club.p6e.coat.common.error.FileException;
 import club.p6e.coat.common.error.ParameterException;
 import club.p6e.coat.common.error.ResourceException;
 import club.p6e.coat.common.error.ResourceNodeException;
+import club.p6e.coat.file.FileBlobService;
+import club.p6e.coat.file.FileIoSchedulerService;
 import club.p6e.coat.file.FilePermissionService;
 import club.p6e.coat.file.FileReadWriteService;
 import club.p6e.coat.file.Properties;
@@ -15,8 +18,10 @@ import club.p6e.coat.file.utils.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.File;
@@ -57,25 +62,39 @@ public class SimpleUploadServiceImpl implements SimpleUploadService {
      * 文件权限服务对象
      */
     private final FilePermissionService filePermissionService;
+    /**
+     * 文件 IO 调度服务对象
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+    /**
+     * 文件内容服务对象
+     */
+    private final FileBlobService fileBlobService;
 
     /**
      * 构造方法初始化
      *
-     * @param properties            配置文件对象
-     * @param repository            上传存储库对象
-     * @param fileReadWriteService  文件读取写入服务对象
-     * @param filePermissionService 文件权限服务对象
+     * @param properties             配置文件对象
+     * @param repository             上传存储库对象
+     * @param fileReadWriteService   文件读取写入服务对象
+     * @param filePermissionService  文件权限服务对象
+     * @param fileIoSchedulerService 文件 IO 调度服务对象
+     * @param fileBlobService        文件内容服务对象
      */
     public SimpleUploadServiceImpl(
             Properties properties,
             UploadRepository repository,
             FileReadWriteService fileReadWriteService,
-            FilePermissionService filePermissionService
+            FilePermissionService filePermissionService,
+            FileIoSchedulerService fileIoSchedulerService,
+            FileBlobService fileBlobService
     ) {
         this.properties = properties;
         this.repository = repository;
         this.fileReadWriteService = fileReadWriteService;
         this.filePermissionService = filePermissionService;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        this.fileBlobService = fileBlobService;
     }
 
     @Override
@@ -117,12 +136,12 @@ public class SimpleUploadServiceImpl implements SimpleUploadService {
                             pum.setName(name);
                             pum.setSource(SOURCE);
                             LOGGER.info("SAVE DATA >>> {}", pum);
-                            return repository
+                            final Mono<Map<String, Object>> write = Mono.defer(() -> repository
                                     .create(pum)
                                     .flatMap(m -> fileReadWriteService.write(name, new HashMap<>() {{
                                         putAll(context);
                                         putAll(upload.getExtend());
-                                    }}, new CustomFileWriteActuator(filePart, upload)).map(fam -> {
+                                    }}, new CustomFileWriteActuator(filePart, upload, fileIoSchedulerService)).map(fam -> {
                                         final UploadModel rum = new UploadModel();
                                         rum.setId(m.getId());
                                         rum.setSize(fam.getLength());
@@ -133,7 +152,22 @@ public class SimpleUploadServiceImpl implements SimpleUploadService {
                                             .flatMap(l -> repository.closeLock(m.getId()))
                                             .flatMap(l -> repository.update(m))
                                             .flatMap(l -> repository.findById(m.getId()))
-                                    ).map(UploadModel::toMap);
+                                    ).map(UploadModel::toMap));
+                            // 只有使用内容寻址存储的上传节点并且提供了持有内容的证明时才能秒传
+                            if (context.getHash() == null || context.getProof() == null
+                                    || !fileBlobService.isEnabled(upload.getExtend())) {
+                                return write;
+                            }
+                            // 提供了文件的摘要时需要同时提供文件的长度
+                            if (!fileBlobService.isHash(context.getHash()) || context.getSize() == null || context.getSize() < 0) {
+                                return Mono.error(new ParameterException(
+                                        this.getClass(),
+                                        "fun execute(SimpleUploadContext context). ==> " +
+                                                "execute(...) request parameter <hash/size> exception.",
+                                        "execute(...) request parameter <hash/size> exception.")
+                                );
+                            }
+                            return instant(pum, context, upload).switchIfEmpty(write);
                         });
                     } else {
                         return Mono.error(new ResourceException(
@@ -146,15 +180,51 @@ public class SimpleUploadServiceImpl implements SimpleUploadService {
                 });
     }
 
+    /**
+     * 秒传
+     * 上传节点的文件路径下已经保存了相同内容（摘要 + 长度）的文件并且持有内容的证明验证通过时，
+     * 直接创建已经关闭的上传记录，存储位置指向已经保存的内容，不写入上传的文件
+     * 挑战通过打开分片上传获取
+     *
+     * @param model   上传模型对象
+     * @param context 简单上传上下文对象
+     * @param upload  上传配置对象
+     * @return 结果对象（没有相同内容的文件时返回空）
+     */
+    private Mono<Map<String, Object>> instant(UploadModel model, SimpleUploadContext context, Properties.Upload upload) {
+        return fileBlobService
+                .verify(upload.getPath(), context.getHash(), context.getSize(), context.getNonce(), context.getProof())
+                .filter(b -> b)
+                .flatMap(b -> fileBlobService.retain(upload.getPath(), context.getHash(), context.getSize()))
+                .flatMap(blob -> {
+                    final String location = FileUtil.composePath(blob, model.getName());
+                    model.setSize(context.getSize());
+                    model.setStorageType(upload.getType());
+                    model.setStorageLocation(location);
+                    model.setLock(-1);
+                    LOGGER.info("INSTANT >>> {} :: {}", context.getHash(), location);
+                    return repository
+                            .create(model)
+                            .map(m -> {
+                                final Map<String, Object> result = m.toMap();
+                                result.put("complete", true);
+                                return result;
+                            })
+                            .onErrorResume(e -> fileBlobService.release(upload.getPath(), location).then(Mono.error(e)));
+                });
+    }
+
     /**
      * 自定义的文件写入执行器
      *
-     * @param filePart   文件写入对象
-     * @param properties 上传配置对象
+     * @param filePart               文件写入对象
+     * @param properties             上传配置对象
+     * @param fileIoSchedulerService 文件 IO 调度服务对象
      */
     private record CustomFileWriteActuator(
             FilePart filePart,
-            Properties.Upload properties
+            Properties.Upload properties,
+            FileIoSchedulerService fileIoSchedulerService
     ) implements FileWriteActuator {
 
         @Override
@@ -169,7 +239,26 @@ public class SimpleUploadServiceImpl implements SimpleUploadService {
 
         @Override
         public Mono<File> execute(File file) {
-            return filePart.transferTo(file).then(Mono.just(file));
+            if (properties.getMaxSize() <= 0) {
+                return filePart.transferTo(file).then(Mono.just(file));
+            }
+            // 超过节点的最大长度时中止写入并删除写入的部分数据
+            return FileUtil.writeFile(content(), file)
+                    .onErrorResume(e -> fileIoSchedulerService.run(() -> FileUtil.deleteFile(file)).then(Mono.error(e)))
+                    .then(Mono.just(file));
+        }
+
+        @Override
+        public Flux<DataBuffer> content() {
+            if (properties.getMaxSize() <= 0) {
+                return filePart.content();
+            }
+            // 超过节点的最大长度时中止写入
+            return FileUtil.limit(filePart.content(), properties.getMaxSize(), () -> new FileException(
+                    CustomFileWriteActuator.class,
+                    "fun execute(File file). ==> " +
+                            "execute(...) file (" + filePart.filename() + ") upload exceeds the maximum length limit.",
+                    "execute(...) file (" + filePart.filename() + ") upload exceeds the maximum length limit."));
         }
 
     }
@@ -1,24 +1,31 @@
 package club.p6e.coat.file.service.impl;
 
 import club.p6e.coat.common.error.FileException;
-import club.p6e.coat.common.utils.SpringUtil;
+import club.p6e.coat.file.FileIoSchedulerService;
 import club.p6e.coat.file.FileSignatureService;
 import club.p6e.coat.file.Properties;
 import club.p6e.coat.file.context.SliceUploadContext;
 import club.p6e.coat.file.model.UploadChunkModel;
+import club.p6e.coat.file.model.UploadModel;
+import club.p6e.coat.file.repository.UploadChunkBatchWriter;
 import club.p6e.coat.file.repository.UploadChunkRepository;
 import club.p6e.coat.file.repository.UploadRepository;
 import club.p6e.coat.file.service.SliceUploadService;
+import club.p6e.coat.file.task.UploadSessionExpireTask;
 import club.p6e.coat.file.utils.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.File;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 分片上传服务
@@ -47,29 +54,50 @@ public class SliceUploadServiceImpl implements SliceUploadService {
      * 上传块存储库对象
      */
     private final UploadChunkRepository uploadChunkRepository;
+    /**
+     * 上传块延迟批量写入对象
+     */
+    private final UploadChunkBatchWriter uploadChunkBatchWriter;
     /**
      * 文件签名服务
      */
     private final FileSignatureService fileSignatureService;
+    /**
+     * 文件 IO 调度服务对象
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+    /**
+     * 上传会话过期任务对象
+     */
+    private final UploadSessionExpireTask uploadSessionExpireTask;
 
     /**
      * 构造方法初始化
      *
-     * @param properties            配置文件对象
-     * @param uploadRepository      上传存储库对象
-     * @param uploadChunkRepository 上传块存储库对象
-     * @param fileSignatureService  文件签名服务对象
+     * @param properties              配置文件对象
+     * @param uploadRepository        上传存储库对象
+     * @param uploadChunkRepository   上传块存储库对象
+     * @param uploadChunkBatchWriter  上传块延迟批量写入对象
+     * @param fileSignatureService    文件签名服务对象
+     * @param fileIoSchedulerService  文件 IO 调度服务对象
+     * @param uploadSessionExpireTask 上传会话过期任务对象
      */
     public SliceUploadServiceImpl(
             Properties properties,
             UploadRepository uploadRepository,
             UploadChunkRepository uploadChunkRepository,
-            FileSignatureService fileSignatureService
+            UploadChunkBatchWriter uploadChunkBatchWriter,
+            FileSignatureService fileSignatureService,
+            FileIoSchedulerService fileIoSchedulerService,
+            UploadSessionExpireTask uploadSessionExpireTask
     ) {
         this.properties = properties;
         this.uploadRepository = uploadRepository;
         this.uploadChunkRepository = uploadChunkRepository;
+        this.uploadChunkBatchWriter = uploadChunkBatchWriter;
         this.fileSignatureService = fileSignatureService;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        this.uploadSessionExpireTask = uploadSessionExpireTask;
     }
 
     @Override
@@ -82,73 +110,244 @@ public class SliceUploadServiceImpl implements SliceUploadService {
         context.setFilePart(null);
         return uploadRepository
                 .findById(id)
-                .flatMap(m -> Mono.just(m)
-                        .flatMap(um -> {
-                            final UploadRepository repository = SpringUtil.getBean(UploadRepository.class);
-                            // 文件夹绝对路径
-                            final String absolutePath = FileUtil.convertAbsolutePath(
-                                    FileUtil.composePath(properties.getSliceUpload().getPath(), String.valueOf(um.getId()))
-                            );
-                            // 如果不存在文件夹就创建文件夹
-                            FileUtil.createFolder(absolutePath);
-                            final File absolutePathFile = new File(FileUtil.composePath(absolutePath, index + "_" + FileUtil.generateName()));
-                            LOGGER.info("FILE absolutePathFile >>> {}", absolutePathFile);
-                            return repository
-                                    // 获取锁
-                                    .acquireLock(um.getId())
-                                    // 写入文件数据
-                                    .flatMap(file -> filePart.transferTo(absolutePathFile).then(Mono.just(absolutePathFile)))
-                                    // 释放锁
-                                    .flatMap(file -> repository.releaseLock(um.getId()))
-                                    // 转换为文件对象输出
-                                    .map(l -> absolutePathFile);
-                        })
-                        // 验证文件数据
-                        .flatMap(f -> {
-                            LOGGER.info("FFF >>> {}", f);
-                            final long size = properties.getSliceUpload().getMaxSize();
-                            if (f.length() > size) {
-                                FileUtil.deleteFile(f);
-                                return Mono.error(new FileException(this.getClass(),
-                                        "fun execute(SliceUploadContext context). ==> " +
-                                                "execute(...) file (" + f.getName() + ") upload exceeds the maximum length limit.",
-                                        "execute(...) file (" + f.getName() + ") upload exceeds the maximum length limit.")
-                                );
-                            }
-                            return Mono.just(f);
-                        })
-                        .flatMap(f -> fileSignatureService
-                                .execute(f)
-                                .flatMap(s -> {
-                                    LOGGER.info("SIGNATURE >>> {}", s);
-                                    if (!s.equals(signature)) {
-                                        FileUtil.deleteFile(f);
-                                        return Mono.error(new FileException(this.getClass(),
-                                                "fun execute(SliceUploadContext context). ==> " +
-                                                        "execute(...) file (" + f.getName() + ") incorrect signature content.",
-                                                "execute(...) file (" + f.getName() + ") incorrect signature content.")
-                                        );
-                                    }
-                                    return Mono.just(f);
-                                }))
-                        .flatMap(f -> {
-                            LOGGER.info("FILE F SIZE >>> {}", f);
-                            final UploadChunkModel model = new UploadChunkModel();
-                            model.setFid(m.getId());
-                            model.setName(f.getName());
-                            model.setSize(f.length());
-                            final Object operator = context.get("$operator");
-                            if (operator instanceof final String content) {
-                                model.setCreator(content);
-                                model.setModifier(content);
-                            } else if (m.getOwner() != null) {
-                                model.setCreator(m.getOwner());
-                                model.setModifier(m.getOwner());
-                            }
-                            return uploadChunkRepository.create(model);
-                        })
-                )
-                .map(UploadChunkModel::toMap);
+                .flatMap(m -> {
+                    if (m.getLock() == null || m.getLock() < 0) {
+                        return Mono.error(new FileException(this.getClass(),
+                                "fun execute(SliceUploadContext context). ==> " +
+                                        "execute(...) upload (" + m.getId() + ") has been closed.",
+                                "execute(...) upload (" + m.getId() + ") has been closed.")
+                        );
+                    }
+                    if (index == null || index < 0) {
+                        return Mono.error(new FileException(this.getClass(),
+                                "fun execute(SliceUploadContext context). ==> " +
+                                        "execute(...) file slice index (" + index + ") exception.",
+                                "execute(...) file slice index (" + index + ") exception.")
+                        );
+                    }
+                    // 刷新上传会话的空闲到期时间
+                    return uploadSessionExpireTask.touch(m.getId()).thenReturn(m);
+                })
+                // 分片之间互不影响，不修改上传记录，通过 (fid, index) 唯一的分片记录登记分片
+                .flatMap(m -> execute(m, index, signature, filePart, context))
+                .map(model -> {
+                    final Map<String, Object> result = model.toMap();
+                    // 分片上传返回结果时的持久化级别，延迟写入时分片记录还没有写入数据库
+                    final String durability = uploadChunkBatchWriter.durability();
+                    result.put("durability", durability);
+                    result.put("registered", UploadChunkBatchWriter.DURABILITY_DATABASE.equals(durability));
+                    return result;
+                });
+    }
+
+    /**
+     * 写入并登记分片
+     *
+     * @param m         上传模型对象
+     * @param index     分片索引
+     * @param signature 分片签名
+     * @param filePart  文件对象
+     * @param context   上下文对象
+     * @return 上传块模型对象
+     */
+    private Mono<UploadChunkModel> execute(UploadModel m, Integer index, String signature,
+                                           FilePart filePart, SliceUploadContext context) {
+        return (m.getSliceSize() != null && m.getSliceSize() > 0
+                ? executePreallocate(m, index, signature, filePart)
+                : executeSlice(m, index, signature, filePart))
+                .flatMap(model -> {
+                    LOGGER.info("FILE F SIZE >>> {}", model);
+                    model.setFid(m.getId());
+                    model.setIndex(index);
+                    final Object operator = context.get("$operator");
+                    if (operator instanceof final String content) {
+                        model.setCreator(content);
+                        model.setModifier(content);
+                    } else if (m.getOwner() != null) {
+                        model.setCreator(m.getOwner());
+                        model.setModifier(m.getOwner());
+                    }
+                    final String absolutePath = FileUtil.convertAbsolutePath(
+                            FileUtil.composePath(properties.getSliceUpload().getPath(), String.valueOf(m.getId()))
+                    );
+                    final boolean preallocate = model.getName().endsWith(OpenUploadServiceImpl.PREALLOCATE_FILE_NAME);
+                    // 通过 (fid, index) 唯一的分片记录登记分片，不需要修改上传记录
+                    final Mono<UploadChunkModel> register = (uploadChunkBatchWriter.isEnabled()
+                            ? uploadChunkBatchWriter.submit(model) : uploadChunkRepository.replace(model))
+                            // 登记失败（上传已经关闭）删除写入的分片文件
+                            .onErrorResume(e -> preallocate ? Mono.error(e) : fileIoSchedulerService.run(() ->
+                                    FileUtil.deleteFile(new File(FileUtil.composePath(absolutePath, model.getName()))))
+                                    .then(Mono.error(e)))
+                            .flatMap(previous -> {
+                                if (!preallocate && !previous.isEmpty() && !previous.equals(model.getName())) {
+                                    // 重复上传的分片覆盖了之前的记录，删除之前上传的分片文件
+                                    LOGGER.info("FILE SLICE REPLACE >>> {} :: {} -> {}", m.getId(), previous, model.getName());
+                                    return fileIoSchedulerService.run(() -> FileUtil.deleteFile(
+                                            new File(FileUtil.composePath(absolutePath, previous)))).thenReturn(model);
+                                }
+                                return Mono.just(model);
+                            });
+                    if (!uploadChunkBatchWriter.isEnabled() || uploadChunkBatchWriter.isDurabilityDatabase()) {
+                        return register;
+                    }
+                    // 分片记录延迟写入，分片数据写入（同步到磁盘）后直接返回结果
+                    final File file = new File(FileUtil.composePath(absolutePath,
+                            preallocate ? OpenUploadServiceImpl.PREALLOCATE_FILE_NAME : model.getName()));
+                    return (uploadChunkBatchWriter.isDurabilityDisk() ? fileIoSchedulerService.execute(() -> {
+                        FileUtil.forceFile(file);
+                        return model;
+                    }) : Mono.just(model)).doOnNext(mm -> register.subscribe(
+                            r -> LOGGER.debug("FILE SLICE REGISTER >>> {} :: {}", m.getId(), r.getIndex()),
+                            e -> LOGGER.warn("FILE SLICE REGISTER ERROR >>> {} :: {}", m.getId(), model.getIndex(), e)
+                    ));
+                });
+    }
+
+    /**
+     * 分片写入到独立的分片文件
+     *
+     * @param um        上传模型对象
+     * @param index     分片索引
+     * @param signature 分片签名
+     * @param filePart  文件对象
+     * @return 上传块模型对象
+     */
+    private Mono<UploadChunkModel> executeSlice(UploadModel um, Integer index, String signature, FilePart filePart) {
+        // 文件夹绝对路径
+        final String absolutePath = FileUtil.convertAbsolutePath(
+                FileUtil.composePath(properties.getSliceUpload().getPath(), String.valueOf(um.getId()))
+        );
+        final File absolutePathFile = new File(FileUtil.composePath(absolutePath, index + "_" + FileUtil.generateName()));
+        LOGGER.info("FILE absolutePathFile >>> {}", absolutePathFile);
+        // 超过分片的最大长度时中止写入
+        final Flux<DataBuffer> content = FileUtil.limit(filePart.content(), properties.getSliceUpload().getMaxSize(),
+                () -> new FileException(this.getClass(),
+                        "fun execute(SliceUploadContext context). ==> " +
+                                "execute(...) file (" + absolutePathFile.getName() + ") upload exceeds the maximum length limit.",
+                        "execute(...) file (" + absolutePathFile.getName() + ") upload exceeds the maximum length limit."));
+        return fileIoSchedulerService
+                // 如果不存在文件夹就创建文件夹
+                .run(() -> FileUtil.createFolder(absolutePath))
+                // 写入文件数据，写入的过程中同时计算签名
+                .then(fileSignatureService.execute(um.getSignatureAlgorithm(), content, c -> FileUtil.writeFile(c, absolutePathFile)))
+                // 写入失败删除写入的部分数据
+                .onErrorResume(e -> fileIoSchedulerService.run(() -> FileUtil.deleteFile(absolutePathFile)).then(Mono.error(e)))
+                // 验证文件数据
+                .flatMap(s -> verify(um.getSignatureAlgorithm(), absolutePathFile, 0L, -1L, s))
+                .flatMap(s -> fileIoSchedulerService.execute(() -> {
+                    LOGGER.info("SIGNATURE >>> {}", s);
+                    if (!s.equalsIgnoreCase(signature)) {
+                        FileUtil.deleteFile(absolutePathFile);
+                        throw new FileException(this.getClass(),
+                                "fun execute(SliceUploadContext context). ==> " +
+                                        "execute(...) file (" + absolutePathFile.getName() + ") incorrect signature content.",
+                                "execute(...) file (" + absolutePathFile.getName() + ") incorrect signature content.");
+                    }
+                    return new UploadChunkModel()
+                            .setName(absolutePathFile.getName()).setSize(absolutePathFile.length()).setSignature(s.toLowerCase());
+                }));
+    }
+
+    /**
+     * 分片直接写入到预分配文件的对应位置（index * sliceSize）
+     *
+     * @param um        上传模型对象
+     * @param index     分片索引
+     * @param signature 分片签名
+     * @param filePart  文件对象
+     * @return 上传块模型对象
+     */
+    private Mono<UploadChunkModel> executePreallocate(UploadModel um, Integer index, String signature, FilePart filePart) {
+        final long position = (long) index * um.getSliceSize();
+        if (index < 0 || position >= um.getSize()) {
+            return Mono.error(new FileException(this.getClass(),
+                    "fun execute(SliceUploadContext context). ==> " +
+                            "execute(...) file slice index (" + index + ") exceeds the file length.",
+                    "execute(...) file slice index (" + index + ") exceeds the file length.")
+            );
+        }
+        final long length = Math.min(um.getSliceSize(), um.getSize() - position);
+        final File file = new File(FileUtil.composePath(FileUtil.convertAbsolutePath(
+                FileUtil.composePath(properties.getSliceUpload().getPath(), String.valueOf(um.getId()))
+        ), OpenUploadServiceImpl.PREALLOCATE_FILE_NAME));
+        final Mono<Void> check = fileIoSchedulerService.execute(() -> FileUtil.checkFileExist(file))
+                .flatMap(b -> b ? Mono.<Void>empty() : Mono.error(new FileException(this.getClass(),
+                        "fun execute(SliceUploadContext context). ==> " +
+                                "execute(...) preallocate file (" + file.getName() + ") does not exist.",
+                        "execute(...) preallocate file (" + file.getName() + ") does not exist.")
+                ));
+        final AtomicLong count = new AtomicLong(0);
+        // 超过分片长度的数据将中止写入，避免覆盖其它分片
+        final Flux<DataBuffer> content = filePart.content().handle((buffer, sink) -> {
+            if (count.addAndGet(buffer.readableByteCount()) > length) {
+                DataBufferUtils.release(buffer);
+                sink.error(new FileException(this.getClass(),
+                        "fun execute(SliceUploadContext context). ==> " +
+                                "execute(...) file slice (" + index + ") upload exceeds the slice length.",
+                        "execute(...) file slice (" + index + ") upload exceeds the slice length."));
+            } else {
+                sink.next(buffer);
+            }
+        });
+        // 写入前删除分片记录（包括延迟写入的记录），把分片区域标记为没有完成
+        // 删除和关闭上传互斥：删除成功后关闭上传一定缺少这个分片（合并失败并重新打开），上传已经关闭时删除失败并且不写入数据
+        // 所以关闭上传后不会再有分片写入预分配文件，也不需要在上传记录上统计正在写入的分片
+        final Mono<Void> invalidate = uploadChunkBatchWriter.flush(um.getId(), index)
+                .then(uploadChunkRepository.deleteByFidAndIndex(um.getId(), index));
+        return check
+                .then(invalidate)
+                // 写入文件数据到对应的位置，写入的过程中同时计算签名
+                // 每个分片写入的区域互不重叠，分片之间不需要互斥
+                .then(fileSignatureService.execute(um.getSignatureAlgorithm(), content, c -> FileUtil.writeFile(c, file, position)))
+                // 验证文件数据
+                .flatMap(s -> {
+                    if (count.get() != length) {
+                        return Mono.error(new FileException(this.getClass(),
+                                "fun execute(SliceUploadContext context). ==> " +
+                                        "execute(...) file slice (" + index + ") length does not match.",
+                                "execute(...) file slice (" + index + ") length does not match.")
+                        );
+                    }
+                    return verify(um.getSignatureAlgorithm(), file, position, length, s);
+                })
+                .flatMap(s -> {
+                    LOGGER.info("SIGNATURE >>> {}", s);
+                    if (!s.equalsIgnoreCase(signature)) {
+                        return Mono.error(new FileException(this.getClass(),
+                                "fun execute(SliceUploadContext context). ==> " +
+                                        "execute(...) file slice (" + index + ") incorrect signature content.",
+                                "execute(...) file slice (" + index + ") incorrect signature content.")
+                        );
+                    }
+                    return Mono.just(new UploadChunkModel()
+                            .setName(index + "_" + OpenUploadServiceImpl.PREALLOCATE_FILE_NAME).setSize(length).setSignature(s.toLowerCase()));
+                })
+                // 写入失败时分片区域的数据已经不完整，再次删除分片记录（写入期间并发登记的记录）
+                // 上传已经关闭时删除失败，关闭上传读取的分片清单已经缺少这个分片，返回写入的异常
+                .onErrorResume(e -> invalidate.onErrorResume(ie -> Mono.empty()).then(Mono.error(e)));
+    }
+
+    /**
+     * 获取写入数据的签名
+     * 开启校验时重新读取磁盘上的数据计算签名，否则直接使用写入过程中计算的签名
+     *
+     * @param algorithm 摘要算法名称
+     * @param file      文件对象
+     * @param position  数据在文件中的开始位置
+     * @param size      数据的长度
+     * @param signature 写入过程中计算的签名
+     * @return 签名的内容
+     */
+    private Mono<String> verify(String algorithm, File file, long position, long size, String signature) {
+        if (properties.getSliceUpload().isVerify()) {
+            return fileSignatureService.execute(algorithm, file, position, size).flatMap(s -> s.equals(signature)
+                    ? Mono.just(s) : Mono.error(new FileException(this.getClass(),
+                    "fun verify(String algorithm, File file, long position, long size, String signature). ==> " +
+                            "verify(...) file (" + file.getName() + ") written data does not match.",
+                    "verify(...) file (" + file.getName() + ") written data does not match.")));
+        } else {
+            return Mono.just(signature);
+        }
     }
 
 }
@@ -0,0 +1,165 @@
+package club.p6e.coat.file.service.impl;
+
+import club.p6e.coat.common.error.FileException;
+import club.p6e.coat.file.context.SliceUploadStatusContext;
+import club.p6e.coat.file.model.UploadChunkModel;
+import club.p6e.coat.file.model.UploadModel;
+import club.p6e.coat.file.repository.UploadChunkBatchWriter;
+import club.p6e.coat.file.repository.UploadChunkRepository;
+import club.p6e.coat.file.repository.UploadRepository;
+import club.p6e.coat.file.service.SliceUploadStatusService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 分片上传服务
+ * 查询已经上传的分片，用于断点续传
+ * 分片上传时会登记分片记录，这里只读取分片记录，不需要扫描分片文件夹
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = SliceUploadStatusService.class,
+        ignored = SliceUploadStatusServiceImpl.class
+)
+public class SliceUploadStatusServiceImpl implements SliceUploadStatusService {
+
+    /**
+     * 上传存储库对象
+     */
+    private final UploadRepository uploadRepository;
+
+    /**
+     * 上传块存储库对象
+     */
+    private final UploadChunkRepository uploadChunkRepository;
+
+    /**
+     * 上传块延迟批量写入对象
+     */
+    private final UploadChunkBatchWriter uploadChunkBatchWriter;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param uploadRepository       上传存储库对象
+     * @param uploadChunkRepository  上传块存储库对象
+     * @param uploadChunkBatchWriter 上传块延迟批量写入对象
+     */
+    public SliceUploadStatusServiceImpl(
+            UploadRepository uploadRepository,
+            UploadChunkRepository uploadChunkRepository,
+            UploadChunkBatchWriter uploadChunkBatchWriter
+    ) {
+        this.uploadRepository = uploadRepository;
+        this.uploadChunkRepository = uploadChunkRepository;
+        this.uploadChunkBatchWriter = uploadChunkBatchWriter;
+    }
+
+    @Override
+    public Mono<Map<String, Object>> execute(SliceUploadStatusContext context) {
+        return uploadRepository
+                .findById(context.getId())
+                .switchIfEmpty(Mono.error(new FileException(this.getClass(),
+                        "fun execute(SliceUploadStatusContext context). ==> " +
+                                "execute(...) upload (" + context.getId() + ") does not exist.",
+                        "execute(...) upload (" + context.getId() + ") does not exist.")
+                ))
+                // 读取分片记录之前写入延迟写入的分片记录
+                // 只有该上传有还没有写入的分片记录时才需要写入
+                .flatMap(m -> uploadChunkBatchWriter
+                        .flush(m.getId())
+                        .thenMany(uploadChunkRepository.findByFid(m.getId()))
+                        .collectList()
+                        .map(list -> status(m, list)));
+    }
+
+    /**
+     * 生成分片上传状态
+     * bitmap 为已经上传分片的位图（Base64），第 i 个字节的第 j 位（低位开始）表示索引为 i * 8 + j 的分片
+     * received/missing 为已经上传/缺失的分片索引范围（例如 0-9,12）
+     * failed 为延迟写入数据库失败的分片索引，需要重新上传（只包含当前实例写入失败的分片，失败的分片同样不在 received 中）
+     *
+     * @param model  上传模型对象
+     * @param chunks 分片记录列表
+     * @return 分片上传状态
+     */
+    private Map<String, Object> status(UploadModel model, List<UploadChunkModel> chunks) {
+        final BitSet bitmap = new BitSet();
+        final TreeMap<Integer, String> signatures = new TreeMap<>();
+        for (final UploadChunkModel chunk : chunks) {
+            final int index = index(chunk);
+            bitmap.set(index);
+            signatures.put(index, chunk.getSignature() == null ? "" : chunk.getSignature());
+        }
+        // 预分配文件可以计算出分片数量，否则分片数量未知
+        final Integer count = model.getSliceSize() != null && model.getSliceSize() > 0
+                ? (int) ((model.getSize() + model.getSliceSize() - 1) / model.getSliceSize()) : null;
+        final Map<String, Object> result = new HashMap<>();
+        result.put("id", model.getId());
+        result.put("name", model.getName());
+        result.put("size", model.getSize());
+        result.put("sliceSize", model.getSliceSize());
+        result.put("signatureAlgorithm", model.getSignatureAlgorithm());
+        result.put("closed", model.getLock() == null || model.getLock() < 0);
+        result.put("count", count);
+        result.put("total", bitmap.cardinality());
+        result.put("bitmap", Base64.getEncoder().encodeToString(bitmap.toByteArray()));
+        result.put("received", ranges(bitmap, bitmap.length(), true));
+        result.put("missing", count == null ? null : ranges(bitmap, count, false));
+        result.put("signatures", signatures);
+        // 延迟写入数据库失败的分片，需要重新上传
+        result.put("failed", uploadChunkBatchWriter.failures(model.getId()));
+        return result;
+    }
+
+    /**
+     * 位图中连续的索引合并为范围
+     *
+     * @param bitmap 位图
+     * @param length 索引的范围 [0, length)
+     * @param value  需要合并的位的值
+     * @return 索引范围（例如 0-9,12）
+     */
+    private String ranges(BitSet bitmap, int length, boolean value) {
+        final List<String> result = new ArrayList<>();
+        int start = value ? bitmap.nextSetBit(0) : bitmap.nextClearBit(0);
+        while (start >= 0 && start < length) {
+            final int end = Math.min(value ? bitmap.nextClearBit(start) : bitmap.nextSetBit(start), length);
+            final int last = (end < 0 ? length : end) - 1;
+            result.add(start == last ? String.valueOf(start) : start + "-" + last);
+            if (end < 0 || end >= length) {
+                break;
+            }
+            start = value ? bitmap.nextSetBit(end) : bitmap.nextClearBit(end);
+        }
+        return String.join(",", result);
+    }
+
+    /**
+     * 获取分片的索引
+     * 没有索引的历史数据从分片名称（索引_名称）中读取
+     *
+     * @param chunk 上传块模型对象
+     * @return 分片的索引
+     */
+    private int index(UploadChunkModel chunk) {
+        if (chunk.getIndex() != null) {
+            return chunk.getIndex();
+        }
+        final String name = chunk.getName();
+        return Integer.parseInt(name.substring(0, name.indexOf("_")));
+    }
+
+}
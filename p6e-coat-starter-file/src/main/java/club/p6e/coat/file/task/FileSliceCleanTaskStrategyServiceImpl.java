@@ -1,7 +1,11 @@
 package club.p6e.coat.file.task;
 
+import club.p6e.coat.common.error.FileException;
+import club.p6e.coat.common.utils.GeneratorUtil;
+import club.p6e.coat.file.FileIoSchedulerService;
 import club.p6e.coat.file.Properties;
-import club.p6e.coat.file.model.UploadChunkModel;
+import club.p6e.coat.file.repository.FileCleanLeaseRepository;
+import club.p6e.coat.file.repository.UploadChunkBatchWriter;
 import club.p6e.coat.file.repository.UploadChunkRepository;
 import club.p6e.coat.file.repository.UploadRepository;
 import club.p6e.coat.file.utils.FileUtil;
@@ -9,10 +13,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 实现文件分片清除策略服务
@@ -47,19 +56,55 @@ public class FileSliceCleanTaskStrategyServiceImpl implements FileSliceCleanTask
      */
     private final UploadChunkRepository uploadChunkRepository;
 
+    /**
+     * 上传块延迟批量写入对象
+     */
+    private final UploadChunkBatchWriter uploadChunkBatchWriter;
+
+    /**
+     * 文件清除租约存储库
+     */
+    private final FileCleanLeaseRepository fileCleanLeaseRepository;
+
+    /**
+     * 文件 IO 调度服务
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 实例的标识（持有租约的标识）
+     */
+    private final String owner = GeneratorUtil.uuid();
+
+    /**
+     * 是否正在执行
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
     /**
      * 构造方法初始化
      *
-     * @param properties 配置信息对象
+     * @param properties               配置信息对象
+     * @param uploadRepository         分片上传的配置信息存储库
+     * @param uploadChunkRepository    分片上传的配置信息存储库
+     * @param uploadChunkBatchWriter   上传块延迟批量写入对象
+     * @param fileCleanLeaseRepository 文件清除租约存储库
+     * @param fileIoSchedulerService   文件 IO 调度服务
      */
     public FileSliceCleanTaskStrategyServiceImpl(
             Properties properties,
             UploadRepository uploadRepository,
-            UploadChunkRepository uploadChunkRepository
+            UploadChunkRepository uploadChunkRepository,
+            UploadChunkBatchWriter uploadChunkBatchWriter,
+            FileCleanLeaseRepository fileCleanLeaseRepository,
+            FileIoSchedulerService fileIoSchedulerService
     ) {
         this.properties = properties;
         this.uploadRepository = uploadRepository;
         this.uploadChunkRepository = uploadChunkRepository;
+        this.uploadChunkBatchWriter = uploadChunkBatchWriter;
+        this.fileCleanLeaseRepository = fileCleanLeaseRepository;
+        this.fileIoSchedulerService = fileIoSchedulerService;
     }
 
     @Override
@@ -72,30 +117,110 @@ public class FileSliceCleanTaskStrategyServiceImpl implements FileSliceCleanTask
 
     @Override
     public void execute() {
-        execute1();
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.info("[ FILE TASK RUNNING ] >>> skip");
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        final Properties.SliceClean sliceClean = properties.getSliceClean();
+        final int shards = Math.max(sliceClean.getShards(), 1);
+        final int offset = ThreadLocalRandom.current().nextInt(shards);
+        // 同一天的清除属于同一个批次，每个分区在一个批次中只会被清除一次
+        final String sweep = LocalDate.now().toString();
+        final LocalDateTime expire = LocalDateTime.now().minusDays(sliceClean.getExpire());
+        LOGGER.info("[ FILE TASK START ] >>> {} :: {} :: {}", sweep, owner, expire);
+        // 从随机的分区开始依次获取分区的租约，多个实例同时执行时分别清除不同的分区
+        Flux.range(0, shards)
+                .map(i -> (i + offset) % shards)
+                .concatMap(shard -> fileCleanLeaseRepository
+                        .acquire(shard, sweep, owner, sliceClean.getLease())
+                        .filter(checkpoint -> checkpoint != FileCleanLeaseRepository.FINISH_CHECKPOINT)
+                        .flatMap(checkpoint -> clean(shard, shards, sweep, checkpoint, expire)))
+                .reduce(0L, Long::sum)
+                .doFinally(s -> running.set(false))
+                .subscribe(
+                        count -> LOGGER.info("[ FILE TASK END ] !! count {}, time {} ms", count, System.currentTimeMillis() - start),
+                        e -> LOGGER.error("[ FILE TASK ERROR ] >>> ", e)
+                );
     }
 
-    private void execute1() {
-        try {
-            LOGGER.info("[ FILE TASK START ] >>> ");
-            final AtomicInteger index = new AtomicInteger(0);
-            final Properties.SliceUpload sliceUpload = properties.getSliceUpload();
-            while (true) {
-                final UploadChunkModel model = uploadChunkRepository
-                        .selectExpireData(index.get(), LocalDateTime.now().minusDays(30)).block();
-                if (model == null || model.getId() == null || model.getFid() == null) {
-                    break;
-                } else {
-                    index.set(model.getId());
-                    FileUtil.deleteFolder(FileUtil.composePath(sliceUpload.getPath(), String.valueOf(model.getFid())));
-                    uploadRepository.delete(model.getFid()).block();
-                    uploadChunkRepository.deleteByFid(model.getFid()).block();
-                }
-            }
-            LOGGER.info("[ FILE TASK END ] !!");
-        } catch (Exception e) {
-            LOGGER.error("[ FILE TASK ERROR ] >>> ", e);
-        }
+    /**
+     * 清除一个分区
+     * 从记录的进度继续清除，清除完成后标记分区在当前批次已经完成并释放租约
+     *
+     * @param shard      分区的编号
+     * @param shards     分区的数量
+     * @param sweep      清除的批次
+     * @param checkpoint 清除的进度
+     * @param expire     过期时间
+     * @return 清除的数量
+     */
+    private Mono<Long> clean(int shard, int shards, String sweep, int checkpoint, LocalDateTime expire) {
+        final Properties.SliceClean sliceClean = properties.getSliceClean();
+        final int batchSize = Math.max(sliceClean.getBatchSize(), 1);
+        LOGGER.info("[ FILE TASK SHARD ] >>> {}/{} :: {}", shard, shards, checkpoint);
+        // 按照 FID 分页读取过期的上传，每一页删除后记录进度，并从这一页最后的 FID 继续读取
+        return clean(shard, shards, sweep, checkpoint, expire, batchSize)
+                .expand(fids -> fids.size() < batchSize ? Mono.empty()
+                        : clean(shard, shards, sweep, fids.get(fids.size() - 1), expire, batchSize))
+                .reduce(0L, (count, fids) -> count + fids.size())
+                .flatMap(count -> fileCleanLeaseRepository
+                        .checkpoint(shard, sweep, owner, sliceClean.getLease(), FileCleanLeaseRepository.FINISH_CHECKPOINT)
+                        .thenReturn(count))
+                .onErrorResume(e -> {
+                    LOGGER.error("[ FILE TASK SHARD ERROR ] >>> {}", shard, e);
+                    return Mono.just(0L);
+                })
+                .flatMap(count -> fileCleanLeaseRepository.release(shard, owner).thenReturn(count));
+    }
+
+    /**
+     * 清除分区中的一页过期的上传
+     * 先删除分片文件夹，再通过一条语句删除这一页的上传记录和分片记录，最后记录进度并续约
+     *
+     * @param shard     分区的编号
+     * @param shards    分区的数量
+     * @param sweep     清除的批次
+     * @param fid       起始 FID（不包含）
+     * @param expire    过期时间
+     * @param batchSize 一页的数量
+     * @return 清除的 FID 列表
+     */
+    private Mono<List<Integer>> clean(int shard, int shards, String sweep, int fid, LocalDateTime expire, int batchSize) {
+        final Properties.SliceClean sliceClean = properties.getSliceClean();
+        final String path = properties.getSliceUpload().getPath();
+        return uploadChunkRepository
+                .selectExpireFid(fid, expire, batchSize, shards, shard)
+                .collectList()
+                .filter(fids -> !fids.isEmpty())
+                .flatMap(fids -> {
+                    final long start = System.currentTimeMillis();
+                    return Flux
+                            .fromIterable(fids)
+                            .flatMap(f -> fileIoSchedulerService.run(() -> FileUtil.deleteFolder(
+                                    FileUtil.composePath(path, String.valueOf(f))
+                            )), Math.max(sliceClean.getConcurrency(), 1))
+                            .then(Mono.defer(() -> {
+                                // 删除的速度超过限制时等待，用以限制磁盘 IO
+                                if (sliceClean.getRate() <= 0) {
+                                    return Mono.empty();
+                                }
+                                final long wait = fids.size() * 1000L / sliceClean.getRate() - (System.currentTimeMillis() - start);
+                                return wait > 0 ? Mono.delay(Duration.ofMillis(wait)).then() : Mono.empty();
+                            }))
+                            .then(uploadRepository.deleteByIds(fids))
+                            .then(uploadChunkRepository.deleteByFids(fids))
+                            .doOnSuccess(c -> uploadChunkBatchWriter.clear(fids))
+                            .doOnNext(c -> LOGGER.info("[ FILE TASK CLEAN ] >>> {} :: {} - {} :: {}",
+                                    shard, fids.get(0), fids.get(fids.size() - 1), c))
+                            .then(fileCleanLeaseRepository.checkpoint(
+                                    shard, sweep, owner, sliceClean.getLease(), fids.get(fids.size() - 1)))
+                            .flatMap(b -> b ? Mono.just(fids) : Mono.error(new FileException(
+                                    this.getClass(),
+                                    "fun clean(...). ==> clean(...) shard (" + shard + ") lease has been lost.",
+                                    "clean(...) shard (" + shard + ") lease has been lost."
+                            )));
+                });
     }
 
 }
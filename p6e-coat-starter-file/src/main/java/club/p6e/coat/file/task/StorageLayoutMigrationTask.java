@@ -0,0 +1,277 @@
+package club.p6e.coat.file.task;
+
+import club.p6e.coat.common.error.FileException;
+import club.p6e.coat.common.error.ResourceNodeException;
+import club.p6e.coat.common.utils.GeneratorUtil;
+import club.p6e.coat.file.FileBlobService;
+import club.p6e.coat.file.FileIoSchedulerService;
+import club.p6e.coat.file.FolderStorageLocationPathService;
+import club.p6e.coat.file.Properties;
+import club.p6e.coat.file.model.UploadModel;
+import club.p6e.coat.file.repository.FileLayoutMigrationLeaseRepository;
+import club.p6e.coat.file.repository.UploadRepository;
+import club.p6e.coat.file.utils.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 存储布局迁移任务
+ * 按照上传编号分批读取日期布局（yyyy/MM/dd/文件夹/原始名称）的上传，把文件硬链接（或者移动）到散列布局（hash/xx/xx/唯一名称），
+ * 再按照版本号修改存储位置为文件路径/原始名称，修改失败时删除新的位置（或者把文件移动回原来的位置）
+ * 保留硬链接时原来的位置仍然可以下载，不保留时迁移后删除空的文件夹，客户端保存的旧的存储位置无法继续下载
+ * 每个上传节点通过文件清除租约表中的一条租约（负数的分区编号）保证只有一个实例迁移，每一批迁移后记录进度并续约
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = StorageLayoutMigrationTask.class,
+        ignored = StorageLayoutMigrationTask.class
+)
+public class StorageLayoutMigrationTask {
+
+    /**
+     * 磁盘的存储类型
+     */
+    private static final String DISK_STORAGE_TYPE = "DISK";
+
+    /**
+     * 日期布局的存储位置的匹配模式（yyyy/MM/dd/...）
+     */
+    private static final String DATE_LAYOUT_PATTERN = "____/__/__/%";
+
+    /**
+     * 日志对象
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageLayoutMigrationTask.class);
+
+    /**
+     * 配置文件对象
+     */
+    private final Properties properties;
+
+    /**
+     * 上传存储库对象
+     */
+    private final UploadRepository uploadRepository;
+
+    /**
+     * 文件内容服务对象
+     */
+    private final FileBlobService fileBlobService;
+
+    /**
+     * 文件夹的本地存储路径服务对象
+     */
+    private final FolderStorageLocationPathService folderStorageLocationPathService;
+
+    /**
+     * 文件 IO 调度服务
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 存储布局迁移租约存储库对象
+     */
+    private final FileLayoutMigrationLeaseRepository fileLayoutMigrationLeaseRepository;
+
+    /**
+     * 实例的标识
+     */
+    private final String owner = GeneratorUtil.uuid();
+
+    /**
+     * 构造方法初始化
+     *
+     * @param properties                         配置文件对象
+     * @param uploadRepository                   上传存储库对象
+     * @param fileBlobService                    文件内容服务对象
+     * @param folderStorageLocationPathService   文件夹的本地存储路径服务对象
+     * @param fileIoSchedulerService             文件 IO 调度服务
+     * @param fileLayoutMigrationLeaseRepository 存储布局迁移租约存储库对象
+     * @param taskScheduler                      任务调度器对象
+     */
+    public StorageLayoutMigrationTask(
+            Properties properties,
+            UploadRepository uploadRepository,
+            FileBlobService fileBlobService,
+            FolderStorageLocationPathService folderStorageLocationPathService,
+            FileIoSchedulerService fileIoSchedulerService,
+            FileLayoutMigrationLeaseRepository fileLayoutMigrationLeaseRepository,
+            TaskScheduler taskScheduler
+    ) {
+        this.properties = properties;
+        this.uploadRepository = uploadRepository;
+        this.fileBlobService = fileBlobService;
+        this.folderStorageLocationPathService = folderStorageLocationPathService;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        this.fileLayoutMigrationLeaseRepository = fileLayoutMigrationLeaseRepository;
+        final Properties.LayoutMigration migration = properties.getLayoutMigration();
+        if (migration.isEnabled() && !migration.getNodes().isEmpty()) {
+            taskScheduler.schedule(() -> Flux
+                    .fromIterable(migration.getNodes())
+                    .concatMap(node -> execute(node).onErrorResume(e -> {
+                        LOGGER.error("[ LAYOUT MIGRATION ERROR ] >>> {}", node, e);
+                        return Mono.empty();
+                    }))
+                    .subscribe(), Instant.now());
+        }
+    }
+
+    /**
+     * 迁移上传节点中日期布局的文件到散列布局
+     *
+     * @param node 上传节点
+     * @return Mono<Long> 迁移的文件数量
+     */
+    public Mono<Long> execute(String node) {
+        final Properties.Upload upload = node == null ? null : properties.getUploads().get(node);
+        if (upload == null || upload.getPath() == null) {
+            return Mono.error(new ResourceNodeException(
+                    this.getClass(),
+                    "fun execute(String node). ==> execute(...) upload node [ " + node + " ] does not exist.",
+                    "execute(...) upload node [ " + node + " ] does not exist."
+            ));
+        }
+        if (!DISK_STORAGE_TYPE.equalsIgnoreCase(upload.getType())) {
+            return Mono.just(0L);
+        }
+        final Properties.LayoutMigration migration = properties.getLayoutMigration();
+        final int batchSize = Math.max(migration.getBatchSize(), 1);
+        final int concurrency = Math.max(migration.getConcurrency(), 1);
+        final AtomicLong count = new AtomicLong(0);
+        final AtomicLong skipCount = new AtomicLong(0);
+        final long start = System.currentTimeMillis();
+        // 获取上传节点的租约，从记录的进度（已经迁移的最大上传编号）继续迁移
+        return fileLayoutMigrationLeaseRepository
+                .acquire(node, owner, migration.getLease())
+                .switchIfEmpty(Mono.defer(() -> {
+                    LOGGER.info("[ LAYOUT MIGRATION ] >>> {} :: running on other instance, skip.", node);
+                    return Mono.empty();
+                }))
+                .flatMap(checkpoint -> {
+                    LOGGER.info("[ LAYOUT MIGRATION START ] >>> {} :: {}", node, checkpoint);
+                    return select(Math.max(checkpoint, 0), batchSize)
+                            .expand(list -> list.size() < batchSize ? Mono.empty()
+                                    : select(list.get(list.size() - 1).getId(), batchSize))
+                            .concatMap(list -> Flux
+                                    .fromIterable(list)
+                                    .filter(m -> !fileBlobService.isBlob(m.getStorageLocation())
+                                            && !folderStorageLocationPathService.isHashLayout(m.getStorageLocation()))
+                                    .flatMap(m -> migrate(upload.getPath(), m, migration.isLink()), concurrency)
+                                    .doOnNext(b -> (b ? count : skipCount).incrementAndGet())
+                                    // 每一批迁移后记录进度并续约
+                                    .then(fileLayoutMigrationLeaseRepository.checkpoint(node, owner,
+                                            migration.getLease(), list.get(list.size() - 1).getId()))
+                                    .flatMap(b -> b ? Mono.<Void>empty() : Mono.error(new FileException(
+                                            this.getClass(),
+                                            "fun execute(String node). ==> execute(...) migration (" + node + ") lease has been lost.",
+                                            "execute(...) migration (" + node + ") lease has been lost."
+                                    ))))
+                            .then(Mono.fromSupplier(count::get))
+                            .doOnNext(c -> LOGGER.info("[ LAYOUT MIGRATION END ] >>> {} :: {} migrated :: {} skipped :: {} ms",
+                                    node, c, skipCount.get(), System.currentTimeMillis() - start))
+                            // 迁移完成后重置进度，下次从头读取（只会读取到还没有迁移的上传）
+                            .flatMap(c -> fileLayoutMigrationLeaseRepository.checkpoint(node, owner, migration.getLease(), 0)
+                                    .then(fileLayoutMigrationLeaseRepository.release(node, owner)).thenReturn(c))
+                            .onErrorResume(e -> fileLayoutMigrationLeaseRepository.release(node, owner).then(Mono.error(e)));
+                })
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * 按照编号读取一批日期布局的上传
+     *
+     * @param id   起始编号（不包含）
+     * @param size 读取的数量
+     * @return Mono<List<UploadModel>> 上传列表
+     */
+    private Mono<List<UploadModel>> select(int id, int size) {
+        return uploadRepository
+                .selectByStorageLocation(id, DISK_STORAGE_TYPE, DATE_LAYOUT_PATTERN, size)
+                .collectList()
+                .filter(list -> !list.isEmpty());
+    }
+
+    /**
+     * 迁移一个上传的文件
+     * 文件不在上传节点的基础路径下时跳过（其它节点的上传）
+     * 保留硬链接时新的位置是原来文件的硬链接，原来的位置不变，否则移动文件
+     *
+     * @param base  基础的文件路径
+     * @param model 上传模型对象
+     * @param link  是否在原来的位置保留硬链接
+     * @return Mono<Boolean> 是否迁移
+     */
+    private Mono<Boolean> migrate(String base, UploadModel model, boolean link) {
+        final String location = model.getStorageLocation();
+        final File source = new File(FileUtil.convertAbsolutePath(FileUtil.composePath(base, location)));
+        final String path = folderStorageLocationPathService.path(FolderStorageLocationPathService.HASH_LAYOUT);
+        final File target = new File(FileUtil.convertAbsolutePath(FileUtil.composePath(base, path)));
+        return fileIoSchedulerService
+                .execute(() -> {
+                    if (!FileUtil.checkFileExist(source)) {
+                        return false;
+                    }
+                    if (!FileUtil.checkFolderExist(target.getParentFile())) {
+                        FileUtil.createFolder(target.getParentFile());
+                    }
+                    if (link) {
+                        Files.createLink(target.toPath(), source.toPath());
+                    } else {
+                        Files.move(source.toPath(), target.toPath());
+                    }
+                    return true;
+                })
+                .flatMap(b -> !b ? Mono.just(false) : uploadRepository
+                        .update(new UploadModel()
+                                .setId(model.getId())
+                                .setVersion(model.getVersion())
+                                .setStorageLocation(FileUtil.composePath(path, source.getName())))
+                        // 修改存储位置失败时（例如版本号不匹配）删除新的位置或者把文件移动回原来的位置
+                        .onErrorResume(e -> fileIoSchedulerService
+                                .run(() -> {
+                                    try {
+                                        if (link) {
+                                            Files.deleteIfExists(target.toPath());
+                                        } else {
+                                            Files.move(target.toPath(), source.toPath());
+                                        }
+                                    } catch (Exception ee) {
+                                        LOGGER.error("[ LAYOUT MIGRATION ROLLBACK ERROR ] >>> {} :: {}", target, source, ee);
+                                    }
+                                })
+                                .then(Mono.error(e)))
+                        .flatMap(m -> link ? Mono.just(true) : fileIoSchedulerService.execute(() -> {
+                            // 删除日期布局中空的文件夹
+                            final File folder = source.getParentFile();
+                            final String[] names = folder.list();
+                            if (names != null && names.length == 0) {
+                                FileUtil.deleteFolder(folder);
+                            }
+                            return true;
+                        })))
+                .doOnNext(b -> {
+                    if (b) {
+                        LOGGER.debug("[ LAYOUT MIGRATION ] >>> {} :: {} >>> {}", model.getId(), location, path);
+                    }
+                })
+                .onErrorResume(e -> {
+                    LOGGER.error("[ LAYOUT MIGRATION ERROR ] >>> {} :: {}", model.getId(), location, e);
+                    return Mono.just(false);
+                });
+    }
+
+}
@@ -0,0 +1,208 @@
+package club.p6e.coat.file.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分层时间轮
+ * 每层 64 个槽，第 0 层一个槽为一个刻度，上一层一个槽为下一层一圈
+ * 到期时间越远放在越高的层，指针走到时再逐层下放，添加、刷新和删除都是 O(1)
+ * 刷新和删除只修改索引，旧的节点在指针走到时丢弃
+ *
+ * @param <K> 键的类型
+ * @author lidashuang
+ * @version 1.0
+ */
+public class TimingWheel<K> {
+
+    /**
+     * 每层槽数量的位数
+     */
+    private static final int BITS = 6;
+
+    /**
+     * 每层槽的数量
+     */
+    private static final int SLOTS = 1 << BITS;
+
+    /**
+     * 槽的掩码
+     */
+    private static final int MASK = SLOTS - 1;
+
+    /**
+     * 层的数量（一个刻度为一秒时可以覆盖 194 天）
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * 一个刻度的时长（毫秒）
+     */
+    private final long tick;
+
+    /**
+     * 开始时间（毫秒）
+     */
+    private final long start;
+
+    /**
+     * 时间轮的槽
+     */
+    private final List<List<Node<K>>> slots = new ArrayList<>();
+
+    /**
+     * 键和有效节点的索引
+     */
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+
+    /**
+     * 当前指针的刻度
+     */
+    private long current = 0;
+
+    /**
+     * 构造方法初始化
+     *
+     * @param tick 一个刻度的时长（毫秒）
+     */
+    public TimingWheel(long tick) {
+        this.tick = Math.max(tick, 1);
+        this.start = System.currentTimeMillis();
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * 添加或者刷新键的到期时间
+     *
+     * @param key      键
+     * @param deadline 到期时间（毫秒）
+     */
+    public synchronized void schedule(K key, long deadline) {
+        // 当前刻度的槽已经处理过，最早在下一个刻度到期
+        final Node<K> node = new Node<>(key, deadline, Math.max((deadline - start + tick - 1) / tick, current + 1));
+        nodes.put(key, node);
+        place(node);
+    }
+
+    /**
+     * 删除键
+     *
+     * @param key 键
+     */
+    public synchronized void cancel(K key) {
+        nodes.remove(key);
+    }
+
+    /**
+     * 读取键的到期时间
+     *
+     * @param key 键
+     * @return 到期时间（毫秒，不存在时为 -1）
+     */
+    public synchronized long deadline(K key) {
+        final Node<K> node = nodes.get(key);
+        return node == null ? -1 : node.deadline();
+    }
+
+    /**
+     * 键的数量
+     *
+     * @return 键的数量
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 指针走到指定的时间
+     *
+     * @param now 当前时间（毫秒）
+     * @return 到期并删除的键
+     */
+    public synchronized List<K> advance(long now) {
+        final List<K> result = new ArrayList<>();
+        final long target = (now - start) / tick;
+        while (current < target) {
+            current++;
+            // 指针走完下一层的一圈时，将上一层当前槽的节点下放
+            for (int level = 1; level < LEVELS && (current & ((1L << (BITS * level)) - 1)) == 0; level++) {
+                final List<Node<K>> list = slot(level, current);
+                final List<Node<K>> cascade = new ArrayList<>(list);
+                list.clear();
+                cascade.forEach(this::place);
+            }
+            final List<Node<K>> list = slot(0, current);
+            final List<Node<K>> expire = new ArrayList<>(list);
+            list.clear();
+            for (final Node<K> node : expire) {
+                if (nodes.get(node.key()) != node) {
+                    // 已经刷新或者删除的旧节点
+                    continue;
+                }
+                if (node.tick() <= current) {
+                    nodes.remove(node.key());
+                    result.add(node.key());
+                } else {
+                    place(node);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将节点放到对应的槽
+     * 放在到期刻度和当前刻度位于上一层的同一个槽的最低层，超出最高层一圈的放在最高层最后经过的槽
+     *
+     * @param node 节点
+     */
+    private void place(Node<K> node) {
+        if (nodes.get(node.key()) != node) {
+            return;
+        }
+        if (node.tick() < current) {
+            // 已经到期的节点在下一个刻度处理
+            slot(0, current + 1).add(node);
+            return;
+        }
+        for (int level = 0; level < LEVELS - 1; level++) {
+            final int shift = BITS * (level + 1);
+            if ((node.tick() >>> shift) == (current >>> shift)) {
+                slot(level, node.tick()).add(node);
+                return;
+            }
+        }
+        final int shift = BITS * (LEVELS - 1);
+        if ((node.tick() >>> shift) - (current >>> shift) < SLOTS) {
+            slot(LEVELS - 1, node.tick()).add(node);
+        } else {
+            slot(LEVELS - 1, ((current >>> shift) - 1) << shift).add(node);
+        }
+    }
+
+    /**
+     * 读取刻度在指定层对应的槽
+     *
+     * @param level 层
+     * @param t     刻度
+     * @return 槽
+     */
+    private List<Node<K>> slot(int level, long t) {
+        return slots.get(level * SLOTS + (int) ((t >>> (BITS * level)) & MASK));
+    }
+
+    /**
+     * 节点
+     *
+     * @param key      键
+     * @param deadline 到期时间（毫秒）
+     * @param tick     到期的刻度
+     */
+    private record Node<K>(K key, long deadline, long tick) {
+    }
+
+}
@@ -0,0 +1,339 @@
+package club.p6e.coat.file.task;
+
+import club.p6e.coat.common.error.DataBaseException;
+import club.p6e.coat.common.utils.TransformationUtil;
+import club.p6e.coat.file.FileIoSchedulerService;
+import club.p6e.coat.file.Properties;
+import club.p6e.coat.file.repository.UploadChunkBatchWriter;
+import club.p6e.coat.file.repository.UploadChunkRepository;
+import club.p6e.coat.file.repository.UploadRepository;
+import club.p6e.coat.file.repository.UploadSessionRepository;
+import club.p6e.coat.file.utils.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 上传会话过期任务
+ * 打开的分片上传记录在时间轮中，每次上传分片时刷新到期时间，空闲超过指定时间后回收分片文件夹和记录
+ * 到期时间同时保存在数据库中，重启或者其它实例打开的会话通过定时加载恢复到时间轮中
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+@Component
+@ConditionalOnMissingBean(
+        value = UploadSessionExpireTask.class,
+        ignored = UploadSessionExpireTask.class
+)
+public class UploadSessionExpireTask {
+
+    /**
+     * 一次加载的会话数量
+     */
+    private static final int RESCAN_SIZE = 1000;
+
+    /**
+     * 日志对象
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadSessionExpireTask.class);
+
+    /**
+     * 配置文件对象
+     */
+    private final Properties properties;
+
+    /**
+     * 上传存储库对象
+     */
+    private final UploadRepository uploadRepository;
+
+    /**
+     * 上传块存储库对象
+     */
+    private final UploadChunkRepository uploadChunkRepository;
+
+    /**
+     * 上传块延迟批量写入对象
+     */
+    private final UploadChunkBatchWriter uploadChunkBatchWriter;
+
+    /**
+     * 上传会话存储库对象
+     */
+    private final UploadSessionRepository uploadSessionRepository;
+
+    /**
+     * 文件 IO 调度服务
+     */
+    private final FileIoSchedulerService fileIoSchedulerService;
+
+    /**
+     * 时间轮对象
+     */
+    private final TimingWheel<Integer> wheel;
+
+    /**
+     * 是否正在加载
+     */
+    private final AtomicBoolean rescanning = new AtomicBoolean(false);
+
+    /**
+     * 构造方法初始化
+     *
+     * @param properties              配置文件对象
+     * @param uploadRepository        上传存储库对象
+     * @param uploadChunkRepository   上传块存储库对象
+     * @param uploadChunkBatchWriter  上传块延迟批量写入对象
+     * @param uploadSessionRepository 上传会话存储库对象
+     * @param fileIoSchedulerService  文件 IO 调度服务
+     * @param taskScheduler           任务调度器对象
+     */
+    public UploadSessionExpireTask(
+            Properties properties,
+            UploadRepository uploadRepository,
+            UploadChunkRepository uploadChunkRepository,
+            UploadChunkBatchWriter uploadChunkBatchWriter,
+            UploadSessionRepository uploadSessionRepository,
+            FileIoSchedulerService fileIoSchedulerService,
+            TaskScheduler taskScheduler
+    ) {
+        this.properties = properties;
+        this.uploadRepository = uploadRepository;
+        this.uploadChunkRepository = uploadChunkRepository;
+        this.uploadChunkBatchWriter = uploadChunkBatchWriter;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.fileIoSchedulerService = fileIoSchedulerService;
+        final Properties.UploadSession session = properties.getUploadSession();
+        this.wheel = new TimingWheel<>(session.getTick());
+        if (session.isEnabled()) {
+            taskScheduler.scheduleAtFixedRate(this::tick, Duration.ofMillis(Math.max(session.getTick(), 1)));
+            taskScheduler.scheduleWithFixedDelay(this::rescan, Duration.ofMillis(Math.max(session.getRescan(), 1000)));
+        }
+    }
+
+    /**
+     * 打开会话
+     *
+     * @param id 上传 ID
+     * @return Mono<Void> 保存完成
+     */
+    public Mono<Void> open(int id) {
+        if (!properties.getUploadSession().isEnabled()) {
+            return Mono.empty();
+        }
+        return save(id);
+    }
+
+    /**
+     * 刷新会话
+     * 保存的到期时间比空闲时间多出四分之一，剩余时间不足空闲时间时才重新保存，减少每个分片写入数据库
+     *
+     * @param id 上传 ID
+     * @return Mono<Void> 保存完成
+     */
+    public Mono<Void> touch(int id) {
+        final Properties.UploadSession session = properties.getUploadSession();
+        if (!session.isEnabled() || wheel.deadline(id) - System.currentTimeMillis() > session.getIdle()) {
+            return Mono.empty();
+        }
+        return save(id);
+    }
+
+    /**
+     * 关闭会话
+     *
+     * @param id 上传 ID
+     * @return Mono<Void> 删除完成
+     */
+    public Mono<Void> close(int id) {
+        if (!properties.getUploadSession().isEnabled()) {
+            return Mono.empty();
+        }
+        wheel.cancel(id);
+        return uploadSessionRepository
+                .delete(id)
+                .onErrorResume(e -> {
+                    LOGGER.warn("[ UPLOAD SESSION CLOSE ERROR ] >>> {}", id, e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * 保存会话的到期时间
+     * 会话记录保存失败时不影响上传，只记录日志
+     *
+     * @param id 上传 ID
+     * @return Mono<Void> 保存完成
+     */
+    private Mono<Void> save(int id) {
+        final long idle = properties.getUploadSession().getIdle();
+        final long deadline = System.currentTimeMillis() + idle + idle / 4;
+        return uploadSessionRepository
+                .save(id, toLocalDateTime(deadline))
+                .doOnNext(c -> wheel.schedule(id, deadline))
+                .onErrorResume(e -> {
+                    LOGGER.warn("[ UPLOAD SESSION SAVE ERROR ] >>> {}", id, e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * 时间轮走一个刻度，处理到期的会话
+     */
+    private void tick() {
+        final List<Integer> ids = wheel.advance(System.currentTimeMillis());
+        if (!ids.isEmpty()) {
+            Flux.fromIterable(ids)
+                    .flatMap(this::expire, Math.max(properties.getSliceClean().getConcurrency(), 1))
+                    .subscribe(
+                            id -> LOGGER.info("[ UPLOAD SESSION EXPIRE ] >>> {}", id),
+                            e -> LOGGER.error("[ UPLOAD SESSION EXPIRE ERROR ] >>> ", e)
+                    );
+        }
+    }
+
+    /**
+     * 会话到期
+     * 数据库中的到期时间已经刷新（其它实例上传了分片）时按照新的到期时间重新放入时间轮
+     *
+     * @param id 上传 ID
+     * @return Mono<Integer> 回收的上传 ID
+     */
+    private Mono<Integer> expire(int id) {
+        return uploadSessionRepository
+                .deleteExpire(id, LocalDateTime.now())
+                .flatMap(c -> c > 0 ? reclaim(id) : uploadSessionRepository
+                        .findExpireDateTime(id)
+                        .doOnNext(t -> wheel.schedule(id, toMillis(t)))
+                        .then(Mono.<Integer>empty()))
+                .onErrorResume(e -> {
+                    LOGGER.error("[ UPLOAD SESSION EXPIRE ERROR ] >>> {}", id, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 回收上传
+     * 先关闭上传（之后的分片不能再登记），再删除分片文件夹、分片记录和上传记录
+     * 上传已经关闭（或者正在关闭）时不回收，上传被锁定或者关闭失败时重新保存会话，下一次到期时再回收
+     *
+     * @param id 上传 ID
+     * @return Mono<Integer> 回收的上传 ID
+     */
+    private Mono<Integer> reclaim(int id) {
+        final String path = FileUtil.convertAbsolutePath(
+                FileUtil.composePath(properties.getSliceUpload().getPath(), String.valueOf(id))
+        );
+        return uploadRepository
+                .closeLock(id)
+                .onErrorResume(e -> reschedule(id, e).then(Mono.empty()))
+                .flatMap(l -> fileIoSchedulerService
+                        .run(() -> FileUtil.deleteFolder(path))
+                        .then(uploadChunkRepository.deleteByFids(List.of(id)))
+                        .then(uploadRepository.deleteByIds(List.of(id)))
+                        .doOnSuccess(c -> uploadChunkBatchWriter.clear(id))
+                        .thenReturn(id));
+    }
+
+    /**
+     * 关闭上传失败
+     * 会话记录在回收之前已经删除，查询数据库（不读取缓存）区分上传已经关闭（或者不存在）和上传被锁定
+     * 上传已经关闭时不再跟踪会话（关闭上传失败时会重新打开会话），其它情况重新保存会话
+     *
+     * @param id 上传 ID
+     * @param e  关闭上传的异常
+     * @return Mono<Void> 处理完成
+     */
+    private Mono<Void> reschedule(int id, Throwable e) {
+        return uploadRepository
+                .selectById(id)
+                .map(m -> m.getLock() != null && m.getLock() >= 0)
+                // 上传不存在时不再跟踪会话，查询失败时重新保存会话
+                .onErrorResume(ee -> Mono.just(!(ee instanceof DataBaseException)))
+                .flatMap(b -> {
+                    if (b) {
+                        LOGGER.info("[ UPLOAD SESSION BUSY ] >>> {} :: {}", id, e.getMessage());
+                        return save(id);
+                    } else {
+                        LOGGER.info("[ UPLOAD SESSION CLOSED ] >>> {}", id);
+                        return Mono.empty();
+                    }
+                });
+    }
+
+    /**
+     * 从数据库加载下一次加载之前到期的会话
+     */
+    private void rescan() {
+        if (!rescanning.compareAndSet(false, true)) {
+            return;
+        }
+        final Properties.UploadSession session = properties.getUploadSession();
+        final LocalDateTime expire = toLocalDateTime(System.currentTimeMillis() + session.getRescan() + session.getTick());
+        rescan(0, expire)
+                .expand(ids -> ids.size() < RESCAN_SIZE ? Mono.empty() : rescan(ids.get(ids.size() - 1), expire))
+                .reduce(0L, (count, ids) -> count + ids.size())
+                .doFinally(s -> rescanning.set(false))
+                .subscribe(
+                        count -> LOGGER.debug("[ UPLOAD SESSION RESCAN ] >>> {} :: {}", count, wheel.size()),
+                        e -> LOGGER.error("[ UPLOAD SESSION RESCAN ERROR ] >>> ", e)
+                );
+    }
+
+    /**
+     * 加载一页会话
+     * 时间轮中已经有更晚的到期时间（本实例刷新的会话）时保留时间轮中的到期时间
+     *
+     * @param fid    起始上传 ID（不包含）
+     * @param expire 到期时间
+     * @return Mono<List<Integer>> 加载的上传 ID 列表
+     */
+    private Mono<List<Integer>> rescan(int fid, LocalDateTime expire) {
+        return uploadSessionRepository
+                .selectExpire(fid, expire, RESCAN_SIZE)
+                .map(row -> {
+                    final Integer id = TransformationUtil.objectToInteger(row.get("fid"));
+                    final long deadline = toMillis(TransformationUtil.objectToLocalDateTime(row.get("expire_date_time")));
+                    if (wheel.deadline(id) < deadline) {
+                        wheel.schedule(id, deadline);
+                    }
+                    return id;
+                })
+                .collectList();
+    }
+
+    /**
+     * 毫秒转换为时间
+     *
+     * @param millis 毫秒
+     * @return 时间
+     */
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * 时间转换为毫秒
+     *
+     * @param time 时间
+     * @return 毫秒
+     */
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+}
@@ -1,19 +1,29 @@
 package club.p6e.coat.file.utils;
 
 import club.p6e.coat.common.utils.GeneratorUtil;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.springframework.core.io.FileUrlResource;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * 文件帮助类
@@ -36,9 +46,21 @@ public final class FileUtil {
 
     /**
      * 文件缓冲区大小
+     * 实际使用的缓冲区大小会根据读取的长度在 [FILE_MIN_BUFFER_SIZE, 配置的缓冲区大小] 之间调整
      */
     private static final int FILE_BUFFER_SIZE = 1024 * 1024 * 5;
-    private static final DefaultDataBufferFactory DEFAULT_DATA_BUFFER_FACTORY = new DefaultDataBufferFactory();
+    private static final int FILE_MIN_BUFFER_SIZE = 1024 * 4;
+
+    /**
+     * 池化（直接内存）的缓冲区工厂
+     */
+    private static final NettyDataBufferFactory POOLED_DATA_BUFFER_FACTORY =
+            new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    /**
+     * 合并文件分片的默认并行数量
+     */
+    private static final int FILE_MERGE_CONCURRENCY = 4;
 
     /**
      * 验证文件夹是否存在
@@ -146,7 +168,8 @@ public final class FileUtil {
                         }
                     }
                 }
-                return result;
+                // 删除文件夹中的内容后删除文件夹本身
+                return result && folder.delete();
             } else {
                 return false;
             }
@@ -295,28 +318,41 @@ public final class FileUtil {
      */
     @SuppressWarnings("ALL")
     public static Flux<DataBuffer> readFile(File file, long position, long size) {
+        return readFile(file, position, size, FILE_BUFFER_SIZE);
+    }
+
+    /**
+     * 读取文件内容
+     * 缓冲区从池化的分配器中获取，大小根据读取长度自适应
+     * 读取到指定长度后立即停止，最后一个缓冲区只截断可读范围而不会重新拷贝
+     *
+     * @param file       文件对象
+     * @param position   文件索引
+     * @param size       文件长度（小于 0 表示读取到文件末尾）
+     * @param bufferSize 最大的缓冲区大小
+     * @return Flux<DataBuffer> 读取的文件内容
+     */
+    @SuppressWarnings("ALL")
+    public static Flux<DataBuffer> readFile(File file, long position, long size, int bufferSize) {
         if (file != null && checkFileExist(file)) {
             try {
-                final long fs = size >= 0 ? size : 1 + size + file.length();
+                final long fs = size >= 0 ? size : file.length() - position;
+                if (fs <= 0) {
+                    return Flux.empty();
+                }
+                final int bs = (int) Math.min(Math.max(bufferSize, FILE_MIN_BUFFER_SIZE), fs);
                 final AtomicLong aLong = new AtomicLong(0);
                 return DataBufferUtils
-                        .read(new FileUrlResource(file.getAbsolutePath()), position, DEFAULT_DATA_BUFFER_FACTORY, FILE_BUFFER_SIZE)
+                        .read(new FileUrlResource(file.getAbsolutePath()), position, POOLED_DATA_BUFFER_FACTORY, bs)
                         .map(b -> {
-                            if (aLong.get() >= fs) {
-                                DataBufferUtils.release(b);
-                                return DEFAULT_DATA_BUFFER_FACTORY.allocateBuffer(0);
-                            } else {
-                                final int rbc = b.readableByteCount();
-                                if (aLong.addAndGet(rbc) >= fs) {
-                                    final byte[] bytes = new byte[(int) (fs - aLong.get() + rbc)];
-                                    b.read(bytes);
-                                    DataBufferUtils.release(b);
-                                    return DEFAULT_DATA_BUFFER_FACTORY.wrap(bytes);
-                                } else {
-                                    return b;
-                                }
+                            final int rbc = b.readableByteCount();
+                            final long remaining = fs - aLong.getAndAdd(rbc);
+                            if (remaining < rbc) {
+                                b.writePosition(b.readPosition() + (int) Math.max(remaining, 0L));
                             }
-                        });
+                            return b;
+                        })
+                        .takeUntil(b -> aLong.get() >= fs);
             } catch (IOException e) {
                 return Flux.error(e);
             }
@@ -325,6 +361,73 @@ public final class FileUtil {
         }
     }
 
+    /**
+     * 预分配文件
+     * 创建指定长度的文件，已经存在的文件将会被截断或者扩展到指定长度
+     *
+     * @param file   文件对象
+     * @param length 文件长度
+     * @throws IOException 创建过程中出现的异常
+     */
+    @SuppressWarnings("ALL")
+    public static void preallocateFile(File file, long length) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    /**
+     * 限制数据流的长度
+     * 累计的长度超过最大长度时释放当前的缓冲区并以异常中止数据流（取消上游的传输）
+     *
+     * @param dataBufferFlux DataBuffer 对象
+     * @param maxSize        最大长度，小于等于 0 表示不限制
+     * @param error          超过最大长度时的异常
+     * @return 限制长度后的 DataBuffer 对象
+     */
+    public static Flux<DataBuffer> limit(Flux<DataBuffer> dataBufferFlux, long maxSize, Supplier<? extends Throwable> error) {
+        if (maxSize <= 0) {
+            return dataBufferFlux;
+        }
+        return Flux.defer(() -> {
+            final AtomicLong count = new AtomicLong(0);
+            return dataBufferFlux.handle((buffer, sink) -> {
+                if (count.addAndGet(buffer.readableByteCount()) > maxSize) {
+                    DataBufferUtils.release(buffer);
+                    sink.error(error.get());
+                } else {
+                    sink.next(buffer);
+                }
+            });
+        });
+    }
+
+    /**
+     * 提升文件
+     * 源文件和目标文件在同一个文件系统（FileStore 相同）时，通过硬链接创建目标文件，不会复制文件数据
+     * 源文件保留不变，目标文件之后的步骤失败时源文件仍然可以使用，源文件由调用方在不再需要时删除
+     *
+     * @param source 源文件对象
+     * @param target 目标文件对象
+     * @return 是否提升成功，不在同一个文件系统或者文件系统不支持硬链接时返回 false，需要调用方自行复制数据
+     */
+    @SuppressWarnings("ALL")
+    public static boolean promoteFile(File source, File target) {
+        try {
+            final Path sp = source.toPath();
+            final Path tp = target.toPath();
+            final Path tf = tp.toAbsolutePath().getParent();
+            if (tf == null || !Files.getFileStore(sp).equals(Files.getFileStore(tf))) {
+                return false;
+            }
+            Files.deleteIfExists(tp);
+            Files.createLink(tp, sp);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     /**
      * 写入文件
      *
@@ -337,6 +440,45 @@ public final class FileUtil {
         return DataBufferUtils.write(dataBufferFlux, file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
     }
 
+    /**
+     * 写入文件的指定位置
+     * 文件不会被截断，写入的内容从指定的位置开始覆盖
+     *
+     * @param dataBufferFlux DataBuffer 对象
+     * @param file           文件对象
+     * @param position       写入的开始位置
+     * @return Mono<Void> 对象
+     */
+    @SuppressWarnings("ALL")
+    public static Mono<Void> writeFile(Flux<DataBuffer> dataBufferFlux, File file, long position) {
+        return Mono.using(
+                () -> AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.WRITE),
+                channel -> DataBufferUtils
+                        .write(dataBufferFlux, channel, position)
+                        .doOnNext(DataBufferUtils::release)
+                        .then(),
+                channel -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        // 忽略异常
+                    }
+                }
+        );
+    }
+
+    /**
+     * 将文件的内容同步到磁盘
+     *
+     * @param file 文件对象
+     * @throws IOException 同步失败
+     */
+    public static void forceFile(File file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
     /**
      * 文件拼接
      *
@@ -480,15 +622,104 @@ public final class FileUtil {
      * @return 合并后的文件对象
      */
     public static Mono<File> mergeFileSlice(File[] files, File file) {
+        return mergeFileSlice(files, file, FILE_MERGE_CONCURRENCY, null);
+    }
+
+    /**
+     * 合并文件分片
+     * 根据分片长度的总和预分配目标文件，计算每个分片在目标文件中的位置
+     * 然后通过 FileChannel.transferFrom 并行的将分片拷贝到对应的位置，数据不经过 JVM 堆内存
+     * 并行数量只限制当前的合并，同一个磁盘上多个合并的总数由调用方限制（关闭上传通过 FileMergeJobService 按照磁盘排队）
+     *
+     * @param files       文件列表
+     * @param file        合并后的文件对象
+     * @param concurrency 并行拷贝的最大数量
+     * @param progress    进度回调（已合并的长度，总长度），可以为 null
+     * @return 合并后的文件对象
+     */
+    public static Mono<File> mergeFileSlice(File[] files, File file, int concurrency, BiConsumer<Long, Long> progress) {
+        return mergeFileSlice(files, file, concurrency, progress, Schedulers.boundedElastic());
+    }
+
+    /**
+     * 合并文件分片
+     * 在指定的调度器中执行阻塞的文件操作
+     *
+     * @param files       文件列表
+     * @param file        合并后的文件对象
+     * @param concurrency 并行拷贝的最大数量
+     * @param progress    进度回调（已合并的长度，总长度），可以为 null
+     * @param scheduler   执行文件操作的调度器
+     * @return 合并后的文件对象
+     */
+    public static Mono<File> mergeFileSlice(File[] files, File file, int concurrency, BiConsumer<Long, Long> progress, Scheduler scheduler) {
         if (files == null
                 || file == null
                 || files.length == 0) {
             return Mono.empty();
         } else {
-            deleteFile(file);
-            return writeFile(Flux.concat(
-                    Arrays.stream(files).map(FileUtil::readFile).toList()
-            ), file).then(Mono.just(file));
+            final long[] positions = new long[files.length];
+            final long[] lengths = new long[files.length];
+            final AtomicLong merged = new AtomicLong(0);
+            return Mono.using(
+                    () -> {
+                        long length = 0;
+                        for (int i = 0; i < files.length; i++) {
+                            positions[i] = length;
+                            lengths[i] = files[i].length();
+                            length += lengths[i];
+                        }
+                        deleteFile(file);
+                        preallocateFile(file, length);
+                        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+                    },
+                    channel -> Flux
+                            .range(0, files.length)
+                            .flatMap(i -> Mono.fromCallable(() -> {
+                                final long count = transferFileSlice(files[i], channel, positions[i], lengths[i]);
+                                final long total = positions[files.length - 1] + lengths[files.length - 1];
+                                final long current = merged.addAndGet(count);
+                                if (progress != null) {
+                                    progress.accept(current, total);
+                                }
+                                return count;
+                            }).subscribeOn(scheduler), Math.max(concurrency, 1))
+                            .then(Mono.fromCallable(() -> {
+                                channel.force(false);
+                                return file;
+                            })),
+                    channel -> {
+                        try {
+                            channel.close();
+                        } catch (IOException e) {
+                            // 忽略异常
+                        }
+                    }
+            ).subscribeOn(scheduler);
+        }
+    }
+
+    /**
+     * 将分片文件拷贝到目标文件的指定位置
+     *
+     * @param source   分片文件对象
+     * @param target   目标文件通道
+     * @param position 目标文件中的位置
+     * @param length   分片文件长度
+     * @return 拷贝的长度
+     * @throws IOException 拷贝过程中出现的异常
+     */
+    private static long transferFileSlice(File source, FileChannel target, long position, long length) throws IOException {
+        try (final FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long count = 0;
+            while (count < length) {
+                final long c = target.transferFrom(channel, position + count, length - count);
+                if (c <= 0) {
+                    throw new IOException("file slice (" + source.getName() + ") is shorter than expected.");
+                }
+                count += c;
+            }
+            return count;
         }
     }
 
@@ -0,0 +1,111 @@
+package club.p6e.coat.file.handler;
+
+import club.p6e.coat.file.aspect.DefaultOpenUploadAspectImpl;
+import club.p6e.coat.file.aspect.OpenUploadAspect;
+import club.p6e.coat.file.mapper.OpenUploadContextRequestParameterMapper;
+import club.p6e.coat.file.mapper.RequestParameterMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.EntityResponse;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 打开分片上传-处理函数（默认切面返回秒传字段）测试
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public class OpenUploadHandlerFunctionTest {
+
+    /**
+     * 注册请求参数映射器（不启动 Spring 容器）
+     */
+    @BeforeAll
+    @SuppressWarnings("unchecked")
+    public static void init() throws Exception {
+        final Field cache = RequestParameterMapper.class.getDeclaredField("CACHE");
+        cache.setAccessible(true);
+        final OpenUploadContextRequestParameterMapper mapper = new OpenUploadContextRequestParameterMapper();
+        ((Map<Class<?>, RequestParameterMapper>) cache.get(null)).put(mapper.outputClass(), mapper);
+        final Field refresh = RequestParameterMapper.class.getDeclaredField("IS_REFRESH_CACHE");
+        refresh.setAccessible(true);
+        refresh.set(null, true);
+    }
+
+    /**
+     * 执行处理函数并读取返回的数据
+     *
+     * @param result 打开分片上传服务返回的结果
+     * @return 返回给客户端的数据
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> handle(Map<String, Object> result) {
+        final List<OpenUploadAspect> aspects = new ArrayList<>(List.of(new DefaultOpenUploadAspectImpl()));
+        final OpenUploadHandlerFunction function = new OpenUploadHandlerFunction(c -> Mono.just(result), aspects);
+        final MockServerHttpRequest request = MockServerHttpRequest.post("/upload/open?name=a.txt").build();
+        final ServerRequest serverRequest = ServerRequest.create(
+                MockServerWebExchange.from(request), HandlerStrategies.withDefaults().messageReaders());
+        final ServerResponse response = function.handle(serverRequest).block();
+        assertInstanceOf(EntityResponse.class, response);
+        final Object entity = ((EntityResponse<?>) response).entity();
+        assertInstanceOf(AspectHandlerFunction.ResultContext.class, entity);
+        return (Map<String, Object>) ((AspectHandlerFunction.ResultContext) entity).getData();
+    }
+
+    @Test
+    public void challengeIsReturned() {
+        final Map<String, Object> challenge = new HashMap<>();
+        challenge.put("nonce", "00112233445566778899aabbccddeeff");
+        challenge.put("offset", 1024L);
+        challenge.put("length", 65536L);
+        challenge.put("algorithm", "SHA-256");
+        final Map<String, Object> result = new HashMap<>();
+        result.put("challenge", challenge);
+        result.put("complete", false);
+        final Map<String, Object> data = handle(result);
+        assertEquals(challenge, data.get("challenge"));
+        assertEquals(false, data.get("complete"));
+    }
+
+    @Test
+    public void instantUploadIsComplete() {
+        final Map<String, Object> result = new HashMap<>();
+        result.put("id", 1);
+        result.put("storageLocation", "cas/00/11/0011_abcdef/a.txt");
+        result.put("complete", true);
+        final Map<String, Object> data = handle(result);
+        assertEquals(1, data.get("id"));
+        assertEquals(true, data.get("complete"));
+        // 其它的数据仍然不返回给客户端
+        assertNull(data.get("storageLocation"));
+    }
+
+    @Test
+    public void openUploadReturnsId() {
+        final Map<String, Object> result = new HashMap<>();
+        result.put("id", 2);
+        result.put("lock", 0);
+        final Map<String, Object> data = handle(result);
+        assertNotNull(data);
+        assertEquals(2, data.get("id"));
+        assertNull(data.get("challenge"));
+        assertNull(data.get("lock"));
+    }
+
+}
@@ -0,0 +1,102 @@
+package club.p6e.coat.file.mapper;
+
+import club.p6e.coat.common.error.FileException;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 请求参数映射器（FormData 长度限制）测试
+ *
+ * @author lidashuang
+ * @version 1.0
+ */
+public class RequestParameterMapperTest {
+
+    /**
+     * FormData 的分隔符
+     */
+    private static final String BOUNDARY = "p6e-coat-file-boundary";
+
+    /**
+     * 每次写入的数据长度
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * 创建没有 Content-Length（分块传输）的 FormData 请求
+     *
+     * @param fileSize 文件的长度
+     * @param read     已经读取的请求体长度
+     * @return ServerRequest 对象
+     */
+    private static ServerRequest request(int fileSize, AtomicLong read) {
+        final DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+        final String head = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"slice.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n";
+        final String tail = "\r\n--" + BOUNDARY + "--\r\n";
+        final Flux<DataBuffer> body = Flux.concat(
+                Flux.just(head).map(s -> factory.wrap(s.getBytes(StandardCharsets.UTF_8))),
+                Flux.range(0, fileSize / CHUNK_SIZE).map(i -> factory.wrap(new byte[CHUNK_SIZE])),
+                Flux.just(tail).map(s -> factory.wrap(s.getBytes(StandardCharsets.UTF_8)))
+        ).doOnNext(buffer -> read.addAndGet(buffer.readableByteCount()));
+        final MockServerHttpRequest request = MockServerHttpRequest
+                .post("/upload")
+                .contentType(MediaType.parseMediaType("multipart/form-data; boundary=" + BOUNDARY))
+                .body(body);
+        return ServerRequest.create(MockServerWebExchange.from(request), HandlerStrategies.withDefaults().messageReaders());
+    }
+
+    @Test
+    public void chunkedBodyOverLimitIsRejected() {
+        final int fileSize = 1024 * 1024;
+        final long maxSize = 1024 * 64;
+        final AtomicLong read = new AtomicLong(0);
+        final ServerRequest request = request(fileSize, read);
+        assertEquals(-1, request.exchange().getRequest().getHeaders().getContentLength());
+        final Throwable throwable = assertThrows(Throwable.class, () ->
+                RequestParameterMapper.requestFormDataMapper(request, new HashMap<>(), maxSize).block());
+        Throwable cause = throwable;
+        while (cause != null && !(cause instanceof FileException)) {
+            cause = cause.getCause();
+        }
+        assertInstanceOf(FileException.class, cause);
+        // 超过最大长度后中止读取，不会读取（缓存）整个请求体
+        assertTrue(read.get() < fileSize / 2, "read " + read.get() + " bytes");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void chunkedBodyWithinLimitIsParsed() {
+        final int fileSize = 1024 * 16;
+        final AtomicLong read = new AtomicLong(0);
+        final ServerRequest request = request(fileSize, read);
+        final Map<String, Object> data = RequestParameterMapper
+                .requestFormDataMapper(request, new HashMap<>(), 1024 * 64).block();
+        assertTrue(data != null && data.get(RequestParameterMapper.FORM_DATA_PREFIX + "file") instanceof List);
+        final List<Object> parts = (List<Object>) data.get(RequestParameterMapper.FORM_DATA_PREFIX + "file");
+        assertEquals(1, parts.size());
+        assertInstanceOf(FilePart.class, parts.get(0));
+        assertEquals("slice.bin", ((FilePart) parts.get(0)).filename());
+    }
+
+}